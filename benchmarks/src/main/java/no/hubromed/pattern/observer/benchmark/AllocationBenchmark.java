@@ -0,0 +1,79 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import no.hubromed.pattern.observer.EventCRUD;
+import no.hubromed.pattern.observer.Subject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Bytes allocated per notification. Run with the GC profiler, either through {@link #main(String[])} or with
+ * {@code java -jar benchmarks.jar AllocationBenchmark -prof gc}, and read {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class AllocationBenchmark {
+
+    @Param({"SYNCHRONOUS", "ASYNCHRONOUS_SYNCHRONOUS", "ASYNCHRONOUS", "ASYNCHRONOUS_COALESCING"})
+    private Subjects subjects;
+
+    private Subject<Field, Subject> subject;
+    private int notifications;
+
+    @Setup
+    public void setUp() {
+        subject = subjects.create();
+        for (int i = 0; i < 10; i++) {
+            subject.attach(new CountingObserver<Subject>(), EventCRUD.U, Field.PRICE);
+        }
+    }
+
+    @Benchmark
+    public void notifyObserved() {
+        subject.notify(Field.PRICE);
+        // Keeps the event dispatch thread from falling behind, without measuring it on every notification.
+        if (++notifications % 1000 == 0 && (subjects == Subjects.ASYNCHRONOUS || subjects == Subjects.ASYNCHRONOUS_COALESCING)) {
+            Subjects.drainEventDispatchThread();
+        }
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AllocationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
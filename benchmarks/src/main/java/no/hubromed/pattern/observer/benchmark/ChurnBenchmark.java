@@ -0,0 +1,82 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import no.hubromed.pattern.observer.EventCRUD;
+import no.hubromed.pattern.observer.Subject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Observers attaching and detaching while other threads notify the same subject.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChurnBenchmark {
+
+    @Param({"10", "1000"})
+    private int observers;
+
+    private Subject<Field, Subject> subject;
+
+    @Setup
+    public void setUp() {
+        subject = Subjects.SYNCHRONOUS.create();
+        for (int i = 0; i < observers; i++) {
+            subject.attach(new CountingObserver<Subject>(), EventCRUD.U, Field.PRICE, Field.VOLUME);
+        }
+    }
+
+    /**
+     * Per thread observer, so that each churning thread attaches and detaches its own.
+     */
+    @State(Scope.Thread)
+    public static class Churner {
+        private final CountingObserver<Subject> observer = new CountingObserver<Subject>();
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public void notifyDuringChurn() {
+        subject.notify(Field.PRICE);
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void attachDetach(final Churner churner) {
+        subject.attach(churner.observer, EventCRUD.U, Field.PRICE);
+        subject.detach(churner.observer);
+    }
+}
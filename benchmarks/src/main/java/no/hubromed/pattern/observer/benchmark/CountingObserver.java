@@ -0,0 +1,37 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer.benchmark;
+
+import no.hubromed.pattern.observer.EventCRUD;
+import no.hubromed.pattern.observer.Observer;
+import no.hubromed.pattern.observer.Subject;
+
+/**
+ * Observer doing as little as possible, so that the benchmarks measure the subject and not the observer.
+ */
+public class CountingObserver<S extends Subject> implements Observer<Field, S> {
+
+    private long count;
+
+    public void update(final Field field, final EventCRUD event, final S subject) {
+        count++;
+    }
+
+    public long count() {
+        return count;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import no.hubromed.pattern.observer.EventCRUD;
+import no.hubromed.pattern.observer.Subject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of a burst of notifications from a background thread until the event dispatch thread has updated every
+ * {@code Observer}, with a real EDT pump.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class EventDispatchThreadBenchmark {
+
+    @Param({"1", "100", "10000"})
+    private int observers;
+
+    @Param({"1", "100"})
+    private int burst;
+
+    @Param({"ASYNCHRONOUS", "ASYNCHRONOUS_COALESCING"})
+    private Subjects subjects;
+
+    private Subject<Field, Subject> subject;
+
+    @Setup
+    public void setUp() {
+        subject = subjects.create();
+        for (int i = 0; i < observers; i++) {
+            subject.attach(new CountingObserver<Subject>(), EventCRUD.U, Field.PRICE);
+        }
+    }
+
+    @Benchmark
+    public void notifyAndDrain() {
+        for (int i = 0; i < burst; i++) {
+            subject.notify(Field.PRICE);
+        }
+        Subjects.drainEventDispatchThread();
+    }
+}
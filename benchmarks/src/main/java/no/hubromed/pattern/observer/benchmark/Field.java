@@ -0,0 +1,28 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer.benchmark;
+
+/**
+ * Fields of the subjects being benchmarked. Wide enough to make the difference between selective and full-enum
+ * subscriptions visible.
+ */
+public enum Field {
+    PRICE, BID, ASK, VOLUME, OPEN, HIGH, LOW, CLOSE,
+    NAME, TICKER, ISIN, CURRENCY, EXCHANGE, SECTOR, COUNTRY, LOT_SIZE,
+    POSITION, COST, PROFIT, LOSS, EXPOSURE, MARGIN, LIMIT, STATUS,
+    F24, F25, F26, F27, F28, F29, F30, F31
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer.benchmark;
+
+import java.lang.reflect.InvocationTargetException;
+import javax.swing.SwingUtilities;
+import no.hubromed.pattern.observer.Subject;
+
+/**
+ * The subject configurations being benchmarked.
+ */
+public enum Subjects {
+    /**
+     * {@link Subject.SynchronousSubject}.
+     */
+    SYNCHRONOUS {
+        @Override
+        public Subject<Field, Subject> create() {
+            return new Subject.SynchronousSubject<Field, Subject>();
+        }
+    },
+    /**
+     * {@link Subject.AsynchronousSubject} made synchronous, as in unit tests.
+     */
+    ASYNCHRONOUS_SYNCHRONOUS {
+        @Override
+        public Subject<Field, Subject> create() {
+            final Subject.AsynchronousSubject<Field, Subject> subject = new Subject.AsynchronousSubject<Field, Subject>();
+            subject.setSynchronous(true);
+            return subject;
+        }
+    },
+    /**
+     * {@link Subject.AsynchronousSubject} delivering on the event dispatch thread, one {@code invokeLater} per
+     * notification.
+     */
+    ASYNCHRONOUS {
+        @Override
+        public Subject<Field, Subject> create() {
+            final Subject.AsynchronousSubject<Field, Subject> subject = new Subject.AsynchronousSubject<Field, Subject>();
+            subject.setCoalescing(false);
+            return subject;
+        }
+    },
+    /**
+     * {@link Subject.AsynchronousSubject} delivering on the event dispatch thread, one {@code invokeLater} per burst.
+     */
+    ASYNCHRONOUS_COALESCING {
+        @Override
+        public Subject<Field, Subject> create() {
+            final Subject.AsynchronousSubject<Field, Subject> subject = new Subject.AsynchronousSubject<Field, Subject>();
+            subject.setCoalescing(true);
+            return subject;
+        }
+    };
+
+    private static final Runnable NOOP = new Runnable() {
+        public void run() {
+        }
+    };
+
+    public abstract Subject<Field, Subject> create();
+
+    /**
+     * Waits until the event dispatch thread has delivered every notification made so far.
+     */
+    public static void drainEventDispatchThread() {
+        try {
+            SwingUtilities.invokeAndWait(NOOP);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import no.hubromed.pattern.observer.EventCRUD;
+import no.hubromed.pattern.observer.Subject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of selective subscriptions, where each {@code Observer} attaches to one field, compared to full-enum
+ * subscriptions, where each {@code Observer} attaches to every field. The notifications cycle through all fields.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubscriptionBenchmark {
+
+    private static final Field[] FIELDS = Field.values();
+
+    @Param({"100", "1000"})
+    private int observers;
+
+    @Param({"true", "false"})
+    private boolean selective;
+
+    private Subject<Field, Subject> subject;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        subject = Subjects.SYNCHRONOUS.create();
+        for (int i = 0; i < observers; i++) {
+            if (selective) {
+                subject.attach(new CountingObserver<Subject>(), EventCRUD.U, FIELDS[i % FIELDS.length]);
+            } else {
+                subject.attach(new CountingObserver<Subject>(), EventCRUD.U, FIELDS);
+            }
+        }
+    }
+
+    @Benchmark
+    public void notifyEachField() {
+        subject.notify(FIELDS[next]);
+        next = (next + 1) % FIELDS.length;
+    }
+
+    @Benchmark
+    public void notifyUnobservedEvent() {
+        subject.notify(FIELDS[0], EventCRUD.DELETE);
+    }
+}
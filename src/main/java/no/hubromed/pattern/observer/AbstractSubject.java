@@ -16,82 +16,168 @@
 
 package no.hubromed.pattern.observer;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * {@code AbstractSubject} is an implementation of {@code Subject} that is deliberately made package local, so that
  * it cannot be extended. You should instead use {@link SynchronousSubject} or {@link AsynchronousSubject}, depending
- * on your need. (For GUI purposes use the latter).</p>
+ * on your need. (For GUI purposes use the latter), or {@link DispatchingSubject} with a {@link Dispatcher} of your
+ * choice.</p>
  * Its is important to note that we cannot always extend a class. Instead we would like to use the {@code Delegate}
- * pattern. In such cases, use the constructor {@link #AbstractSubject(Subject)}.
+ * pattern. In such cases, use the constructor {@link #AbstractSubject(Subject, Dispatcher)}.</p>
+ * Once the {@code Observer}s are attached, {@link #notify(Enum, EventCRUD)} does not allocate any objects, neither
+ * when the {@code Observer}s are updated directly, nor when the notification is handed to the {@code Dispatcher}
+ * while a delivery is already scheduled, as the pending notifications are kept in reused buffers and delivered by one
+ * reused task. The only exceptions are scheduling a new delivery, which is left to the {@code Dispatcher}
+ * (for instance {@code invokeLater}), and logging at level {@code FINE}.</p>
+ * A subject that is never observed costs a few references: it shares the empty registry and the default settings
+ * with all other subjects, and the logger with the other subjects of its class, so that models with millions of
+ * subjects, of which few are observed, stay small.
  *
  * @param <E> An enum that describes the fields that we can observe.
  * @param <S> Subject self reference, mainly needed in order set up the observer correctly with generics.
  */
 abstract class AbstractSubject<E extends Enum, S extends Subject> implements Subject<E, S> {
 
-    private final transient Set<Observer<E, S>> observers = Collections.synchronizedSet(new HashSet<Observer<E, S>>(10));
-    private final transient Map<Observer<E, S>, Set<E>> fields = Collections.synchronizedMap(new HashMap<Observer<E, S>, Set<E>>());
-    private final transient Map<Observer<E, S>, Set<EventCRUD>> events = Collections.synchronizedMap(new HashMap<Observer<E, S>, Set<EventCRUD>>());
+    private static final AtomicReferenceFieldUpdater<AbstractSubject, Registry> REGISTRY =
+            AtomicReferenceFieldUpdater.newUpdater(AbstractSubject.class, Registry.class, "registry");
+    private static final long[] NONE_CONFLATED = new long[0];
+    private static final Settings DEFAULTS = new Settings();
+    private static final ClassValue<Logger> LOGGERS = new ClassValue<Logger>() {
+        @Override
+        protected Logger computeValue(final Class<?> type) {
+            return Logger.getLogger(type.getSimpleName());
+        }
+    };
+
+    private transient volatile Registry<E, S> registry = Registry.empty();
+    private transient volatile Batch<E> batch;
+    private transient volatile DeliveryQueue<E, S> queue;
+    private transient volatile Settings settings = DEFAULTS;
 
     private S delegateFor;
-    private transient Logger logger = Logger.getLogger(getClass().getSimpleName());
+    private final transient Dispatcher dispatcher;
 
-    public AbstractSubject() {
+    /**
+     * The settings that few subjects change from the defaults. All subjects share {@code DEFAULTS} until one of the
+     * settings is changed, which must therefore never be written to.
+     */
+    static final class Settings {
+        volatile boolean coalescing = true;
+        volatile boolean collapsing;
+        volatile long[] conflated = NONE_CONFLATED;
+        volatile Hub hub;
+        volatile Journal journal;
+        volatile ForkJoinPool pool;
+        volatile int threshold;
+        volatile Derivations derivations;
+        volatile Isolation isolation;
+    }
+
+    public AbstractSubject(final Dispatcher dispatcher) {
+        Validate.notNull(dispatcher, "dispatcher");
         //noinspection unchecked
-        delegateFor = (S) this;
+        this.delegateFor = (S) this;
+        this.dispatcher = dispatcher;
     }
 
-    public AbstractSubject(final S delegateFor) {
+    public AbstractSubject(final S delegateFor, final Dispatcher dispatcher) {
+        Validate.notNull(dispatcher, "dispatcher");
         this.delegateFor = delegateFor;
+        this.dispatcher = dispatcher;
     }
 
     public String name() {
         return getClass().getSimpleName();
     }
 
+    private Logger logger() {
+        return LOGGERS.get(getClass());
+    }
+
+    /**
+     * @return The settings, to be read.
+     */
+    Settings settings() {
+        return settings;
+    }
+
+    /**
+     * @return The settings of this subject only, to be changed.
+     */
+    synchronized Settings changeSettings() {
+        if (settings == DEFAULTS) {
+            settings = new Settings();
+        }
+        return settings;
+    }
+
     public void attach(final Observer<E, S> observer, final E... fields) {
         attach(observer, EventCRUD.CRUD, fields);
     }
 
-    public void attach(final Observer<E, S> observer, final Set<EventCRUD> event, final E... fields) {
-        Validate.notNull(observer, "Observer");
+    public void attach(final Observer<E, S> attaching, final Set<EventCRUD> event, final E... fields) {
+        Validate.notNull(attaching, "Observer");
+        final Observer<E, S> observer = attaching instanceof BatchObserver
+                ? new Batching<E, S>((BatchObserver<E, S>) attaching, this) : attaching;
         Validate.notNull(event, "event");
         Validate.notNull(fields, "fields");
         Validate.isTrue(fields.length > 0, "Please subscribe (attach) to 1 or more fields");
         Validate.isTrue(event.size() > 0, "Please subscribe (attach) to at least 1 event");
 
-        Set<E> subscribedFields = new HashSet<E>();
         for (E field : fields) {
             Validate.notNull(field, "Field");
-            subscribedFields.add(field);
             // Send INITIAL message to all fields observer has attached to.
             if (event.contains(EventCRUD.INITIAL)) {
                 //noinspection unchecked
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.fine("@attach: > Sending INITIAL " + field + " to " + observer.getClass().getName());
+                if (logger().isLoggable(Level.FINE)) {
+                    logger().fine("@attach: > Sending INITIAL " + field + " to " + observer.getClass().getName());
                 }
                 observer.update(field, EventCRUD.INITIAL, delegateFor);
             }
         }
 
-        synchronized (this.observers) {
-            this.observers.add(observer);
+        final Subscription subscription = Subscription.of(event, fields);
+        Registry<E, S> current;
+        do {
+            current = registry;
+        } while (!REGISTRY.compareAndSet(this, current, current.attach(observer, subscription)));
+        if (FlightEvents.ATTACH.isEnabled()) {
+            FlightEvents.attach(delegateFor, observer, event, fields);
         }
+    }
 
-        synchronized (this.fields) {
-            this.fields.put(observer, subscribedFields);
-        }
+    /**
+     * Starts the subscription, as {@link #attach(Observer, Set, Enum[])} does, but limits how often {@code observer}
+     * is updated. Detach it with {@code observer} as usual, and attach it again to change or remove the policy.
+     *
+     * @param observer {@code Observer} wishing to subscribe to changes in {@code Subject}.
+     * @param events   Type of events to listen for.
+     * @param policy   How often {@code observer} is updated, see {@link DeliveryPolicy}.
+     * @param fields   List of 1 or more fields to observe.
+     * @throws IllegalArgumentException If {@code observer} is a {@link BatchObserver}, which already limits how often
+     *                                  it is updated.
+     */
+    public void attach(final Observer<E, S> observer, final Set<EventCRUD> events, final DeliveryPolicy policy,
+                       final E... fields) {
+        Validate.notNull(observer, "Observer");
+        Validate.notNull(policy, "policy");
+        Validate.isTrue(!(observer instanceof BatchObserver), "A BatchObserver can not be attached with a policy");
+        attach(policy.apply(observer, this), events, fields);
+    }
 
-        synchronized (this.events) {
-            this.events.put(observer, event);
-        }
+    /**
+     * @param observer {@code Observer} to look for.
+     * @return {@code true} if {@code observer} is attached.
+     */
+    boolean attached(final Observer<E, S> observer) {
+        return registry.contains(observer);
     }
 
     private String getObserverName(final Observer<E, S> observer) {
@@ -99,70 +185,519 @@ abstract class AbstractSubject<E extends Enum, S extends Subject> implements Sub
     }
 
     public void detach(final Observer<E, S> observer) {
-        synchronized (observers) {
-            this.observers.remove(observer);
+        Registry<E, S> current;
+        do {
+            current = registry;
+        } while (!REGISTRY.compareAndSet(this, current, current.detach(observer)));
+        if (FlightEvents.DETACH.isEnabled()) {
+            FlightEvents.detach(delegateFor, observer);
         }
+    }
 
-        synchronized (fields) {
-            this.fields.remove(observer);
+    public void detachAll() {
+        registry = Registry.empty();
+        if (FlightEvents.DETACH.isEnabled()) {
+            FlightEvents.detach(delegateFor, null);
         }
+    }
 
-        synchronized (events) {
-            this.events.remove(observer);
+    /**
+     * Gives each {@link BatchObserver} the notifications collected since its last delivery, on the calling thread.
+     * Needed for a {@link Subject.SynchronousSubject}, as no one else delivers them. Others deliver them once per
+     * drain by themselves, but may be flushed sooner.
+     */
+    public void flushBatches() {
+        for (Observer<E, S> observer : registry.observers()) {
+            if (observer instanceof Batching) {
+                ((Batching) observer).flush();
+            }
         }
     }
 
-    public void detachAll() {
-        synchronized (observers) {
-            this.observers.clear();
+    /**
+     * @return {@code true} if the notifications collected for a {@link BatchObserver} are only delivered by
+     *         {@link #flushBatches()}, {@code false} if they are flushed by a task given to the {@code Dispatcher}.
+     */
+    boolean flushesBatches() {
+        return false;
+    }
+
+    public void beginBatch() {
+        synchronized (this) {
+            if (batch == null) {
+                batch = new Batch<E>();
+            }
+            batch.begin();
+        }
+    }
+
+    public void commit() {
+        final Batch<E> committed;
+        synchronized (this) {
+            if (batch == null) {
+                throw new IllegalStateException("commit() without a matching beginBatch()");
+            }
+            if (!batch.end()) {
+                return;
+            }
+            committed = batch;
+            batch = null;
         }
 
-        synchronized (fields) {
-            this.fields.clear();
+        //noinspection unchecked
+        final Derivations<E> derivations = settings.derivations;
+        if (derivations == null) {
+            for (int i = 0; i < committed.size(); i++) {
+                publishField(committed.field(i), committed.event(i), null);
+            }
+            return;
         }
 
-        synchronized (events) {
-            this.events.clear();
+        // The derived fields are notified once, after all the fields they depend on, however many of them changed.
+        final boolean[] changed = new boolean[derivations.size()];
+        for (int i = 0; i < committed.size(); i++) {
+            if (Derivations.changes(committed.event(i))) {
+                changed[committed.field(i).ordinal()] = true;
+            }
+        }
+        final E[] dependents = derivations.dependents(changed);
+        derivations.invalidate(dependents);
+        for (int i = 0; i < committed.size(); i++) {
+            final E field = committed.field(i);
+            if (committed.event(i) != EventCRUD.UPDATE || !derivations.isDerived(field)) {
+                publishField(field, committed.event(i), null);
+            }
+        }
+        for (E dependent : dependents) {
+            publishField(dependent, EventCRUD.UPDATE, null);
         }
     }
 
     public void notify(final E field, final EventCRUD event) {
+        notify(field, event, (Change) null);
+    }
+
+    /**
+     * Publishes a change, as {@link #notify(Enum, EventCRUD)} does, telling {@link ChangeObserver}s what changed, so
+     * that they can update themselves without reading the full state. Other {@code Observer}s are updated as usual.
+     * Notifications carrying a {@code Change} are never collapsed or conflated, but in a batch the {@code Change} is
+     * dropped, and the notification recorded as any other.
+     *
+     * @param field  Field that is being notified about.
+     * @param event  Type of event.
+     * @param change What changed, see {@link Change#value(Object, Object)} and {@link Change#element(Object, int)}.
+     */
+    public void notify(final E field, final EventCRUD event, final Change change) {
+        if (batch != null) {
+            synchronized (this) {
+                if (batch != null) {
+                    batch.record(field, event);
+                    return;
+                }
+            }
+        }
+        publish(field, event, change, null);
+    }
+
+    /**
+     * Publishes a notification, as {@link #notify(Enum, EventCRUD)} does, and tells when the {@code Observer}s have
+     * processed it, whichever thread they are updated on. A failing {@code Observer} does not stop the others from
+     * being updated, and is not reported to the {@code Dispatcher}. The notification is never collapsed or conflated
+     * with others waiting to be delivered.
+     * <pre>
+     * subject.notifyAsync(Field.PRICE, EventCRUD.UPDATE).toCompletableFuture().get(1, TimeUnit.SECONDS);
+     * </pre>
+     *
+     * @param field Field that is being notified about.
+     * @param event Type of event.
+     * @return Completes when the {@code update} of every {@code Observer} of {@code field} and {@code event} has
+     *         returned, or exceptionally with a {@link DeliveryException} holding the failures of the {@code Observer}s
+     *         that threw. {@code Observer}s of fields derived from {@code field} are not waited for, nor those whose
+     *         circuit is open in the {@code Isolation}.
+     * @throws IllegalStateException If a batch is started, as the notification is then delivered on {@code commit()}.
+     */
+    public CompletionStage<Void> notifyAsync(final E field, final EventCRUD event) {
+        Validate.notNull(field, "Field");
+        Validate.notNull(event, "event");
+        if (batch != null) {
+            throw new IllegalStateException("notifyAsync(" + field + ", " + event + ") inside a batch");
+        }
+        final Completion completion = new Completion();
+        publish(field, event, null, completion);
+        return completion;
+    }
+
+    private void publish(final E field, final EventCRUD event, final Change change, final Completion completion) {
+        //noinspection unchecked
+        final Derivations<E> derivations = settings.derivations;
+        if (derivations == null || !Derivations.changes(event)) {
+            publishField(field, event, change, completion);
+            return;
+        }
+
+        // Every derived value is stale before anyone is notified, so that no Observer reads an outdated one.
+        final E[] dependents = derivations.dependents(field);
+        derivations.invalidate(dependents);
+        publishField(field, event, change, completion);
+        for (E dependent : dependents) {
+            if (dependent != field) {
+                publishField(dependent, EventCRUD.UPDATE, null);
+            }
+        }
+    }
+
+    private void publishField(final E field, final EventCRUD event, final Change change) {
+        publishField(field, event, change, null);
+    }
+
+    /**
+     * @param completion Tracks the delivery, or {@code null}.
+     */
+    private void publishField(final E field, final EventCRUD event, final Change change,
+                              final Completion completion) {
+        final FlightEvents.Notify recording = publishing(field, event);
+
+        // The index only holds the observers that observe both the field and the event, so no filtering is needed.
+        final Observer<E, S>[] observers = registry.index().observers(field, event);
+        if (completion != null) {
+            final Observer<E, S>[] tracked = completion.track(observers);
+            if (tracked.length > 0) {
+                dispatch(field, event, change, tracked, false);
+            }
+        } else if (observers.length > 0) {
+            dispatch(field, event, change, observers, change == null);
+        }
+        published(recording, field, event, change, observers.length);
+    }
+
+    /**
+     * Publishes a change recorded earlier, to the {@code observers} that were attached when it was recorded. It is
+     * delivered on the calling thread, which must be the thread of the {@code Dispatcher}, and is logged, journaled,
+     * recorded and published into the {@code Hub} as any other notification.
+     *
+     * @param field     Field being notified about.
+     * @param event     Type of event.
+     * @param change    What changed, or {@code null}.
+     * @param observers The observers that will receive the message.
+     */
+    void publishRecorded(final E field, final EventCRUD event, final Change change,
+                         final Observer<E, S>[] observers) {
+        final FlightEvents.Notify recording = publishing(field, event);
+        deliver(field, event, change, observers);
+        published(recording, field, event, change, observers.length);
+    }
+
+    /**
+     * Logs and journals a notification about to be published.
+     *
+     * @return The flight recording of the notification, or {@code null} if not recording.
+     */
+    private FlightEvents.Notify publishing(final E field, final EventCRUD event) {
+        final Logger logger = logger();
         if (logger.isLoggable(Level.FINE)) {
             logger.fine("notify: field = " + field + ", event = " + event);
         }
+        final Journal journal = settings.journal;
+        if (journal != null) {
+            journal.record(delegateFor, field, event);
+        }
+        return FlightEvents.NOTIFY.isEnabled() ? FlightEvents.notifying() : null;
+    }
 
-        // Traverse all observers og notify those that observe the field and event.
-        final Set<Observer<E, S>> copyObservers;
-        synchronized (observers) {
-            copyObservers = new HashSet<Observer<E, S>>(observers);
+    /**
+     * Ends the flight recording of a notification published, and publishes it into the {@code Hub}.
+     */
+    private void published(final FlightEvents.Notify recording, final E field, final EventCRUD event,
+                           final Change change, final int observers) {
+        if (recording != null) {
+            FlightEvents.notified(recording, delegateFor, field, event, observers);
         }
+        final Hub hub = settings.hub;
+        if (hub != null) {
+            hub.notify(delegateFor, field, event, change);
+        }
+    }
+
+    public void notify(final E field) {
+        notify(field, EventCRUD.UPDATE);
+    }
 
-        for (final Observer<E, S> observer : copyObservers) {
-            final Set<E> observableFields = fields.get(observer) == null ? new HashSet<E>() : fields.get(observer);
-            if (observableFields.contains(field)) {
-                final Set<EventCRUD> observedEvents = events.get(observer);
-                if (observableFields.contains(field) && observedEvents.contains(event)) {
-                    if (logger.isLoggable(Level.FINE)) {
-                        logger.fine("-> observer = " + getObserverName(observer));
-                    }
-                    notify(field, event, observer);
+    /**
+     * @param hub {@code Hub} that the notifications are published into as well, after the {@code Observer}s of this
+     *            subject, {@code null} (default) for none.
+     */
+    public void setHub(final Hub hub) {
+        changeSettings().hub = hub;
+    }
+
+    /**
+     * @return The {@code Hub} that the notifications are published into as well, or {@code null}.
+     */
+    public Hub getHub() {
+        return settings.hub;
+    }
+
+    /**
+     * @param journal {@code Journal} that every notification is recorded in, {@code null} (default) for none.
+     */
+    public void setJournal(final Journal journal) {
+        changeSettings().journal = journal;
+    }
+
+    /**
+     * @return The {@code Journal} that every notification is recorded in, or {@code null}.
+     */
+    public Journal getJournal() {
+        return settings.journal;
+    }
+
+    /**
+     * @param isolation {@code Isolation} catching the exceptions of each {@code Observer}, and quarantining those that
+     *                  are slow or keep failing, {@code null} (default) for none, in which case an exception thrown
+     *                  by an {@code Observer} is thrown on to the {@code Dispatcher}, and the {@code Observer}s after
+     *                  it are not updated.
+     */
+    public void setIsolation(final Isolation isolation) {
+        changeSettings().isolation = isolation;
+    }
+
+    /**
+     * @return The {@code Isolation} of the {@code Observer}s, or {@code null}.
+     */
+    public Isolation getIsolation() {
+        return settings.isolation;
+    }
+
+    /**
+     * Declares a derived field, computed from other fields of the subject. Whenever one of the {@code dependsOn}
+     * fields is notified with {@code CREATE}, {@code UPDATE} or {@code DELETE}, {@code value} is marked as stale, and
+     * {@code field} is notified with {@code UPDATE} right after it. A derived field may depend on other derived
+     * fields: when a field changes, all the values derived from it are marked as stale before anyone is notified,
+     * and each derived field is notified once, after the fields it depends on, also when a batch changes several of
+     * them.
+     *
+     * @param field     The derived field. Notifications of it should be left to the subject.
+     * @param value     Computes the value of {@code field} when it is read.
+     * @param dependsOn The fields that {@code field} is computed from.
+     * @return {@code value}, to be kept in a field of the model.
+     * @throws IllegalArgumentException If {@code field} already is derived, or the derived fields would depend on each
+     *                                  other in a cycle.
+     */
+    public <T> Derived<T> derive(final E field, final Derived<T> value, final E... dependsOn) {
+        Validate.notNull(field, "Field");
+        Validate.notNull(value, "value");
+        Validate.notNull(dependsOn, "dependsOn");
+        synchronized (this) {
+            final Settings settings = changeSettings();
+            //noinspection unchecked
+            settings.derivations = Derivations.with((Derivations<E>) settings.derivations, field, value, dependsOn);
+        }
+        return value;
+    }
+
+    /**
+     * @param coalescing {@code true} (default) to buffer notifications made outside the dispatch thread, and hand
+     *                   them to the {@code Dispatcher} as one delivery per burst, otherwise {@code false}, which
+     *                   allocates one task per notification. A coalescing subject never runs more than one delivery
+     *                   at a time, so the order of the notifications is kept with any {@code Dispatcher}.
+     */
+    public void setCoalescing(final boolean coalescing) {
+        changeSettings().coalescing = coalescing;
+    }
+
+    /**
+     * @return {@code true} if notifications are buffered and delivered once per burst.
+     */
+    public boolean isCoalescing() {
+        return settings.coalescing;
+    }
+
+    /**
+     * Only applies when {@link #isCoalescing() coalescing}.
+     *
+     * @param collapsing {@code true} to skip a notification if the same field and event is already waiting to be
+     *                   delivered, otherwise {@code false} (default). Since the {@code Observer}s read the state
+     *                   of the subject when they are updated, they will still see the latest state.
+     */
+    public void setCollapsing(final boolean collapsing) {
+        changeSettings().collapsing = collapsing;
+    }
+
+    /**
+     * @return {@code true} if repeated fields and events are collapsed while waiting to be delivered.
+     */
+    public boolean isCollapsing() {
+        return settings.collapsing;
+    }
+
+    /**
+     * Latest-value conflation for fields that change far more often than the {@code Observer}s need to know, such as
+     * prices or progress counters. Only applies when {@link #isCoalescing() coalescing}.</p>
+     * While an {@link EventCRUD#UPDATE} of a conflated field is waiting to be delivered, new {@code UPDATE}s of the
+     * same field are merged into it instead of being queued, so at most one is in flight at a time. The
+     * {@code Observer}s read the latest value when they are updated. Other events, such as {@code CREATE} and
+     * {@code DELETE}, are never conflated, so that the semantics of collections are kept.
+     *
+     * @param fields The fields to conflate. Replaces any fields given earlier, none to stop conflating.
+     */
+    public void setConflated(final E... fields) {
+        Validate.notNull(fields, "fields");
+        long[] mask = NONE_CONFLATED;
+        for (E field : fields) {
+            Validate.notNull(field, "Field");
+            final int word = field.ordinal() >>> 6;
+            if (word >= mask.length) {
+                mask = Arrays.copyOf(mask, word + 1);
+            }
+            mask[word] |= 1L << field.ordinal();
+        }
+        changeSettings().conflated = mask;
+    }
+
+    /**
+     * @param field Field of the subject.
+     * @return {@code true} if {@code UPDATE}s of {@code field} are conflated while waiting to be delivered.
+     */
+    public boolean isConflated(final E field) {
+        final long[] mask = settings.conflated;
+        final int word = field.ordinal() >>> 6;
+        return word < mask.length && (mask[word] & (1L << field.ordinal())) != 0;
+    }
+
+    /**
+     * @param field Field being notified about.
+     * @param event Type of event.
+     * @return {@code true} if the notification should be dropped when the same field and event already is waiting to
+     *         be delivered.
+     */
+    boolean collapses(final E field, final EventCRUD event) {
+        return settings.collapsing || (event == EventCRUD.UPDATE && isConflated(field));
+    }
+
+    /**
+     * Makes the publication of the {@code event} for {@code field} to the {@code observers}, using the
+     * {@code Dispatcher}.
+     *
+     * @param field     Field being observed.
+     * @param event     An event the {@code observers} are interested in.
+     * @param change    What changed, or {@code null}.
+     * @param observers   The observers that will receive the message. Must not be modified.
+     * @param collapsible {@code false} if the notification must be delivered, even if the same field and event
+     *                    already is waiting.
+     */
+    void dispatch(final E field, final EventCRUD event, final Change change, final Observer<E, S>[] observers,
+                  final boolean collapsible) {
+        final Dispatcher dispatcher = dispatcher();
+        if (dispatcher.isDispatchThread()) {
+            deliver(field, event, change, observers);
+        } else if (settings.coalescing) {
+            queue(dispatcher).offer(field, event, change, observers, collapsible);
+        } else if (dispatcher instanceof FrameScheduler) {
+            ((FrameScheduler) dispatcher).offer(this, field, event, change, observers);
+        } else {
+            final long queued = FlightEvents.queued();
+            Runnable doFirePropertyChange = new Runnable() {
+                public void run() {
+                    FlightEvents.deliver(AbstractSubject.this, queued, field, event, change, observers);
                 }
+            };
+            dispatcher.execute(doFirePropertyChange);
+        }
+    }
+
+    /**
+     * @return The queue run by {@code dispatcher}, only locking the subject when the queue is created, or replaced as
+     *         the {@code Dispatcher} changed.
+     */
+    private DeliveryQueue<E, S> queue(final Dispatcher dispatcher) {
+        final DeliveryQueue<E, S> current = queue;
+        if (current != null && current.executor() == dispatcher) {
+            return current;
+        }
+        synchronized (this) {
+            if (queue == null || queue.executor() != dispatcher) {
+                queue = new DeliveryQueue<E, S>(this, dispatcher);
             }
+            return queue;
         }
     }
 
-    public void notify(final E field) {
-        notify(field, EventCRUD.UPDATE);
+    /**
+     * @return The index of the {@code Observer}s attached right now.
+     */
+    DispatchIndex<E, S> index() {
+        return registry.index();
     }
 
     /**
-     * Makes the publication of the {@code event} for {@code field} to the {@code observer}.
+     * @return The {@code Dispatcher} that decides which thread the {@code Observer}s are updated on.
+     */
+    Dispatcher dispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Delivers the {@code event} for {@code field} to each of the {@code observers} in order, on the calling thread.
      *
-     * @param field Field being observed.
-     * @param event An event {@code observer} is interested in.
-     * @param observer The observer that will receive the message.
+     * @param field     Field being observed.
+     * @param event     An event the {@code observers} are interested in.
+     * @param change    What changed, or {@code null}.
+     * @param observers The observers that will receive the message.
      */
-    abstract void notify(final E field, final EventCRUD event, final Observer<E, S> observer);
+    void deliver(final E field, final EventCRUD event, final Change change, final Observer<E, S>[] observers) {
+        for (final Observer<E, S> observer : observers) {
+            update(observer, field, event, change);
+        }
+    }
+
+    /**
+     * Updates one of the {@code Observer}s of a delivery, isolated if the subject has an {@code Isolation}, and
+     * watched if a {@code StallWatchdog} is watching the thread. Every update of an {@code Observer} goes through
+     * here, whichever thread makes it.
+     */
+    void update(final Observer<E, S> observer, final E field, final EventCRUD event, final Change change) {
+        if (observer instanceof Mailbox) {
+            ((Mailbox<E, S>) observer).update(this, field, event);
+            return;
+        }
+        if (forwards(observer)) {
+            Change.call(observer, field, event, delegateFor, change);
+            return;
+        }
+        final Logger logger = logger();
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("-> observer = " + getObserverName(observer));
+        }
+        final StallWatchdog watchdog = StallWatchdog.running();
+        if (watchdog == null || !watchdog.isWatched()) {
+            isolate(observer, field, event, change);
+            return;
+        }
+        watchdog.enter(delegateFor, field, observer);
+        try {
+            isolate(observer, field, event, change);
+        } finally {
+            watchdog.exit();
+        }
+    }
+
+    /**
+     * @return {@code true} if {@code observer} updates the {@code Observer} it decorates through this subject, see
+     *         {@link Decorator.Forwarding}.
+     */
+    private static boolean forwards(final Observer observer) {
+        return observer instanceof Decorator.Forwarding || observer instanceof Completion.Tracked
+                && ((Completion.Tracked) observer).unwrap() instanceof Decorator.Forwarding;
+    }
+
+    private void isolate(final Observer<E, S> observer, final E field, final EventCRUD event, final Change change) {
+        final Isolation isolation = settings.isolation;
+        if (isolation == null) {
+            Change.update(observer, field, event, delegateFor, change);
+        } else {
+            isolation.update(this, observer, field, event, change);
+        }
+    }
 
     protected S delegateFor() {
         return delegateFor;
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.Arrays;
+
+/**
+ * The notifications recorded between {@link Subject#beginBatch()} and the matching {@link Subject#commit()}.
+ * Each distinct field and event is only recorded once, in the order it was first notified.
+ *
+ * @param <E> An enum that describes the fields that we can observe.
+ */
+final class Batch<E extends Enum> {
+
+    private int depth;
+    private Enum[] fields = new Enum[8];
+    private EventCRUD[] events = new EventCRUD[8];
+    private int size;
+
+    /**
+     * Opens a (possibly nested) batch.
+     */
+    void begin() {
+        depth++;
+    }
+
+    /**
+     * Closes the innermost batch.
+     *
+     * @return {@code true} if the outermost batch was closed, and the recorded notifications should be published.
+     */
+    boolean end() {
+        return --depth == 0;
+    }
+
+    /**
+     * @param field Field being notified about.
+     * @param event Type of event.
+     */
+    void record(final E field, final EventCRUD event) {
+        for (int i = 0; i < size; i++) {
+            if (fields[i] == field && events[i] == event) {
+                return;
+            }
+        }
+        if (size == fields.length) {
+            fields = Arrays.copyOf(fields, size * 2);
+            events = Arrays.copyOf(events, size * 2);
+        }
+        fields[size] = field;
+        events[size] = event;
+        size++;
+    }
+
+    /**
+     * @return Number of distinct notifications recorded.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param i Index of the notification.
+     * @return Field of the {@code i}'th distinct notification.
+     */
+    E field(final int i) {
+        //noinspection unchecked
+        return (E) fields[i];
+    }
+
+    /**
+     * @param i Index of the notification.
+     * @return Event of the {@code i}'th distinct notification.
+     */
+    EventCRUD event(final int i) {
+        return events[i];
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.List;
+
+/**
+ * An {@code Observer} that is given the notifications in groups, for {@code Observer}s that rebuild something
+ * expensive, such as a chart or an aggregate, and would rather do it once for many notifications than once for each.
+ * </p>
+ * It is attached as any other {@code Observer}. The notifications made since its last delivery are collected, in order,
+ * and given to {@link #update(List)} in one call:
+ * <ul>
+ * <li>For a {@link Subject.AsynchronousSubject}, or any other {@code Subject} with a {@code Dispatcher} of its own,
+ * once per drain, in one callback on the thread of the {@code Dispatcher}, such as the event dispatch thread.</li>
+ * <li>For a {@link Subject.SynchronousSubject}, when {@code flushBatches()} is called on the {@code Subject}.</li>
+ * </ul>
+ * The {@link EventCRUD#INITIAL} events sent on attach are given to {@link #update(Enum, EventCRUD, Subject)} at once,
+ * as they are not changes. A {@code BatchObserver} can not be attached with a {@link DeliveryPolicy}.
+ *
+ * @param <E> An enum that describes which field has a change.
+ * @param <S> Subject.
+ */
+public interface BatchObserver<E extends Enum, S extends Subject> extends Observer<E, S> {
+
+    /**
+     * @param changes The notifications made since the last delivery, oldest first. Must not be modified.
+     */
+    void update(List<Notification<E, S>> changes);
+}
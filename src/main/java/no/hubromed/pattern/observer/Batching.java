@@ -0,0 +1,222 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@code Observer} attached in place of a {@link BatchObserver}, collecting the notifications until they are
+ * flushed, either by a task given to the {@code Dispatcher} of the {@code Subject} on the first notification after a
+ * flush, or, for a {@link Subject.SynchronousSubject}, by {@code flushBatches()}. It is
+ * {@link Observer.Ordered}, so that the notifications are collected in the order they were made, also by a
+ * {@code Subject} updating its {@code Observer}s in parallel.</p>
+ * The notifications are given to the {@code BatchObserver} through the {@code Subject}, as any other update, so that
+ * its {@code Isolation} and the {@code StallWatchdog} apply. A notification made by {@code notifyAsync} completes
+ * once it has been given to the {@code BatchObserver}, not when it is collected.
+ *
+ * @param <E> An enum that describes which field has a change.
+ * @param <S> Subject.
+ */
+final class Batching<E extends Enum, S extends Subject>
+        implements ChangeObserver<E, S>, Observer.Ordered, Observer.Prioritized, Decorator {
+
+    private final BatchObserver<E, S> observer;
+    private final AbstractSubject<E, S> subject;
+    private final boolean manual;
+    private List<Notification<E, S>> pending;
+    private List<Completion> completions;
+    private boolean scheduled;
+
+    private final Runnable flush = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    Batching(final BatchObserver<E, S> observer, final AbstractSubject<E, S> subject) {
+        this.observer = observer;
+        this.subject = subject;
+        this.manual = subject.flushesBatches();
+    }
+
+    public void update(final E field, final EventCRUD event, final S source) {
+        if (event == EventCRUD.INITIAL) {
+            observer.update(field, event, source);
+        } else {
+            add(new Notification<E, S>(field, event, source, null), null);
+        }
+    }
+
+    public void update(final E field, final EventCRUD event, final S source, final Change change) {
+        add(new Notification<E, S>(field, event, source, change), null);
+    }
+
+    /**
+     * @param completion Tracks a notification made by {@code notifyAsync}.
+     * @return An {@code Observer} collecting the notification for this one, and counting {@code completion} down
+     *         once it has been given to the {@code BatchObserver}.
+     */
+    Observer<E, S> tracking(final Completion completion) {
+        return new Tracking<E, S>(this, completion);
+    }
+
+    /**
+     * @param completion Counted down when {@code notification} is given to the {@code BatchObserver}, or
+     *                   {@code null}.
+     */
+    private void add(final Notification<E, S> notification, final Completion completion) {
+        synchronized (this) {
+            if (pending == null) {
+                pending = new ArrayList<Notification<E, S>>();
+            }
+            pending.add(notification);
+            if (completion != null) {
+                if (completions == null) {
+                    completions = new ArrayList<Completion>();
+                }
+                completions.add(completion);
+            }
+            if (scheduled || manual) {
+                return;
+            }
+            scheduled = true;
+        }
+        subject.dispatcher().execute(flush);
+    }
+
+    /**
+     * Gives the notifications collected to the {@code BatchObserver}, on the calling thread.
+     */
+    void flush() {
+        final List<Notification<E, S>> changes;
+        final List<Completion> completions;
+        synchronized (this) {
+            changes = pending;
+            completions = this.completions;
+            pending = null;
+            this.completions = null;
+            scheduled = false;
+        }
+        if (changes == null) {
+            return;
+        }
+        final Delivery<E, S> delivery = new Delivery<E, S>(observer, Collections.unmodifiableList(changes),
+                completions);
+        // Notifications collected for an Observer that has since been detached are dropped.
+        if (!subject.attached(this)) {
+            delivery.updated(null);
+            return;
+        }
+        // The last notification stands for the batch, in the log, the StallWatchdog and the Isolation.Listener.
+        final Notification<E, S> last = changes.get(changes.size() - 1);
+        subject.update(delivery, last.field(), last.event(), null);
+    }
+
+    public Observer unwrap() {
+        return observer;
+    }
+
+    public int priority() {
+        return observer instanceof Observer.Prioritized ? ((Observer.Prioritized) observer).priority() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return observer.toString();
+    }
+
+    /**
+     * Collects a notification made by {@code notifyAsync}, leaving the completion to be counted down by the
+     * {@link Delivery}, unless the notification was never collected.
+     */
+    private static final class Tracking<E extends Enum, S extends Subject> extends Completion.Tracked<E, S>
+            implements Observer.Ordered {
+        private final Batching<E, S> batching;
+        private final Completion completion;
+        private boolean collected;
+
+        Tracking(final Batching<E, S> batching, final Completion completion) {
+            super(batching, completion);
+            this.batching = batching;
+            this.completion = completion;
+        }
+
+        @Override
+        void deliver(final E field, final EventCRUD event, final S subject, final Change change) {
+            batching.add(new Notification<E, S>(field, event, subject, change), completion);
+            collected = true;
+        }
+
+        @Override
+        void updated(final Throwable failure) {
+            if (!collected) {
+                super.updated(failure);
+            }
+        }
+    }
+
+    /**
+     * Gives the notifications collected to the {@code BatchObserver} when updated, and counts down the completions
+     * of those made by {@code notifyAsync}. What the {@code BatchObserver} throws is thrown on, unless an
+     * {@code Isolation} updates it.
+     */
+    private static final class Delivery<E extends Enum, S extends Subject> extends Completion.Tracked<E, S> {
+        private final BatchObserver<E, S> observer;
+        private final List<Notification<E, S>> changes;
+        private final List<Completion> completions;
+
+        Delivery(final BatchObserver<E, S> observer, final List<Notification<E, S>> changes,
+                 final List<Completion> completions) {
+            super(observer, null);
+            this.observer = observer;
+            this.changes = changes;
+            this.completions = completions;
+        }
+
+        @Override
+        public void update(final E field, final EventCRUD event, final S subject, final Change change) {
+            Throwable failure = null;
+            try {
+                deliver(field, event, subject, change);
+            } catch (RuntimeException e) {
+                failure = e;
+                throw e;
+            } catch (Error e) {
+                failure = e;
+                throw e;
+            } finally {
+                updated(failure);
+            }
+        }
+
+        @Override
+        void deliver(final E field, final EventCRUD event, final S subject, final Change change) {
+            observer.update(changes);
+        }
+
+        @Override
+        void updated(final Throwable failure) {
+            if (completions != null) {
+                for (Completion completion : completions) {
+                    completion.updated(failure);
+                }
+            }
+        }
+    }
+}
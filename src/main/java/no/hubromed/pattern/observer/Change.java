@@ -0,0 +1,172 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a notification changed, for {@link ChangeObserver}s that update themselves incrementally instead of reading
+ * the full state of the {@code Subject}. Either the old and new value of a field, see {@link #value(Object, Object)},
+ * or the elements created, deleted or updated in a list, see {@link #element(Object, int)} and
+ * {@link #range(int, List)}.
+ * <pre>
+ * public void add(String moon) {
+ *     moons.add(moon);
+ *     notify(Field.MOONS, EventCRUD.CREATE, Change.element(moon, moons.size() - 1));
+ * }
+ * </pre>
+ * Instances are immutable.
+ */
+public final class Change {
+
+    /**
+     * Index of an element whose position is not known.
+     */
+    public static final int NO_INDEX = -1;
+
+    private final Object oldValue;
+    private final Object newValue;
+    private final List<?> elements;
+    private final int index;
+
+    private Change(final Object oldValue, final Object newValue, final List<?> elements, final int index) {
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+        this.elements = elements;
+        this.index = index;
+    }
+
+    /**
+     * @param oldValue Value of the field before the change.
+     * @param newValue Value of the field after the change.
+     * @return Change of the value of a field, typically sent with {@link EventCRUD#UPDATE}.
+     */
+    public static Change value(final Object oldValue, final Object newValue) {
+        return new Change(oldValue, newValue, null, NO_INDEX);
+    }
+
+    /**
+     * @param element The element created or deleted.
+     * @param index   Position of {@code element} in the collection, or {@link #NO_INDEX}.
+     * @return Change of an element of a collection, sent with {@link EventCRUD#CREATE} or {@link EventCRUD#DELETE}.
+     */
+    public static Change element(final Object element, final int index) {
+        Validate.isTrue(index >= NO_INDEX, "Index must be 0 or more, or NO_INDEX");
+        return new Change(null, null, Collections.singletonList(element), index);
+    }
+
+    /**
+     * @param fromIndex Position of the first element in the list.
+     * @param elements  The consecutive elements created, deleted or updated, in order. Copied.
+     * @return Change of the elements from {@code fromIndex} to {@link #toIndex()} of a list.
+     */
+    public static Change range(final int fromIndex, final List<?> elements) {
+        Validate.notNull(elements, "elements");
+        Validate.isTrue(fromIndex >= 0, "Index must be 0 or more");
+        Validate.isTrue(!elements.isEmpty(), "Please give 1 or more elements");
+        return wrap(fromIndex, new ArrayList<Object>(elements));
+    }
+
+    /**
+     * As {@link #range(int, List)}, without copying {@code elements}, which must not be modified afterwards.
+     */
+    static Change wrap(final int fromIndex, final List<?> elements) {
+        return new Change(null, null, Collections.unmodifiableList(elements), fromIndex);
+    }
+
+    /**
+     * @return Value before the change, or {@code null} for changes of elements.
+     */
+    public <T> T oldValue() {
+        //noinspection unchecked
+        return (T) oldValue;
+    }
+
+    /**
+     * @return Value after the change, or {@code null} for changes of elements.
+     */
+    public <T> T newValue() {
+        //noinspection unchecked
+        return (T) newValue;
+    }
+
+    /**
+     * @return The (first) element created, deleted or updated, or {@code null} for changes of values.
+     */
+    public <T> T element() {
+        //noinspection unchecked
+        return elements != null ? (T) elements.get(0) : null;
+    }
+
+    /**
+     * @return The elements created, deleted or updated, in order, empty for changes of values.
+     */
+    public <T> List<T> elements() {
+        //noinspection unchecked
+        return elements != null ? (List<T>) elements : Collections.<T>emptyList();
+    }
+
+    /**
+     * @return Position of the (first) element created, deleted or updated, or {@link #NO_INDEX}.
+     */
+    public int index() {
+        return index;
+    }
+
+    /**
+     * @return Position of the last element created, deleted or updated, or {@link #NO_INDEX}.
+     */
+    public int toIndex() {
+        return index == NO_INDEX || elements == null ? NO_INDEX : index + elements.size() - 1;
+    }
+
+    /**
+     * Updates {@code observer} with {@code change} if it is a {@link ChangeObserver}, otherwise as usual. The update
+     * is timed while it is recorded by Java Flight Recorder, see {@link FlightEvents}.
+     */
+    static <E extends Enum, S extends Subject> void update(final Observer<E, S> observer, final E field,
+                                                           final EventCRUD event, final S subject,
+                                                           final Change change) {
+        if (FlightEvents.UPDATE.isEnabled() && !(observer instanceof Completion.Tracked)) {
+            FlightEvents.update(observer, field, event, subject, change);
+        } else {
+            call(observer, field, event, subject, change);
+        }
+    }
+
+    static <E extends Enum, S extends Subject> void call(final Observer<E, S> observer, final E field,
+                                                         final EventCRUD event, final S subject,
+                                                         final Change change) {
+        if (change != null && observer instanceof ChangeObserver) {
+            ((ChangeObserver<E, S>) observer).update(field, event, subject, change);
+        } else {
+            observer.update(field, event, subject);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (elements == null) {
+            return "Change[" + oldValue + " -> " + newValue + "]";
+        }
+        return elements.size() == 1
+                ? "Change[element = " + elements.get(0) + ", index = " + index + "]"
+                : "Change[elements = " + elements + ", index = " + index + ".." + toIndex() + "]";
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+/**
+ * An {@code Observer} that is told what changed, when the {@code Subject} knows it, so that it can update itself
+ * incrementally, for instance insert a single row instead of reading and comparing the whole collection.</p>
+ * It is attached as any other {@code Observer}. Notifications carrying a {@link Change} are delivered to
+ * {@link #update(Enum, EventCRUD, Subject, Change)}, all others to {@link #update(Enum, EventCRUD, Subject)}, in which
+ * case the {@code Observer} must read the state of the {@code Subject} as usual. That is also the case when the
+ * {@code Change} is lost on the way, as when notifications are recorded by a batch.
+ *
+ * @param <E> An enum that describes which field has a change.
+ * @param <S> Subject.
+ */
+public interface ChangeObserver<E extends Enum, S extends Subject> extends Observer<E, S> {
+
+    /**
+     * @param field   Field that has changed.
+     * @param event   The event that took place.
+     * @param subject The {@code Subject} that has changed.
+     * @param change  What changed.
+     */
+    void update(final E field, final EventCRUD event, final S subject, final Change change);
+}
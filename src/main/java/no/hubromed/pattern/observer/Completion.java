@@ -0,0 +1,152 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the delivery of one notification to its {@code Observer}s, completing when all of them have been updated.
+ * Each {@code Observer} is wrapped in a {@link Tracked} {@code Observer} that counts down, whichever thread and
+ * {@code Dispatcher} it is updated by. A failing {@code Observer} does not stop the others from being updated; the
+ * failures complete the stage exceptionally with a {@link DeliveryException}. An {@link Isolation} updates the
+ * {@code Observer} inside the {@code Tracked} one, and counts it down once it has recorded how the update went.
+ */
+final class Completion extends CompletableFuture<Void> {
+
+    private final AtomicInteger remaining = new AtomicInteger();
+    private final List<Throwable> failures = new ArrayList<Throwable>();
+    private int observers;
+
+    /**
+     * Called once, with the {@code Observer}s the notification is delivered to. Completes at once if there are
+     * none.
+     *
+     * @param observers The {@code Observer}s of the notification.
+     * @return The {@code Observer}s, each wrapped to count down this completion when updated, or for a
+     *         {@code BatchObserver}, when it is given the notification.
+     */
+    <E extends Enum, S extends Subject> Observer<E, S>[] track(final Observer<E, S>[] observers) {
+        this.observers = observers.length;
+        remaining.set(observers.length);
+        if (observers.length == 0) {
+            complete(null);
+            return observers;
+        }
+        //noinspection unchecked
+        final Observer<E, S>[] tracked = new Observer[observers.length];
+        for (int i = 0; i < observers.length; i++) {
+            if (observers[i] instanceof Batching) {
+                tracked[i] = ((Batching<E, S>) observers[i]).tracking(this);
+            } else {
+                tracked[i] = observers[i] instanceof Observer.Ordered
+                        ? new OrderedTracked<E, S>(observers[i], this) : new Tracked<E, S>(observers[i], this);
+            }
+        }
+        return tracked;
+    }
+
+    /**
+     * Counts down one of the {@code Observer}s.
+     *
+     * @param failure What the {@code Observer} threw, or {@code null}.
+     */
+    void updated(final Throwable failure) {
+        if (failure != null) {
+            synchronized (failures) {
+                failures.add(failure);
+            }
+        }
+        if (remaining.decrementAndGet() == 0) {
+            synchronized (failures) {
+                if (failures.isEmpty()) {
+                    complete(null);
+                } else {
+                    completeExceptionally(new DeliveryException(observers, failures));
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates an {@code Observer}, and counts down the completion.
+     */
+    static class Tracked<E extends Enum, S extends Subject>
+            implements ChangeObserver<E, S>, Observer.Prioritized, Decorator {
+        private final Observer<E, S> observer;
+        private final Completion completion;
+
+        Tracked(final Observer<E, S> observer, final Completion completion) {
+            this.observer = observer;
+            this.completion = completion;
+        }
+
+        public void update(final E field, final EventCRUD event, final S subject) {
+            update(field, event, subject, null);
+        }
+
+        public void update(final E field, final EventCRUD event, final S subject, final Change change) {
+            Throwable failure = null;
+            try {
+                deliver(field, event, subject, change);
+            } catch (Throwable e) {
+                failure = e;
+                if (e instanceof Error) {
+                    throw (Error) e;
+                }
+            } finally {
+                updated(failure);
+            }
+        }
+
+        /**
+         * Updates the {@code Observer}, letting what it throws through.
+         */
+        void deliver(final E field, final EventCRUD event, final S subject, final Change change) {
+            Change.update(observer, field, event, subject, change);
+        }
+
+        /**
+         * Counts down the completion, once the {@code Observer} has been updated, also by someone else.
+         *
+         * @param failure What the {@code Observer} threw, or {@code null}.
+         */
+        void updated(final Throwable failure) {
+            completion.updated(failure);
+        }
+
+        public Observer<E, S> unwrap() {
+            return observer;
+        }
+
+        public int priority() {
+            return observer instanceof Observer.Prioritized ? ((Observer.Prioritized) observer).priority() : 0;
+        }
+    }
+
+    /**
+     * Keeps the {@link Observer.Ordered} marker of the {@code Observer}.
+     */
+    private static final class OrderedTracked<E extends Enum, S extends Subject> extends Tracked<E, S>
+            implements Observer.Ordered {
+        OrderedTracked(final Observer<E, S> observer, final Completion completion) {
+            super(observer, completion);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+/**
+ * An {@code Observer} standing in for another, such as the one applying a {@link DeliveryPolicy}, or the one tracking
+ * a notification for {@code notifyAsync}. The {@code Subject} compares the {@code Observer}s they decorate, see
+ * {@link Registry#unwrap(Observer)}, so that attaching the {@code Observer} again replaces the decorator, and
+ * detaching it removes it, whichever of the two was attached first. An {@link Isolation} tracks the health of the
+ * {@code Observer} decorated as well.
+ */
+interface Decorator {
+
+    /**
+     * @return The {@code Observer} decorated.
+     */
+    Observer unwrap();
+
+    /**
+     * A {@code Decorator} giving the notifications to the {@code Observer} it decorates through
+     * {@link AbstractSubject#update(Observer, Enum, EventCRUD, Change)}, whenever it lets them through. It is not
+     * isolated, watched or recorded itself, so that the {@code Observer} is not counted twice.
+     */
+    interface Forwarding extends Decorator {
+    }
+}
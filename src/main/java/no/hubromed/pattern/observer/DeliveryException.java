@@ -0,0 +1,60 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown, or used to complete a {@code CompletionStage} exceptionally, when one or more {@code Observer}s failed to
+ * process a notification. The first failure is the cause, and the others are suppressed.
+ */
+public class DeliveryException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int observers;
+    private final List<Throwable> failures;
+
+    /**
+     * @param observers Number of {@code Observer}s that were updated.
+     * @param failures  What the failing {@code Observer}s threw, at least one.
+     */
+    public DeliveryException(final int observers, final List<Throwable> failures) {
+        super(failures.size() + " of " + observers + " Observers failed: " + failures.get(0), failures.get(0));
+        this.observers = observers;
+        this.failures = Collections.unmodifiableList(new ArrayList<Throwable>(failures));
+        for (int i = 1; i < failures.size(); i++) {
+            addSuppressed(failures.get(i));
+        }
+    }
+
+    /**
+     * @return Number of {@code Observer}s that were updated, including those that failed.
+     */
+    public int getObservers() {
+        return observers;
+    }
+
+    /**
+     * @return What the failing {@code Observer}s threw, in the order they failed.
+     */
+    public List<Throwable> getFailures() {
+        return failures;
+    }
+}
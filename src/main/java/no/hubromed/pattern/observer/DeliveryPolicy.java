@@ -0,0 +1,315 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@code DeliveryPolicy} limits how often an {@code Observer} is updated, for instance a status bar that does not
+ * need to repaint for every keystroke:
+ * <pre>
+ * subject.attach(statusBar, EventCRUD.CUD, DeliveryPolicy.debounce(200), Field.TEXT);
+ * </pre>
+ * Notifications held back are delivered later, each distinct field and event once, in the order they were first
+ * notified. They are delivered using the {@link Dispatcher} of the {@code Subject}, so the {@code Observer} of an
+ * {@link Subject.AsynchronousSubject} is still updated on the event dispatch thread. Since the {@code Observer} of a
+ * {@link Subject.SynchronousSubject} has no thread of its own to be updated on, it is updated on the thread of the
+ * shared timer instead, and must be quick.</p>
+ * All the policies share one timer wheel, so that a policy costs no thread, and no timer of its own. The
+ * {@link EventCRUD#INITIAL} event sent on attach is never held back.
+ *
+ * @see AbstractSubject#attach(Observer, java.util.Set, DeliveryPolicy, Enum[])
+ */
+public abstract class DeliveryPolicy {
+
+    private DeliveryPolicy() {
+    }
+
+    /**
+     * @param perSecond Maximum number of times per second the {@code Observer} is updated.
+     * @return Policy updating the {@code Observer} at once, unless it was updated less than {@code 1 / perSecond}
+     *         seconds ago, in which case the notifications are held back until that much time has passed.
+     */
+    public static DeliveryPolicy throttle(final int perSecond) {
+        Validate.isTrue(perSecond > 0, "Please allow 1 or more deliveries per second");
+        return new Throttle(TimeUnit.SECONDS.toNanos(1) / perSecond);
+    }
+
+    /**
+     * @param quietMillis Milliseconds without any notification before the {@code Observer} is updated.
+     * @return Policy holding the notifications back until the {@code Subject} has been quiet for
+     *         {@code quietMillis}.
+     */
+    public static DeliveryPolicy debounce(final long quietMillis) {
+        Validate.isTrue(quietMillis > 0, "Please debounce for 1 or more milliseconds");
+        return new Debounce(TimeUnit.MILLISECONDS.toNanos(quietMillis));
+    }
+
+    /**
+     * Since the {@code Observer} is not updated with the notifications in between, it may not see the latest state
+     * of the {@code Subject} until the next sample.
+     *
+     * @param every Number of notifications per update of the {@code Observer}.
+     * @return Policy updating the {@code Observer} with the first notification, and then every {@code every}th.
+     */
+    public static DeliveryPolicy sample(final int every) {
+        Validate.isTrue(every > 0, "Please sample every 1 or more notifications");
+        return new Sample(every);
+    }
+
+    /**
+     * @param observer {@code Observer} attaching.
+     * @param subject  {@code Subject} that {@code observer} is attaching to.
+     * @return {@code Observer} applying this policy to {@code observer}, a {@link Decorator} so that it can be
+     *         replaced and detached with {@code observer}.
+     */
+    abstract <E extends Enum, S extends Subject> Observer<E, S> apply(Observer<E, S> observer,
+                                                                      AbstractSubject<E, S> subject);
+
+    private static final class Throttle extends DeliveryPolicy {
+        private final long intervalNanos;
+
+        Throttle(final long intervalNanos) {
+            this.intervalNanos = intervalNanos;
+        }
+
+        <E extends Enum, S extends Subject> Observer<E, S> apply(final Observer<E, S> observer,
+                                                                 final AbstractSubject<E, S> subject) {
+            return new PolicyObserver<E, S>(observer, subject) {
+                private long last = System.nanoTime() - intervalNanos;
+
+                void filter(final E field, final EventCRUD event, final S source) {
+                    synchronized (this) {
+                        final long now = System.nanoTime();
+                        if (!pending() && now - last >= intervalNanos) {
+                            last = now;
+                        } else {
+                            if (defer(field, event)) {
+                                schedule(last + intervalNanos - now);
+                            }
+                            return;
+                        }
+                    }
+                    deliver(field, event);
+                }
+
+                @Override
+                void flushed() {
+                    last = System.nanoTime();
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return "throttle(" + TimeUnit.SECONDS.toNanos(1) / intervalNanos + "/s)";
+        }
+    }
+
+    private static final class Debounce extends DeliveryPolicy {
+        private final long quietNanos;
+
+        Debounce(final long quietNanos) {
+            this.quietNanos = quietNanos;
+        }
+
+        <E extends Enum, S extends Subject> Observer<E, S> apply(final Observer<E, S> observer,
+                                                                 final AbstractSubject<E, S> subject) {
+            return new PolicyObserver<E, S>(observer, subject) {
+                private long deadline;
+
+                void filter(final E field, final EventCRUD event, final S source) {
+                    synchronized (this) {
+                        // Rather than rescheduling on every notification, the timer checks the deadline when it fires.
+                        deadline = System.nanoTime() + quietNanos;
+                        if (defer(field, event)) {
+                            schedule(quietNanos);
+                        }
+                    }
+                }
+
+                @Override
+                void expired() {
+                    synchronized (this) {
+                        final long remaining = deadline - System.nanoTime();
+                        if (remaining > 0) {
+                            schedule(remaining);
+                            return;
+                        }
+                    }
+                    super.expired();
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return "debounce(" + TimeUnit.NANOSECONDS.toMillis(quietNanos) + "ms)";
+        }
+    }
+
+    private static final class Sample extends DeliveryPolicy {
+        private final int every;
+
+        Sample(final int every) {
+            this.every = every;
+        }
+
+        <E extends Enum, S extends Subject> Observer<E, S> apply(final Observer<E, S> observer,
+                                                                 final AbstractSubject<E, S> subject) {
+            return new PolicyObserver<E, S>(observer, subject) {
+                private int count;
+
+                void filter(final E field, final EventCRUD event, final S source) {
+                    synchronized (this) {
+                        if (count++ % every != 0) {
+                            return;
+                        }
+                    }
+                    deliver(field, event);
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return "sample(" + every + ")";
+        }
+    }
+
+    /**
+     * The {@code Observer} attached in place of the one given, holding back notifications until the policy lets
+     * them through. The notifications let through are given to the {@code Observer} through the {@code Subject}, as
+     * any other update, so that its {@code Isolation} and the {@code StallWatchdog} apply, also on the thread of the
+     * timer.
+     */
+    private abstract static class PolicyObserver<E extends Enum, S extends Subject>
+            implements Observer<E, S>, Observer.Prioritized, Decorator.Forwarding {
+        private final Observer<E, S> observer;
+        private final AbstractSubject<E, S> subject;
+        private Batch<E> pending;
+        private boolean scheduled;
+
+        private final Runnable expire = new Runnable() {
+            public void run() {
+                expired();
+            }
+        };
+
+        private final Runnable flush = new Runnable() {
+            public void run() {
+                flush();
+            }
+        };
+
+        PolicyObserver(final Observer<E, S> observer, final AbstractSubject<E, S> subject) {
+            this.observer = observer;
+            this.subject = subject;
+        }
+
+        public final void update(final E field, final EventCRUD event, final S source) {
+            if (event == EventCRUD.INITIAL) {
+                observer.update(field, event, source);
+            } else {
+                filter(field, event, source);
+            }
+        }
+
+        /**
+         * Decides whether the notification is delivered now, held back, or dropped.
+         */
+        abstract void filter(E field, EventCRUD event, S source);
+
+        /**
+         * Called when the timer scheduled by {@link #schedule(long)} fires, on the thread of the timer.
+         */
+        void expired() {
+            subject.dispatcher().execute(flush);
+        }
+
+        /**
+         * Called holding the lock, when the notifications held back have been taken for delivery.
+         */
+        void flushed() {
+        }
+
+        /**
+         * Must be called holding the lock.
+         *
+         * @return {@code true} if notifications are held back.
+         */
+        final boolean pending() {
+            return pending != null;
+        }
+
+        /**
+         * Holds the notification back. Must be called holding the lock.
+         *
+         * @return {@code true} if the caller must {@link #schedule(long)} the delivery, {@code false} if it already
+         *         is scheduled.
+         */
+        final boolean defer(final E field, final EventCRUD event) {
+            if (pending == null) {
+                pending = new Batch<E>();
+            }
+            pending.record(field, event);
+            if (scheduled) {
+                return false;
+            }
+            scheduled = true;
+            return true;
+        }
+
+        final void schedule(final long delayNanos) {
+            TimerWheel.shared().schedule(expire, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        final void deliver(final E field, final EventCRUD event) {
+            subject.update(observer, field, event, null);
+        }
+
+        private void flush() {
+            final Batch<E> batch;
+            synchronized (this) {
+                batch = pending;
+                pending = null;
+                scheduled = false;
+                flushed();
+            }
+            // Notifications held back for an Observer that has since been detached are dropped.
+            if (batch == null || !subject.attached(this)) {
+                return;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                deliver(batch.field(i), batch.event(i));
+            }
+        }
+
+        public Observer unwrap() {
+            return observer;
+        }
+
+        public int priority() {
+            return observer instanceof Observer.Prioritized ? ((Observer.Prioritized) observer).priority() : 0;
+        }
+
+        @Override
+        public String toString() {
+            return observer.toString();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * Buffer of notifications waiting to be delivered by a {@code Subject}. Notifications are appended by any thread
+ * with {@link #offer(Enum, EventCRUD, Change, Observer[])}, and delivered in order when the queue itself is run by its
+ * {@code Executor}. Only one run is scheduled per drain, no matter how many notifications are added before it runs,
+ * and runs never overlap.</p>
+ * The queue is double buffered: a run swaps the buffers and delivers the notifications without holding the lock,
+ * so that publishers are never blocked by slow {@code Observer}s.</p>
+ * Run by a {@link FrameScheduler}, the queue hands each notification it drains to the scheduler, to be delivered
+ * per {@code Observer} by priority, so that notifications are coalesced before they are sliced.
+ *
+ * @param <E> An enum that describes the fields that we can observe.
+ * @param <S> Subject.
+ */
+final class DeliveryQueue<E extends Enum, S extends Subject> implements Runnable {
+
+    private static final int EVENTS = EventCRUD.values().length;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final AbstractSubject<E, S> subject;
+    private final Executor executor;
+    private final FrameScheduler scheduler;
+
+    private Buffer<E, S> pending = new Buffer<E, S>();
+    private Buffer<E, S> draining = new Buffer<E, S>();
+    private long[] queued = new long[1];
+    private boolean scheduled;
+
+    /**
+     * @param subject  Subject delivering the notifications. Decides which fields and events that are collapsed while
+     *                 waiting, see {@link AbstractSubject#collapses(Enum, EventCRUD)}.
+     * @param executor Runs the queue, on the thread the notifications should be delivered on.
+     */
+    DeliveryQueue(final AbstractSubject<E, S> subject, final Executor executor) {
+        this.subject = subject;
+        this.executor = executor;
+        this.scheduler = executor instanceof FrameScheduler ? (FrameScheduler) executor : null;
+    }
+
+    /**
+     * @return Runs the queue.
+     */
+    Executor executor() {
+        return executor;
+    }
+
+    /**
+     * Appends a notification to the queue, and schedules a run unless one is already scheduled.
+     *
+     * @param field     Field being notified about.
+     * @param event     Type of event.
+     * @param change      What changed, or {@code null}.
+     * @param observers   The {@code Observer}s to notify.
+     * @param collapsible {@code false} if the notification must be delivered, even if the same field and event
+     *                    already is waiting, as when it carries a change.
+     */
+    void offer(final E field, final EventCRUD event, final Change change, final Observer<E, S>[] observers,
+               final boolean collapsible) {
+        final long queuedAt = FlightEvents.queued();
+        synchronized (this) {
+            if (collapsible && subject.collapses(field, event)) {
+                final int key = field.ordinal() * EVENTS + event.ordinal();
+                final int word = key >>> 6;
+                if (word >= queued.length) {
+                    queued = Arrays.copyOf(queued, Math.max(word + 1, queued.length * 2));
+                }
+                if ((queued[word] & (1L << key)) != 0) {
+                    return;
+                }
+                queued[word] |= 1L << key;
+            }
+            pending.add(field, event, change, observers, queuedAt);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        executor.execute(this);
+    }
+
+    /**
+     * Delivers all notifications added since the previous run, in the order they were added. Notifications added
+     * while running are delivered by a new run. If an {@code Observer} throws, the notifications after the one it
+     * threw on are kept, ahead of those added since, and delivered by a new run, so that the queue keeps running.
+     */
+    public void run() {
+        final Buffer<E, S> buffer;
+        synchronized (this) {
+            buffer = pending;
+            pending = draining;
+            draining = buffer;
+            Arrays.fill(queued, 0L);
+        }
+        int next = 0;
+        try {
+            for (; next < buffer.size; next++) {
+                if (scheduler != null) {
+                    //noinspection unchecked
+                    scheduler.offer(subject, (E) buffer.fields[next], buffer.events[next], buffer.changes[next],
+                            buffer.observers[next]);
+                } else {
+                    //noinspection unchecked
+                    FlightEvents.deliver(subject, buffer.queued[next], (E) buffer.fields[next], buffer.events[next],
+                            buffer.changes[next], buffer.observers[next]);
+                }
+            }
+        } finally {
+            final boolean more;
+            synchronized (this) {
+                if (next < buffer.size) {
+                    buffer.removeFirst(next + 1);
+                    buffer.addAll(pending);
+                    pending.clear();
+                    draining = pending;
+                    pending = buffer;
+                } else {
+                    buffer.clear();
+                }
+                more = pending.size > 0;
+                scheduled = more;
+            }
+            if (more) {
+                executor.execute(this);
+            }
+        }
+    }
+
+    /**
+     * Parallel arrays holding the notifications, reused between runs.
+     */
+    private static final class Buffer<E extends Enum, S extends Subject> {
+        private Enum[] fields = new Enum[INITIAL_CAPACITY];
+        private EventCRUD[] events = new EventCRUD[INITIAL_CAPACITY];
+        private Change[] changes = new Change[INITIAL_CAPACITY];
+        private Observer[][] observers = new Observer[INITIAL_CAPACITY][];
+        private long[] queued = new long[INITIAL_CAPACITY];
+        private int size;
+
+        void add(final E field, final EventCRUD event, final Change change, final Observer<E, S>[] targets,
+                 final long queuedAt) {
+            if (size == fields.length) {
+                fields = Arrays.copyOf(fields, size * 2);
+                events = Arrays.copyOf(events, size * 2);
+                changes = Arrays.copyOf(changes, size * 2);
+                observers = Arrays.copyOf(observers, size * 2);
+                queued = Arrays.copyOf(queued, size * 2);
+            }
+            fields[size] = field;
+            events[size] = event;
+            changes[size] = change;
+            observers[size] = targets;
+            queued[size] = queuedAt;
+            size++;
+        }
+
+        void addAll(final Buffer<E, S> other) {
+            for (int i = 0; i < other.size; i++) {
+                //noinspection unchecked
+                add((E) other.fields[i], other.events[i], other.changes[i], other.observers[i], other.queued[i]);
+            }
+        }
+
+        /**
+         * Removes the first {@code count} notifications, moving the others to the front.
+         */
+        void removeFirst(final int count) {
+            final int remaining = size - count;
+            System.arraycopy(fields, count, fields, 0, remaining);
+            System.arraycopy(events, count, events, 0, remaining);
+            System.arraycopy(changes, count, changes, 0, remaining);
+            System.arraycopy(observers, count, observers, 0, remaining);
+            System.arraycopy(queued, count, queued, 0, remaining);
+            Arrays.fill(fields, remaining, size, null);
+            Arrays.fill(events, remaining, size, null);
+            Arrays.fill(changes, remaining, size, null);
+            Arrays.fill(observers, remaining, size, null);
+            size = remaining;
+        }
+
+        void clear() {
+            Arrays.fill(fields, 0, size, null);
+            Arrays.fill(events, 0, size, null);
+            Arrays.fill(changes, 0, size, null);
+            Arrays.fill(observers, 0, size, null);
+            size = 0;
+        }
+    }
+}
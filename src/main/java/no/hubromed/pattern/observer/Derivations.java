@@ -0,0 +1,178 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable graph of the derived fields of a subject, and the fields they depend on. For each field it holds the
+ * derived fields that depend on it, directly or through other derived fields, in topological order: a derived field
+ * comes after all the derived fields it depends on, so that each of them is notified once per change, after the
+ * values it is computed from.
+ *
+ * @param <E> An enum that describes the fields that we can observe.
+ */
+final class Derivations<E extends Enum> {
+
+    private static final Enum[] NONE = new Enum[0];
+    private static final byte VISITING = 1;
+    private static final byte VISITED = 2;
+
+    private final Derived[] values;
+    private final Enum[][] dependencies;
+    private final Enum[] order;
+    private final Enum[][] dependents;
+
+    private Derivations(final Enum[] fields, final Derived[] values, final Enum[][] dependencies) {
+        this.values = values;
+        this.dependencies = dependencies;
+        this.order = sort(fields, dependencies);
+        this.dependents = new Enum[values.length][];
+        final boolean[] affected = new boolean[values.length];
+        for (int source = 0; source < values.length; source++) {
+            affected[source] = true;
+            dependents[source] = collect(affected);
+            affected[source] = false;
+        }
+    }
+
+    /**
+     * @param current   The derived fields declared so far, or {@code null} for none.
+     * @param field     The derived field.
+     * @param value     Value of {@code field}.
+     * @param dependsOn Fields that {@code field} is computed from.
+     * @return The derived fields, with {@code field} added.
+     * @throws IllegalArgumentException If {@code field} already is derived, or would depend on itself.
+     */
+    static <E extends Enum> Derivations<E> with(final Derivations<E> current, final E field, final Derived<?> value,
+                                                final E[] dependsOn) {
+        Validate.isTrue(dependsOn.length > 0, "A derived field must depend on 1 or more fields");
+        final Enum[] fields = (Enum[]) field.getDeclaringClass().getEnumConstants();
+        final Derived[] values = current == null ? new Derived[fields.length] : current.values.clone();
+        final Enum[][] dependencies = current == null ? new Enum[fields.length][] : current.dependencies.clone();
+        Validate.isTrue(values[field.ordinal()] == null, field + " is already derived");
+        for (E dependency : dependsOn) {
+            Validate.notNull(dependency, "Field");
+            Validate.isTrue(dependency != field, field + " cannot depend on itself");
+        }
+        values[field.ordinal()] = value;
+        dependencies[field.ordinal()] = dependsOn.clone();
+        return new Derivations<E>(fields, values, dependencies);
+    }
+
+    /**
+     * Orders the derived fields so that each comes after the derived fields it depends on.
+     *
+     * @throws IllegalArgumentException If the fields depend on each other in a cycle.
+     */
+    private static Enum[] sort(final Enum[] fields, final Enum[][] dependencies) {
+        final List<Enum> order = new ArrayList<Enum>();
+        final byte[] state = new byte[fields.length];
+        for (Enum field : fields) {
+            visit(field, dependencies, state, order);
+        }
+        return order.toArray(new Enum[order.size()]);
+    }
+
+    private static void visit(final Enum field, final Enum[][] dependencies, final byte[] state,
+                              final List<Enum> order) {
+        final int ordinal = field.ordinal();
+        if (dependencies[ordinal] == null || state[ordinal] == VISITED) {
+            return;
+        }
+        Validate.isTrue(state[ordinal] != VISITING, "The derived fields depend on each other in a cycle through "
+                + field);
+        state[ordinal] = VISITING;
+        for (Enum dependency : dependencies[ordinal]) {
+            visit(dependency, dependencies, state, order);
+        }
+        state[ordinal] = VISITED;
+        order.add(field);
+    }
+
+    /**
+     * @param changed The fields that changed, by ordinal. The derived fields depending on them are marked as well.
+     * @return The derived fields that changed, either themselves or through the fields they depend on, in
+     *         topological order.
+     */
+    private Enum[] collect(final boolean[] changed) {
+        final List<Enum> affected = new ArrayList<Enum>();
+        for (Enum derived : order) {
+            boolean stale = changed[derived.ordinal()];
+            for (Enum dependency : dependencies[derived.ordinal()]) {
+                stale |= changed[dependency.ordinal()];
+            }
+            if (stale) {
+                changed[derived.ordinal()] = true;
+                affected.add(derived);
+            }
+        }
+        return affected.isEmpty() ? NONE : affected.toArray(new Enum[affected.size()]);
+    }
+
+    /**
+     * @param event Type of event.
+     * @return {@code true} if the event changes the value of a field, and so of the fields derived from it.
+     */
+    static boolean changes(final EventCRUD event) {
+        return event == EventCRUD.CREATE || event == EventCRUD.UPDATE || event == EventCRUD.DELETE;
+    }
+
+    /**
+     * @param field Field of the subject.
+     * @return {@code true} if {@code field} is derived.
+     */
+    boolean isDerived(final E field) {
+        return values[field.ordinal()] != null;
+    }
+
+    /**
+     * @param field Field that changed.
+     * @return The derived fields that change when {@code field} changes, including {@code field} itself if it is
+     *         derived, in topological order. Must not be modified.
+     */
+    E[] dependents(final E field) {
+        //noinspection unchecked
+        return (E[]) dependents[field.ordinal()];
+    }
+
+    /**
+     * @param changed The fields that changed, by ordinal.
+     * @return The derived fields that change, in topological order.
+     */
+    E[] dependents(final boolean[] changed) {
+        //noinspection unchecked
+        return (E[]) collect(changed.clone());
+    }
+
+    /**
+     * @return Number of fields of the subject.
+     */
+    int size() {
+        return values.length;
+    }
+
+    /**
+     * Marks the values of the {@code fields} as stale.
+     */
+    void invalidate(final E[] fields) {
+        for (E field : fields) {
+            values[field.ordinal()].invalidate();
+        }
+    }
+}
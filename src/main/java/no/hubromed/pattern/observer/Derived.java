@@ -0,0 +1,85 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Value of a derived field, computed from other fields of the subject, such as a sum of a list. Declare it on the
+ * subject with {@code derive(field, derived, dependsOn...)}, and the subject notifies the derived field whenever one
+ * of the fields it depends on is notified, without the setters having to know about it.</p>
+ * The value is computed lazily: {@link #get()} only calls {@link #compute()} on the first read after a change, so an
+ * expensive aggregate is computed at most once per change, and never when nobody reads it.
+ * <pre>
+ * private final Derived&lt;Integer&gt; sum = delegate.derive(Field.SUM, new Derived&lt;Integer&gt;() {
+ *     protected Integer compute() {
+ *         return sum(values);
+ *     }
+ * }, Field.VALUES);
+ * </pre>
+ *
+ * @param <T> Type of the value.
+ */
+public abstract class Derived<T> {
+
+    private static final AtomicLongFieldUpdater<Derived> VERSION =
+            AtomicLongFieldUpdater.newUpdater(Derived.class, "version");
+
+    private volatile long version;
+    private volatile long computed = -1;
+    private volatile T value;
+
+    /**
+     * Computes the value from the current state of the subject. Called by {@link #get()}, at most one thread at a
+     * time.
+     *
+     * @return The value.
+     */
+    protected abstract T compute();
+
+    /**
+     * @return The value, computed if any of the fields it depends on have changed since it was last computed.
+     */
+    public T get() {
+        if (computed == version) {
+            return value;
+        }
+        synchronized (this) {
+            // Changes made while computing leave the value stale, so that the next read computes it again.
+            final long current = version;
+            if (computed != current) {
+                value = compute();
+                computed = current;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Marks the value as stale, to be computed on the next read.
+     */
+    public void invalidate() {
+        VERSION.incrementAndGet(this);
+    }
+
+    /**
+     * @return {@code true} if the value has to be computed on the next read.
+     */
+    public boolean isStale() {
+        return computed != version;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable lookup table from a field and an event to the {@code Observer}s subscribing to exactly that combination.
+ * The table is indexed by the ordinal of the field and the ordinal of the event, in the same manner as an
+ * {@code EnumMap}.</p>
+ * A new index is built every time an {@code Observer} attaches or detaches (copy-on-write), so that publishing a
+ * change only reads the index, and neither locks, copies nor allocates.
+ *
+ * @param <E> An enum that describes the fields that we can observe.
+ * @param <S> Subject.
+ */
+final class DispatchIndex<E extends Enum, S extends Subject> {
+
+    private static final Observer[] NONE = new Observer[0];
+    private static final DispatchIndex EMPTY = new DispatchIndex(new Observer[0][][]);
+
+    private final Observer<E, S>[][][] table;
+
+    private DispatchIndex(final Observer<E, S>[][][] table) {
+        this.table = table;
+    }
+
+    /**
+     * @return An index without any {@code Observer}s.
+     */
+    static <E extends Enum, S extends Subject> DispatchIndex<E, S> empty() {
+        //noinspection unchecked
+        return EMPTY;
+    }
+
+    /**
+     * Builds a new index. The {@code Observer}s keep the order of {@code observers} within each slot.
+     *
+     * @param observers     All attached {@code Observer}s.
+     * @param subscriptions The fields and events each of the {@code observers} subscribes to, in the same order.
+     * @return A new index.
+     */
+    static <E extends Enum, S extends Subject> DispatchIndex<E, S> build(final Observer<E, S>[] observers,
+                                                                       final Subscription[] subscriptions) {
+        int size = 0;
+        for (Subscription subscription : subscriptions) {
+            size = Math.max(size, subscription.length());
+        }
+        if (size == 0) {
+            return empty();
+        }
+
+        final EventCRUD[] allEvents = EventCRUD.values();
+        //noinspection unchecked
+        final Observer<E, S>[][][] table = new Observer[size][allEvents.length][];
+        final List<Observer<E, S>> matching = new ArrayList<Observer<E, S>>();
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            for (EventCRUD event : allEvents) {
+                matching.clear();
+                for (int i = 0; i < observers.length; i++) {
+                    if (subscriptions[i].matches(ordinal, event)) {
+                        matching.add(observers[i]);
+                    }
+                }
+                //noinspection unchecked
+                table[ordinal][event.ordinal()] = matching.isEmpty() ? NONE : matching.toArray(new Observer[matching.size()]);
+            }
+        }
+        return new DispatchIndex<E, S>(table);
+    }
+
+    /**
+     * @param field Field being notified about.
+     * @param event Type of event.
+     * @return The {@code Observer}s subscribing to both {@code field} and {@code event}. Never {@code null}, and
+     *         must not be modified.
+     */
+    Observer<E, S>[] observers(final E field, final EventCRUD event) {
+        final int ordinal = field.ordinal();
+        if (ordinal >= table.length) {
+            //noinspection unchecked
+            return NONE;
+        }
+        return table[ordinal][event.ordinal()];
+    }
+}
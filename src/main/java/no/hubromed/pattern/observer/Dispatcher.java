@@ -0,0 +1,41 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A {@code Dispatcher} decides on which thread a {@code Subject} updates its {@code Observer}s. When a notification is
+ * made on a thread the {@code Dispatcher} considers its own, the {@code Observer}s are updated directly. Otherwise
+ * the delivery is handed to {@link #execute(Runnable)}.</p>
+ * Ready made implementations, such as the Swing event dispatch thread, are found in {@link Dispatchers}. A
+ * {@code Subject} is given its {@code Dispatcher} when constructed, see {@link Subject.DispatchingSubject}.
+ */
+public interface Dispatcher extends Executor {
+
+    /**
+     * @return {@code true} if {@code Observer}s may be updated directly on the calling thread.
+     */
+    boolean isDispatchThread();
+
+    /**
+     * Runs a delivery of notifications on a thread belonging to this {@code Dispatcher}.
+     *
+     * @param delivery Updates the {@code Observer}s when run.
+     */
+    void execute(Runnable delivery);
+}
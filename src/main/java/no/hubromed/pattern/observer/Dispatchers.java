@@ -0,0 +1,171 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+
+/**
+ * Factory of the common {@link Dispatcher}s.
+ */
+public final class Dispatchers {
+
+    private static final Dispatcher INLINE = new Dispatcher() {
+        public boolean isDispatchThread() {
+            return true;
+        }
+
+        public void execute(final Runnable delivery) {
+            delivery.run();
+        }
+    };
+
+    private static final Dispatcher EVENT_DISPATCH_THREAD = new Dispatcher() {
+        public boolean isDispatchThread() {
+            return SwingUtilities.isEventDispatchThread();
+        }
+
+        public void execute(final Runnable delivery) {
+            SwingUtilities.invokeLater(delivery);
+        }
+    };
+
+    private static final Method VIRTUAL_THREADS = virtualThreads();
+
+    private Dispatchers() {
+    }
+
+    /**
+     * @return {@code Dispatcher} updating the {@code Observer}s on the thread making the notification, as
+     *         {@link Subject.SynchronousSubject} does.
+     */
+    public static Dispatcher inline() {
+        return INLINE;
+    }
+
+    /**
+     * @return {@code Dispatcher} updating the {@code Observer}s on the Swing event dispatch thread, as
+     *         {@link Subject.AsynchronousSubject} does.
+     */
+    public static Dispatcher eventDispatchThread() {
+        return EVENT_DISPATCH_THREAD;
+    }
+
+    /**
+     * Share the {@code Dispatcher} between all the {@code Subject}s of the user interface.
+     *
+     * @param budget Longest time spent updating {@code Observer}s before yielding to paint and input events.
+     * @param unit   Unit of {@code budget}.
+     * @return {@code Dispatcher} updating the {@code Observer}s on the Swing event dispatch thread, in time slices,
+     *         see {@link FrameScheduler}.
+     */
+    public static Dispatcher eventDispatchThread(final long budget, final TimeUnit unit) {
+        return new FrameScheduler(budget, unit);
+    }
+
+    /**
+     * @param name Name of the thread.
+     * @return {@code Dispatcher} updating the {@code Observer}s, in order, on a single daemon thread of its own.
+     */
+    public static Dispatcher serial(final String name) {
+        Validate.notNull(name, "name");
+        final Thread[] worker = new Thread[1];
+        final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                worker[0] = thread;
+                return thread;
+            }
+        });
+        return new Dispatcher() {
+            public boolean isDispatchThread() {
+                return Thread.currentThread() == worker[0];
+            }
+
+            public void execute(final Runnable delivery) {
+                executor.execute(delivery);
+            }
+        };
+    }
+
+    /**
+     * Note that the {@code executor} may run deliveries concurrently and out of order if the {@code Subject} is not
+     * coalescing (see {@code setCoalescing(boolean)}). A coalescing {@code Subject} never runs more than one delivery
+     * at a time.
+     *
+     * @param executor Runs the deliveries.
+     * @return {@code Dispatcher} updating the {@code Observer}s on the threads of {@code executor}.
+     */
+    public static Dispatcher executor(final Executor executor) {
+        Validate.notNull(executor, "executor");
+        return new Dispatcher() {
+            public boolean isDispatchThread() {
+                return false;
+            }
+
+            public void execute(final Runnable delivery) {
+                executor.execute(delivery);
+            }
+        };
+    }
+
+    /**
+     * @return {@code true} if the Java runtime has virtual threads (Java 21 or later), see
+     *         {@link #virtualThreads(Executor)}.
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return VIRTUAL_THREADS != null;
+    }
+
+    /**
+     * Use when the {@code Observer}s block, as on I/O, and the Java runtime may have virtual threads. Otherwise, use
+     * {@link #executor(Executor)}.
+     *
+     * @param fallback Runs the deliveries if the Java runtime does not have virtual threads.
+     * @return {@code Dispatcher} updating the {@code Observer}s on a new virtual thread for each delivery, or on the
+     *         threads of {@code fallback} if the Java runtime does not have virtual threads, see
+     *         {@link #isVirtualThreadsAvailable()}.
+     */
+    public static Dispatcher virtualThreads(final Executor fallback) {
+        Validate.notNull(fallback, "fallback");
+        if (VIRTUAL_THREADS == null) {
+            return executor(fallback);
+        }
+        try {
+            return executor((Executor) VIRTUAL_THREADS.invoke(null));
+        } catch (Exception e) {
+            return executor(fallback);
+        }
+    }
+
+    /**
+     * @return {@code Executors.newVirtualThreadPerTaskExecutor()}, or {@code null} before Java 21.
+     */
+    private static Method virtualThreads() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -16,9 +16,8 @@
 
 package no.hubromed.pattern.observer;
 
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.EnumSet;
 import java.util.Set;
 
 /**
@@ -99,10 +98,27 @@ public enum EventCRUD {
     }
 
 
-    private static Set<EventCRUD> create(EventCRUD... elements) {
-        Set<EventCRUD> set = new HashSet<EventCRUD>(elements.length);
-        set.addAll(Arrays.asList(elements));
-        return Collections.unmodifiableSet(set);
+    private static Set<EventCRUD> create(EventCRUD first, EventCRUD... rest) {
+        return Collections.unmodifiableSet(EnumSet.of(first, rest));
+    }
+
+    /**
+     * @return The bit representing this event in a mask made by {@link #mask(Set)}.
+     */
+    int mask() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * @param events Set of events.
+     * @return The events as a bit mask, one bit per event ordinal.
+     */
+    static int mask(final Set<EventCRUD> events) {
+        int mask = 0;
+        for (EventCRUD event : events) {
+            mask |= event.mask();
+        }
+        return mask;
     }
 
 
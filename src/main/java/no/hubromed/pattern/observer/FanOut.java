@@ -0,0 +1,119 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Updates a range of {@code Observer}s in parallel, by splitting it in halves until each part is small enough to be
+ * updated by one worker of a {@code ForkJoinPool}. {@link Observer.Ordered} {@code Observer}s are skipped, as they are
+ * updated in order by the thread making the notification, see {@link #deliver(ForkJoinPool, Enum, EventCRUD,
+ * Change, Observer[], AbstractSubject)}. Each {@code Observer} is updated through the {@code Subject}, so that its
+ * {@code Isolation} and the {@code StallWatchdog} apply as on the thread making the notification.
+ *
+ * @param <E> An enum that describes the fields that we can observe.
+ * @param <S> Subject.
+ */
+final class FanOut<E extends Enum, S extends Subject> extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final E field;
+    private final EventCRUD event;
+    private final Change change;
+    private final Observer<E, S>[] observers;
+    private final AbstractSubject<E, S> subject;
+    private final int from;
+    private final int to;
+    private final int grain;
+
+    private FanOut(final E field, final EventCRUD event, final Change change, final Observer<E, S>[] observers,
+                   final AbstractSubject<E, S> subject, final int from, final int to, final int grain) {
+        this.field = field;
+        this.event = event;
+        this.change = change;
+        this.observers = observers;
+        this.subject = subject;
+        this.from = from;
+        this.to = to;
+        this.grain = grain;
+    }
+
+    /**
+     * Updates all the {@code observers}, and returns once all of them have finished. If any of them fail, the
+     * failure is thrown when the others have finished.
+     *
+     * @param pool      Pool updating the {@code Observer}s that are not {@link Observer.Ordered}.
+     * @param field     Field being observed.
+     * @param event     An event the {@code observers} are interested in.
+     * @param change    What changed, or {@code null}.
+     * @param observers The observers that will receive the message.
+     * @param subject   The {@code Subject} updating the {@code observers}.
+     */
+    static <E extends Enum, S extends Subject> void deliver(final ForkJoinPool pool, final E field,
+                                                            final EventCRUD event, final Change change,
+                                                            final Observer<E, S>[] observers,
+                                                            final AbstractSubject<E, S> subject) {
+        // A few parts per worker, so that a worker finishing early can steal from the others.
+        final int grain = Math.max(1, observers.length / (pool.getParallelism() * 4));
+        final FanOut<E, S> task = new FanOut<E, S>(field, event, change, observers, subject, 0, observers.length, grain);
+        final ForkJoinTask<Void> forked = ForkJoinTask.getPool() == pool ? task.fork() : pool.submit(task);
+        try {
+            for (final Observer<E, S> observer : observers) {
+                if (observer instanceof Observer.Ordered) {
+                    subject.update(observer, field, event, change);
+                }
+            }
+        } finally {
+            forked.join();
+        }
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= grain) {
+            RuntimeException failure = null;
+            for (int i = from; i < to; i++) {
+                final Observer<E, S> observer = observers[i];
+                if (!(observer instanceof Observer.Ordered)) {
+                    try {
+                        subject.update(observer, field, event, change);
+                    } catch (RuntimeException e) {
+                        if (failure == null) {
+                            failure = e;
+                        }
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } else {
+            // Unlike invokeAll, always waits for both halves, also when the first one fails.
+            final int middle = (from + to) >>> 1;
+            final FanOut<E, S> right = new FanOut<E, S>(field, event, change, observers, subject, middle, to, grain);
+            right.fork();
+            try {
+                new FanOut<E, S>(field, event, change, observers, subject, from, middle, grain).compute();
+            } finally {
+                right.join();
+            }
+        }
+    }
+}
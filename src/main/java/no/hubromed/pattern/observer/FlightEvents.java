@@ -0,0 +1,322 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of the {@code Subject}s, so that a recording shows which {@code Subject}s notify, how
+ * many {@code Observer}s they reach, how long each {@code Observer} takes, and how long notifications wait for the
+ * event dispatch thread. Enable them in a {@code .jfc} file, or with
+ * {@code jfr configure no.hubromed.pattern.observer.Update#enabled=true}.</p>
+ * The events are only created while they are enabled in a running recording; otherwise the cost is one check of a
+ * flag, and nothing is allocated.
+ */
+final class FlightEvents {
+
+    static final String CATEGORY = "Patternmind";
+    static final String PREFIX = "no.hubromed.pattern.observer.";
+
+    @Name(PREFIX + "Attach")
+    @Label("Attach")
+    @Category({CATEGORY, "Observer"})
+    @Description("An Observer attached to a Subject")
+    static final class Attach extends Event {
+        @Label("Subject")
+        String subject;
+
+        @Label("Observer")
+        Class<?> observer;
+
+        @Label("Fields")
+        String fields;
+
+        @Label("Events")
+        String events;
+    }
+
+    @Name(PREFIX + "Detach")
+    @Label("Detach")
+    @Category({CATEGORY, "Observer"})
+    @Description("An Observer detached from a Subject")
+    static final class Detach extends Event {
+        @Label("Subject")
+        String subject;
+
+        @Label("Observer")
+        Class<?> observer;
+    }
+
+    @Name(PREFIX + "Notify")
+    @Label("Notify")
+    @Category({CATEGORY, "Observer"})
+    @Description("A Subject publishing a notification, until it is delivered or queued for the Dispatcher")
+    static final class Notify extends Event {
+        @Label("Subject")
+        String subject;
+
+        @Label("Field")
+        String field;
+
+        @Label("Event")
+        String event;
+
+        @Label("Observers")
+        @Description("Number of Observers of the field and event")
+        int observers;
+    }
+
+    @Name(PREFIX + "Update")
+    @Label("Update")
+    @Category({CATEGORY, "Observer"})
+    @Description("An Observer being updated")
+    @StackTrace(false)
+    static final class Update extends Event {
+        @Label("Subject")
+        String subject;
+
+        @Label("Field")
+        String field;
+
+        @Label("Event")
+        String event;
+
+        @Label("Observer")
+        Class<?> observer;
+    }
+
+    @Name(PREFIX + "Delivery")
+    @Label("Delivery")
+    @Category({CATEGORY, "Observer"})
+    @Description("A queued notification being delivered by the Dispatcher, such as the event dispatch thread")
+    @StackTrace(false)
+    static final class Delivery extends Event {
+        @Label("Subject")
+        String subject;
+
+        @Label("Field")
+        String field;
+
+        @Label("Event")
+        String event;
+
+        @Label("Observers")
+        int observers;
+
+        @Label("Queue Time")
+        @Description("Time from the notification until the Dispatcher ran the delivery")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueTime;
+    }
+
+    @Name(PREFIX + "Quarantine")
+    @Label("Quarantine")
+    @Category({CATEGORY, "Observer"})
+    @Description("An Observer quarantined or restored by the Isolation of a Subject")
+    @StackTrace(false)
+    static final class Quarantine extends Event {
+        @Label("Subject")
+        String subject;
+
+        @Label("Observer")
+        Class<?> observer;
+
+        @Label("Quarantined")
+        @Description("true if the Observer was quarantined, false if it was restored")
+        boolean quarantined;
+
+        @Label("Average Update Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long average;
+    }
+
+    @Name(PREFIX + "Stall")
+    @Label("Stall")
+    @Category({CATEGORY, "Observer"})
+    @Description("An Observer update running longer than the threshold of the StallWatchdog on the event dispatch "
+            + "thread")
+    @StackTrace(false)
+    static final class Stall extends Event {
+        @Label("Subject")
+        String subject;
+
+        @Label("Field")
+        String field;
+
+        @Label("Observer")
+        Class<?> observer;
+
+        @Label("Duration So Far")
+        @Timespan(Timespan.NANOSECONDS)
+        long stalled;
+
+        @Label("Event Dispatch Thread Stack")
+        String dispatchThreadStack;
+    }
+
+    /**
+     * Never committed, only asked whether the type of event is enabled, which does not allocate.
+     */
+    static final Attach ATTACH = new Attach();
+    static final Detach DETACH = new Detach();
+    static final Notify NOTIFY = new Notify();
+    static final Update UPDATE = new Update();
+    static final Delivery DELIVERY = new Delivery();
+
+    private FlightEvents() {
+    }
+
+    static void attach(final Subject subject, final Observer observer, final Set<EventCRUD> events,
+                       final Enum[] fields) {
+        final Attach attach = new Attach();
+        if (attach.shouldCommit()) {
+            attach.subject = subject.name();
+            attach.observer = observer.getClass();
+            attach.fields = Arrays.toString(fields);
+            attach.events = events.toString();
+            attach.commit();
+        }
+    }
+
+    static void quarantine(final Subject subject, final Observer observer, final long average,
+                           final boolean quarantined) {
+        final Quarantine quarantine = new Quarantine();
+        if (quarantine.shouldCommit()) {
+            quarantine.subject = subject.name();
+            quarantine.observer = observer.getClass();
+            quarantine.quarantined = quarantined;
+            quarantine.average = average;
+            quarantine.commit();
+        }
+    }
+
+    static void stall(final StallWatchdog.Stall found) {
+        final Stall stall = new Stall();
+        if (stall.shouldCommit()) {
+            stall.subject = found.getSubject().name();
+            stall.field = found.getField().name();
+            stall.observer = found.getObserver().getClass();
+            stall.stalled = found.getDuration(TimeUnit.NANOSECONDS);
+            final StringBuilder stackTrace = new StringBuilder();
+            for (StackTraceElement element : found.getStackTrace()) {
+                stackTrace.append(element).append('\n');
+            }
+            stall.dispatchThreadStack = stackTrace.toString();
+            stall.commit();
+        }
+    }
+
+    static void detach(final Subject subject, final Observer observer) {
+        final Detach detach = new Detach();
+        if (detach.shouldCommit()) {
+            detach.subject = subject.name();
+            detach.observer = observer == null ? null : observer.getClass();
+            detach.commit();
+        }
+    }
+
+    /**
+     * @return The event, begun, to be given to {@link #notified(Notify, Subject, Enum, EventCRUD, int)}.
+     */
+    static Notify notifying() {
+        final Notify notify = new Notify();
+        notify.begin();
+        return notify;
+    }
+
+    static void notified(final Notify notify, final Subject subject, final Enum field, final EventCRUD event,
+                         final int observers) {
+        notify.end();
+        if (notify.shouldCommit()) {
+            notify.subject = subject.name();
+            notify.field = field.name();
+            notify.event = event.name();
+            notify.observers = observers;
+            notify.commit();
+        }
+    }
+
+    /**
+     * Updates the {@code observer}, timing it.
+     */
+    static <E extends Enum, S extends Subject> void update(final Observer<E, S> observer, final E field,
+                                                           final EventCRUD event, final S subject,
+                                                           final Change change) {
+        final Update update = new Update();
+        update.begin();
+        try {
+            Change.call(observer, field, event, subject, change);
+        } finally {
+            update.end();
+            if (update.shouldCommit()) {
+                update.subject = subject.name();
+                update.field = field.name();
+                update.event = event.name();
+                update.observer = observer.getClass();
+                update.commit();
+            }
+        }
+    }
+
+    /**
+     * @return {@link System#nanoTime()} if deliveries are recorded, otherwise {@code 0}, to be given to
+     *         {@link #deliver(AbstractSubject, long, Enum, EventCRUD, Change, Observer[])}.
+     */
+    static long queued() {
+        return DELIVERY.isEnabled() ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Delivers a queued notification with {@link AbstractSubject#deliver(Enum, EventCRUD, Change, Observer[])},
+     * timing it if it was queued while deliveries were recorded.
+     *
+     * @param queued What {@link #queued()} returned when the notification was queued.
+     */
+    static <E extends Enum, S extends Subject> void deliver(final AbstractSubject<E, S> subject, final long queued,
+                                                            final E field, final EventCRUD event,
+                                                            final Change change, final Observer<E, S>[] observers) {
+        if (queued == 0L || !DELIVERY.isEnabled()) {
+            subject.deliver(field, event, change, observers);
+            return;
+        }
+        final Delivery delivery = new Delivery();
+        delivery.begin();
+        final long queueTime = System.nanoTime() - queued;
+        try {
+            subject.deliver(field, event, change, observers);
+        } finally {
+            delivery.end();
+            if (delivery.shouldCommit()) {
+                delivery.subject = subject.delegateFor().name();
+                delivery.field = field.name();
+                delivery.event = event.name();
+                delivery.observers = observers.length;
+                delivery.queueTime = queueTime;
+                delivery.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+
+/**
+ * {@code Dispatcher} updating the {@code Observer}s on the Swing event dispatch thread in slices of a limited
+ * duration, such as 8 ms, so that a burst of thousands of deliveries does not freeze the user interface. Once a slice
+ * has used its budget, the scheduler yields with {@code invokeLater}, letting the paint and input events already
+ * waiting run before it resumes.</p>
+ * Each {@code Observer} of a notification is a delivery of its own, and the deliveries to
+ * {@link Observer.Prioritized} {@code Observer}s with a higher priority run first, so that the visible components are
+ * updated before those that are hidden. Deliveries of the same priority run in the order they were made.</p>
+ * Share one scheduler between all the {@code Subject}s of the user interface, as the budget is per slice of the event
+ * dispatch thread. {@code Observer}s are never updated from within {@code notify}, also when it is called on the
+ * event dispatch thread, so that those notifications are sliced and kept in order as well. A coalescing
+ * {@code Subject} (see {@code setCoalescing(boolean)}) coalesces, collapses and conflates its notifications before
+ * handing them to the scheduler, in one delivery of priority {@code 0} per drain.
+ * <pre>
+ * FrameScheduler scheduler = new FrameScheduler(8, TimeUnit.MILLISECONDS);
+ * Subject&lt;Field, Prices&gt; prices = new Subject.DispatchingSubject&lt;Field, Prices&gt;(scheduler);
+ * </pre>
+ */
+public final class FrameScheduler implements Dispatcher {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final long budget;
+    private final Runnable slice = new Runnable() {
+        public void run() {
+            slice();
+        }
+    };
+    private Level[] levels = new Level[0];
+    private int pending;
+    private boolean scheduled;
+
+    /**
+     * @param budget Longest time spent updating {@code Observer}s before yielding to other events.
+     * @param unit   Unit of {@code budget}.
+     */
+    public FrameScheduler(final long budget, final TimeUnit unit) {
+        Validate.isTrue(budget > 0, "Budget must be more than 0");
+        Validate.notNull(unit, "unit");
+        this.budget = unit.toNanos(budget);
+    }
+
+    /**
+     * @return {@code false}, as all {@code Observer}s are updated by the scheduler.
+     */
+    public boolean isDispatchThread() {
+        return false;
+    }
+
+    /**
+     * Runs {@code delivery} on the event dispatch thread, after the deliveries of priority {@code 0} or higher already
+     * waiting.
+     */
+    public void execute(final Runnable delivery) {
+        Validate.notNull(delivery, "delivery");
+        add(0, null, null, null, null, delivery);
+    }
+
+    /**
+     * Queues one delivery per {@code Observer}, by priority.
+     */
+    <E extends Enum, S extends Subject> void offer(final AbstractSubject<E, S> subject, final E field,
+                                                   final EventCRUD event, final Change change,
+                                                   final Observer<E, S>[] observers) {
+        for (Observer<E, S> observer : observers) {
+            final int priority = observer instanceof Observer.Prioritized
+                    ? ((Observer.Prioritized) observer).priority() : 0;
+            add(priority, subject, field, event, change, observer);
+        }
+    }
+
+    private void add(final int priority, final AbstractSubject subject, final Enum field, final EventCRUD event,
+                     final Change change, final Object target) {
+        synchronized (this) {
+            level(priority).add(subject, field, event, change, target);
+            pending++;
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        SwingUtilities.invokeLater(slice);
+    }
+
+    /**
+     * @return The level of {@code priority}, created if needed. The levels are kept with the highest priority first.
+     */
+    private Level level(final int priority) {
+        int i = 0;
+        while (i < levels.length && levels[i].priority > priority) {
+            i++;
+        }
+        if (i < levels.length && levels[i].priority == priority) {
+            return levels[i];
+        }
+        final Level[] grown = new Level[levels.length + 1];
+        System.arraycopy(levels, 0, grown, 0, i);
+        System.arraycopy(levels, i, grown, i + 1, levels.length - i);
+        grown[i] = new Level(priority);
+        levels = grown;
+        return grown[i];
+    }
+
+    /**
+     * @return Number of deliveries waiting.
+     */
+    public synchronized int pending() {
+        return pending;
+    }
+
+    /**
+     * Runs the waiting deliveries, highest priority first, until they are done or the budget is used, and then
+     * schedules a new slice if any are left.
+     */
+    private void slice() {
+        final long start = System.nanoTime();
+        final Level.Delivery delivery = new Level.Delivery();
+        try {
+            do {
+                synchronized (this) {
+                    if (!poll(delivery)) {
+                        return;
+                    }
+                }
+                delivery.run();
+            } while (System.nanoTime() - start < budget);
+        } finally {
+            final boolean more;
+            synchronized (this) {
+                more = pending > 0;
+                scheduled = more;
+            }
+            if (more) {
+                SwingUtilities.invokeLater(slice);
+            }
+        }
+    }
+
+    private boolean poll(final Level.Delivery delivery) {
+        for (Level level : levels) {
+            if (level.size > 0) {
+                level.poll(delivery);
+                pending--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The deliveries of one priority, in a ring of parallel arrays, reused between slices.
+     */
+    private static final class Level {
+        private final int priority;
+        private AbstractSubject[] subjects = new AbstractSubject[INITIAL_CAPACITY];
+        private Enum[] fields = new Enum[INITIAL_CAPACITY];
+        private EventCRUD[] events = new EventCRUD[INITIAL_CAPACITY];
+        private Change[] changes = new Change[INITIAL_CAPACITY];
+        private Object[] targets = new Object[INITIAL_CAPACITY];
+        private int head;
+        private int size;
+
+        Level(final int priority) {
+            this.priority = priority;
+        }
+
+        void add(final AbstractSubject subject, final Enum field, final EventCRUD event, final Change change,
+                 final Object target) {
+            if (size == targets.length) {
+                grow();
+            }
+            final int i = (head + size) & (targets.length - 1);
+            subjects[i] = subject;
+            fields[i] = field;
+            events[i] = event;
+            changes[i] = change;
+            targets[i] = target;
+            size++;
+        }
+
+        void poll(final Delivery delivery) {
+            final int i = head;
+            delivery.subject = subjects[i];
+            delivery.field = fields[i];
+            delivery.event = events[i];
+            delivery.change = changes[i];
+            delivery.target = targets[i];
+            subjects[i] = null;
+            fields[i] = null;
+            events[i] = null;
+            changes[i] = null;
+            targets[i] = null;
+            head = (head + 1) & (targets.length - 1);
+            size--;
+        }
+
+        /**
+         * Doubles the capacity, moving the ring to the start of the arrays.
+         */
+        private void grow() {
+            final int capacity = targets.length * 2;
+            subjects = unroll(subjects, new AbstractSubject[capacity]);
+            fields = unroll(fields, new Enum[capacity]);
+            events = unroll(events, new EventCRUD[capacity]);
+            changes = unroll(changes, new Change[capacity]);
+            targets = unroll(targets, new Object[capacity]);
+            head = 0;
+        }
+
+        private <T> T[] unroll(final T[] ring, final T[] grown) {
+            final int first = ring.length - head;
+            System.arraycopy(ring, head, grown, 0, first);
+            System.arraycopy(ring, 0, grown, first, head);
+            return grown;
+        }
+
+        /**
+         * A delivery taken from a level, run outside the lock.
+         */
+        private static final class Delivery {
+            private AbstractSubject subject;
+            private Enum field;
+            private EventCRUD event;
+            private Change change;
+            private Object target;
+
+            void run() {
+                try {
+                    if (subject == null) {
+                        ((Runnable) target).run();
+                    } else {
+                        //noinspection unchecked
+                        subject.update((Observer) target, field, event, change);
+                    }
+                } finally {
+                    subject = null;
+                    field = null;
+                    event = null;
+                    change = null;
+                    target = null;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FrameScheduler[budget = " + TimeUnit.NANOSECONDS.toMillis(budget) + " ms, pending = " + pending()
+                + "]";
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A {@code Hub} is an event bus shared by many {@code Subject}s. Instead of attaching to each instance, an
+ * {@code Observer} attaches once to a type of {@code Subject}, and is notified by every instance of that type (or any
+ * subtype) publishing into the {@code Hub}:
+ * <pre>
+ * hub.attach(Instrument.class, priceObserver, EventCRUD.U, Instrument.Field.PRICE);
+ * ...
+ * hub.notify(instrument, Instrument.Field.PRICE);
+ * </pre>
+ * A {@code Subject} publishes into the {@code Hub} either by calling {@link #notify(Subject, Enum, EventCRUD)}
+ * directly, so that it keeps no {@code Observer}s of its own at all, or by being given the {@code Hub} with
+ * {@code setHub(Hub)}, so that its notifications also reach the {@code Observer}s of the {@code Hub}.</p>
+ * As with a single {@code Subject}, the routes are kept in an immutable index, rebuilt when an {@code Observer}
+ * attaches or detaches, so publishing neither locks nor allocates once the {@code Hub} has seen the type of the
+ * {@code Subject}. Since the {@code Hub} does not know the {@code Subject}s before they publish, no
+ * {@link EventCRUD#INITIAL} event is sent on attach.
+ */
+public final class Hub {
+
+    private static final AtomicReferenceFieldUpdater<Hub, Routes> ROUTES =
+            AtomicReferenceFieldUpdater.newUpdater(Hub.class, Routes.class, "routes");
+
+    private volatile Routes routes = Routes.EMPTY;
+    private final Dispatcher dispatcher;
+
+    /**
+     * Creates a {@code Hub} updating the {@code Observer}s on the thread making the notification.
+     */
+    public Hub() {
+        this(Dispatchers.inline());
+    }
+
+    /**
+     * @param dispatcher Decides which thread the {@code Observer}s are updated on.
+     */
+    public Hub(final Dispatcher dispatcher) {
+        Validate.notNull(dispatcher, "dispatcher");
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Starts the subscription for every {@code Subject} of {@code type}, including its subtypes. Attaching the same
+     * {@code Observer} to the same {@code type} again replaces its subscription.
+     *
+     * @param type     Type of {@code Subject} to observe.
+     * @param observer {@code Observer} wishing to subscribe to changes.
+     * @param events   Type of events to listen for.
+     * @param fields   List of 1 or more fields to observe.
+     */
+    public <E extends Enum, S extends Subject> void attach(final Class<S> type, final Observer<E, S> observer,
+                                                           final Set<EventCRUD> events, final E... fields) {
+        Validate.notNull(type, "type");
+        attach(new Route(type, null, observer, events, fields));
+    }
+
+    /**
+     * Starts the subscription for one {@code Subject} only. Use it for the few {@code Subject}s that need it, as the
+     * cost of attaching grows with the number of {@code Subject}s filtered on.
+     *
+     * @param subject  The {@code Subject} to observe.
+     * @param observer {@code Observer} wishing to subscribe to changes.
+     * @param events   Type of events to listen for.
+     * @param fields   List of 1 or more fields to observe.
+     */
+    public <E extends Enum, S extends Subject> void attach(final S subject, final Observer<E, S> observer,
+                                                           final Set<EventCRUD> events, final E... fields) {
+        Validate.notNull(subject, "subject");
+        attach(new Route(subject.getClass(), subject, observer, events, fields));
+    }
+
+    private void attach(final Route route) {
+        Routes current;
+        do {
+            current = routes;
+        } while (!ROUTES.compareAndSet(this, current, current.attach(route)));
+    }
+
+    /**
+     * Stops all subscriptions of {@code observer}.
+     *
+     * @param observer {@code Observer} wishing to unsubscribe.
+     */
+    public void detach(final Observer observer) {
+        Routes current;
+        do {
+            current = routes;
+        } while (!ROUTES.compareAndSet(this, current, current.detach(observer)));
+    }
+
+    /**
+     * Stops all subscriptions of all {@code Observer}s.
+     */
+    public void detachAll() {
+        routes = Routes.EMPTY;
+    }
+
+    /**
+     * All {@code Observer}s subscribing to {@code field} and {@code event} of the type of {@code subject}, or of
+     * {@code subject} itself, will be notified.
+     *
+     * @param subject {@code Subject} that has changed.
+     * @param field   Field that is being notified about.
+     * @param event   Type of event.
+     */
+    public <S extends Subject> void notify(final S subject, final Enum field, final EventCRUD event) {
+        notify(subject, field, event, null);
+    }
+
+    /**
+     * Publishes a change, telling {@link ChangeObserver}s what changed, see
+     * {@link #notify(Subject, Enum, EventCRUD)}.
+     *
+     * @param subject {@code Subject} that has changed.
+     * @param field   Field that is being notified about.
+     * @param event   Type of event.
+     * @param change  What changed, or {@code null}.
+     */
+    public <S extends Subject> void notify(final S subject, final Enum field, final EventCRUD event,
+                                           final Change change) {
+        final Routes routes = this.routes;
+        final Observer[] observers = routes.byType(subject.getClass(), field.getDeclaringClass()).observers(field, event);
+        if (observers.length > 0) {
+            deliver(subject, field, event, change, observers);
+        }
+        final DispatchIndex bySubject = routes.bySubject(subject);
+        if (bySubject != null) {
+            final Observer[] filtered = bySubject.observers(field, event);
+            if (filtered.length > 0) {
+                deliver(subject, field, event, change, filtered);
+            }
+        }
+    }
+
+    /**
+     * Publishes {@code UPDATE} for {@code field}, see {@link #notify(Subject, Enum, EventCRUD)}.
+     *
+     * @param subject {@code Subject} that has changed.
+     * @param field   Field that is being notified about.
+     */
+    public <S extends Subject> void notify(final S subject, final Enum field) {
+        notify(subject, field, EventCRUD.UPDATE);
+    }
+
+    private void deliver(final Subject subject, final Enum field, final EventCRUD event, final Change change,
+                         final Observer[] observers) {
+        if (dispatcher.isDispatchThread()) {
+            update(subject, field, event, change, observers);
+        } else {
+            dispatcher.execute(new Runnable() {
+                public void run() {
+                    update(subject, field, event, change, observers);
+                }
+            });
+        }
+    }
+
+    private static void update(final Subject subject, final Enum field, final EventCRUD event, final Change change,
+                               final Observer[] observers) {
+        for (Observer observer : observers) {
+            //noinspection unchecked
+            Change.update(observer, field, event, subject, change);
+        }
+    }
+
+    /**
+     * One subscription of an {@code Observer}.
+     */
+    private static final class Route {
+        private final Class<?> type;
+        private final Subject subject;
+        private final Class<?> fieldType;
+        private final Observer observer;
+        private final Subscription subscription;
+
+        Route(final Class<?> type, final Subject subject, final Observer observer, final Set<EventCRUD> events,
+              final Enum... fields) {
+            Validate.notNull(observer, "Observer");
+            Validate.notNull(events, "event");
+            Validate.notNull(fields, "fields");
+            Validate.isTrue(fields.length > 0, "Please subscribe (attach) to 1 or more fields");
+            Validate.isTrue(events.size() > 0, "Please subscribe (attach) to at least 1 event");
+            for (Enum field : fields) {
+                Validate.notNull(field, "Field");
+            }
+            this.type = type;
+            this.subject = subject;
+            this.fieldType = fields[0].getDeclaringClass();
+            this.observer = observer;
+            this.subscription = Subscription.of(events, fields);
+        }
+
+        boolean sameKey(final Route other) {
+            return type == other.type && subject == other.subject && observer.equals(other.observer);
+        }
+    }
+
+    /**
+     * Immutable snapshot of the routes, and the indexes built from them. The index of each type of {@code Subject}
+     * is built the first time that type publishes, and kept until the routes change.
+     */
+    private static final class Routes {
+        private static final Routes EMPTY = new Routes(new Route[0]);
+
+        private final Route[] routes;
+        private final Map<Subject, DispatchIndex> bySubject;
+        private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Class<?>, DispatchIndex>> byType =
+                new ConcurrentHashMap<Class<?>, ConcurrentHashMap<Class<?>, DispatchIndex>>();
+
+        Routes(final Route[] routes) {
+            this.routes = routes;
+            final Map<Subject, DispatchIndex> bySubject = new IdentityHashMap<Subject, DispatchIndex>();
+            for (Route route : routes) {
+                if (route.subject != null && !bySubject.containsKey(route.subject)) {
+                    bySubject.put(route.subject, index(route.subject.getClass(), route.fieldType, route.subject));
+                }
+            }
+            this.bySubject = bySubject;
+        }
+
+        Routes attach(final Route route) {
+            for (int i = 0; i < routes.length; i++) {
+                if (routes[i].sameKey(route)) {
+                    final Route[] replaced = routes.clone();
+                    replaced[i] = route;
+                    return new Routes(replaced);
+                }
+            }
+            final Route[] added = Arrays.copyOf(routes, routes.length + 1);
+            added[routes.length] = route;
+            return new Routes(added);
+        }
+
+        Routes detach(final Observer observer) {
+            int kept = 0;
+            final Route[] remaining = new Route[routes.length];
+            for (Route route : routes) {
+                if (!route.observer.equals(observer)) {
+                    remaining[kept++] = route;
+                }
+            }
+            if (kept == routes.length) {
+                return this;
+            }
+            return kept == 0 ? EMPTY : new Routes(Arrays.copyOf(remaining, kept));
+        }
+
+        DispatchIndex bySubject(final Subject subject) {
+            return bySubject.isEmpty() ? null : bySubject.get(subject);
+        }
+
+        DispatchIndex byType(final Class<?> subjectType, final Class<?> fieldType) {
+            ConcurrentHashMap<Class<?>, DispatchIndex> byField = byType.get(subjectType);
+            if (byField == null) {
+                byType.putIfAbsent(subjectType, new ConcurrentHashMap<Class<?>, DispatchIndex>());
+                byField = byType.get(subjectType);
+            }
+            DispatchIndex index = byField.get(fieldType);
+            if (index == null) {
+                index = index(subjectType, fieldType, null);
+                byField.putIfAbsent(fieldType, index);
+            }
+            return index;
+        }
+
+        /**
+         * @param subject {@code null} for the routes of every {@code Subject} of {@code subjectType}, otherwise only
+         *                the routes of {@code subject}.
+         */
+        private DispatchIndex index(final Class<?> subjectType, final Class<?> fieldType, final Subject subject) {
+            int size = 0;
+            final Observer[] observers = new Observer[routes.length];
+            final Subscription[] subscriptions = new Subscription[routes.length];
+            for (Route route : routes) {
+                if (route.subject == subject && route.fieldType == fieldType && route.type.isAssignableFrom(subjectType)) {
+                    observers[size] = route.observer;
+                    subscriptions[size++] = route.subscription;
+                }
+            }
+            return size == 0 ? DispatchIndex.empty()
+                    : DispatchIndex.build(Arrays.copyOf(observers, size), Arrays.copyOf(subscriptions, size));
+        }
+    }
+}
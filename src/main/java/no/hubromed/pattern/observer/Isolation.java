@@ -0,0 +1,406 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Isolates the {@code Observer}s of a {@code Subject} from each other, so that one {@code Observer} that fails or is
+ * slow does not keep the others from being updated, nor stall the thread publishing the notifications.</p>
+ * An exception thrown by an {@code Observer} is caught and reported to the {@link Listener}, and the remaining
+ * {@code Observer}s are updated as usual. The time each {@code Observer} takes is tracked as a rolling average, and
+ * an {@code Observer} whose average goes over the threshold, or that fails a number of times in a row, is
+ * quarantined:
+ * <ul>
+ * <li>With a lane (see {@link #setLane(Dispatcher)}), it is updated on the lane from then on, and restored once its
+ * average has dropped to half the threshold, without failures. The lane should run the updates one at a time and in
+ * order, such as {@link Dispatchers#serial(String)}.</li>
+ * <li>Without a lane (default), the circuit is open and its notifications are dropped. Once the cooldown has passed,
+ * the next notification is tried, and if it is quick and does not fail the {@code Observer} is restored.</li>
+ * </ul>
+ * Leave the lane out for {@code Observer}s updating Swing components, as they must stay on the event dispatch
+ * thread.
+ * <pre>
+ * Isolation isolation = new Isolation(20, TimeUnit.MILLISECONDS);
+ * isolation.setListener(monitor);
+ * subject.setIsolation(isolation);
+ * </pre>
+ * One {@code Isolation} may be shared by several {@code Subject}s, in which case an {@code Observer} is quarantined
+ * from all of them. An {@code Observer} attached with a {@link DeliveryPolicy}, or tracked by
+ * {@link AbstractSubject#notifyAsync(Enum, EventCRUD)}, is tracked and reported as the {@code Observer} given.
+ *
+ * @see AbstractSubject#setIsolation(Isolation)
+ */
+public final class Isolation {
+
+    private static final Logger LOGGER = Logger.getLogger(Isolation.class.getSimpleName());
+
+    /**
+     * Each update weighs 1 / {@code WEIGHT} in the rolling average.
+     */
+    private static final int WEIGHT = 8;
+
+    /**
+     * Updates timed before an {@code Observer} may be quarantined for being slow, so that the first, cold, update
+     * does not quarantine it.
+     */
+    private static final int WARM_UP = 4;
+
+    /**
+     * Monitors the {@code Observer}s of the isolated {@code Subject}s.
+     */
+    public interface Listener {
+
+        /**
+         * @param subject  {@code Subject} that notified.
+         * @param observer {@code Observer} that failed.
+         * @param field    Field notified.
+         * @param event    Event notified.
+         * @param failure  What {@code observer} threw.
+         */
+        void failed(Subject subject, Observer observer, Enum field, EventCRUD event, RuntimeException failure);
+
+        /**
+         * @param subject      {@code Subject} that notified last.
+         * @param observer     {@code Observer} quarantined.
+         * @param averageNanos Rolling average of the time {@code observer} takes to update.
+         */
+        void quarantined(Subject subject, Observer observer, long averageNanos);
+
+        /**
+         * @param subject      {@code Subject} that notified last.
+         * @param observer     {@code Observer} restored.
+         * @param averageNanos Rolling average of the time {@code observer} takes to update.
+         */
+        void restored(Subject subject, Observer observer, long averageNanos);
+    }
+
+    private final long threshold;
+    private final ConcurrentHashMap<Key, Health> health = new ConcurrentHashMap<Key, Health>();
+    private final ReferenceQueue<Observer> collected = new ReferenceQueue<Observer>();
+    private volatile Dispatcher lane;
+    private volatile long cooldown = TimeUnit.SECONDS.toNanos(1);
+    private volatile int failureLimit = 5;
+    private volatile Listener listener;
+
+    /**
+     * @param threshold Longest rolling average time an {@code Observer} may take to update before it is quarantined.
+     * @param unit      Unit of {@code threshold}.
+     */
+    public Isolation(final long threshold, final TimeUnit unit) {
+        Validate.isTrue(threshold > 0, "Threshold must be more than 0");
+        Validate.notNull(unit, "unit");
+        this.threshold = unit.toNanos(threshold);
+    }
+
+    /**
+     * @param lane {@code Dispatcher} updating the quarantined {@code Observer}s, {@code null} (default) to drop their
+     *             notifications until they are restored.
+     */
+    public void setLane(final Dispatcher lane) {
+        this.lane = lane;
+    }
+
+    public Dispatcher getLane() {
+        return lane;
+    }
+
+    /**
+     * @param cooldown Time a quarantined {@code Observer} is left alone before it is tried again, when there is no
+     *                 lane. Default 1 second.
+     * @param unit     Unit of {@code cooldown}.
+     */
+    public void setCooldown(final long cooldown, final TimeUnit unit) {
+        Validate.isTrue(cooldown >= 0, "Cooldown must be 0 or more");
+        Validate.notNull(unit, "unit");
+        this.cooldown = unit.toNanos(cooldown);
+    }
+
+    /**
+     * @param failureLimit Number of failures in a row that quarantines an {@code Observer}. Default 5.
+     */
+    public void setFailureLimit(final int failureLimit) {
+        Validate.isTrue(failureLimit > 0, "Failure limit must be 1 or more");
+        this.failureLimit = failureLimit;
+    }
+
+    /**
+     * @param listener Told of failures, and of {@code Observer}s quarantined and restored, {@code null} (default) to
+     *                 log them.
+     */
+    public void setListener(final Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param observer An {@code Observer}.
+     * @return {@code true} if {@code observer} is quarantined.
+     */
+    public boolean isQuarantined(final Observer observer) {
+        final Health health = this.health.get(new Key(Registry.unwrap(observer), null));
+        return health != null && health.isQuarantined();
+    }
+
+    /**
+     * @param observer An {@code Observer}.
+     * @param unit     Unit of the result.
+     * @return Rolling average of the time {@code observer} takes to update, {@code 0} if it has not been updated.
+     */
+    public long getAverage(final Observer observer, final TimeUnit unit) {
+        final Health health = this.health.get(new Key(Registry.unwrap(observer), null));
+        return health == null ? 0L : unit.convert(health.average(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Looks the {@code observer} up without locking, as the {@code Observer}s of a parallel delivery are updated at
+     * the same time.
+     */
+    private Health health(final Observer observer) {
+        final Health found = health.get(new Key(observer, null));
+        if (found != null) {
+            return found;
+        }
+        // Forgets the Observers that have been garbage collected, as a WeakHashMap would.
+        for (Object key = collected.poll(); key != null; key = collected.poll()) {
+            health.remove(key);
+        }
+        final Health created = new Health();
+        final Health raced = health.putIfAbsent(new Key(observer, collected), created);
+        return raced == null ? created : raced;
+    }
+
+    /**
+     * Updates the {@code observer}, on the lane if it is quarantined, or not at all if its circuit is open. A
+     * {@link Completion.Tracked} {@code observer} is counted down once the update is recorded, or at once if the
+     * circuit is open.
+     */
+    <E extends Enum, S extends Subject> void update(final AbstractSubject<E, S> subject,
+                                                    final Observer<E, S> observer, final E field,
+                                                    final EventCRUD event, final Change change) {
+        final Completion.Tracked<E, S> tracked =
+                observer instanceof Completion.Tracked ? (Completion.Tracked<E, S>) observer : null;
+        final Health health = health(Registry.unwrap(observer));
+        if (health.isQuarantined()) {
+            final Dispatcher lane = this.lane;
+            if (lane != null) {
+                lane.execute(new Runnable() {
+                    public void run() {
+                        timed(subject, health, observer, tracked, field, event, change, false);
+                    }
+                });
+                return;
+            }
+            switch (health.probe(cooldown)) {
+                case Health.PROBE:
+                    timed(subject, health, observer, tracked, field, event, change, true);
+                    return;
+                case Health.OPEN:
+                    if (tracked != null) {
+                        tracked.updated(null);
+                    }
+                    return;
+                default:
+                    // Restored by a probe on another thread since it was found quarantined.
+                    break;
+            }
+        }
+        timed(subject, health, observer, tracked, field, event, change, false);
+    }
+
+    /**
+     * @param tracked {@code observer}, if it counts down a completion once the update is recorded, or {@code null}.
+     */
+    private <E extends Enum, S extends Subject> void timed(final AbstractSubject<E, S> subject, final Health health,
+                                                           final Observer<E, S> observer,
+                                                           final Completion.Tracked<E, S> tracked, final E field,
+                                                           final EventCRUD event, final Change change,
+                                                           final boolean probe) {
+        final S source = subject.delegateFor();
+        final long start = System.nanoTime();
+        RuntimeException failure = null;
+        try {
+            if (tracked == null) {
+                Change.update(observer, field, event, source, change);
+            } else {
+                tracked.deliver(field, event, source, change);
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        } catch (Error e) {
+            if (tracked != null) {
+                tracked.updated(e);
+            }
+            throw e;
+        }
+        final long elapsed = System.nanoTime() - start;
+        final Observer reported = Registry.unwrap(observer);
+        if (failure != null) {
+            failed(source, reported, field, event, failure);
+        }
+        final int transition = probe
+                ? health.probed(elapsed, failure != null, threshold)
+                : health.record(elapsed, failure != null, threshold, failureLimit);
+        if (transition != Health.NONE) {
+            moved(source, reported, health.average(), transition == Health.QUARANTINED);
+        }
+        if (tracked != null) {
+            tracked.updated(failure);
+        }
+    }
+
+    private void failed(final Subject subject, final Observer observer, final Enum field, final EventCRUD event,
+                        final RuntimeException failure) {
+        final Listener listener = this.listener;
+        if (listener != null) {
+            listener.failed(subject, observer, field, event, failure);
+        } else {
+            LOGGER.log(Level.WARNING, observer + " failed on " + field + " " + event + " of " + subject.name(),
+                    failure);
+        }
+    }
+
+    private void moved(final Subject subject, final Observer observer, final long average,
+                       final boolean quarantined) {
+        FlightEvents.quarantine(subject, observer, average, quarantined);
+        final Listener listener = this.listener;
+        if (listener == null) {
+            LOGGER.info(observer + (quarantined ? " quarantined" : " restored") + ", average update "
+                    + TimeUnit.NANOSECONDS.toMicros(average) + " us");
+        } else if (quarantined) {
+            listener.quarantined(subject, observer, average);
+        } else {
+            listener.restored(subject, observer, average);
+        }
+    }
+
+    /**
+     * Refers weakly to an {@code Observer}, comparing it by identity.
+     */
+    private static final class Key extends WeakReference<Observer> {
+        private final int hash;
+
+        Key(final Observer observer, final ReferenceQueue<Observer> queue) {
+            super(observer, queue);
+            this.hash = System.identityHashCode(observer);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Observer observer = get();
+            return observer != null && observer == ((Key) o).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * How one {@code Observer} has been doing.
+     */
+    private static final class Health {
+        static final int NONE = 0;
+        static final int QUARANTINED = 1;
+        static final int RESTORED = 2;
+
+        static final int CLOSED = 0;
+        static final int OPEN = 1;
+        static final int PROBE = 2;
+
+        private long average;
+        private int updates;
+        private int failures;
+        private volatile boolean quarantined;
+        private long since;
+
+        boolean isQuarantined() {
+            return quarantined;
+        }
+
+        synchronized long average() {
+            return average;
+        }
+
+        /**
+         * @return {@link #PROBE} if the cooldown has passed since the {@code Observer} was quarantined or last tried,
+         *         in which case it is tried now, and not again until the next cooldown has passed, {@link #OPEN} if
+         *         it has not, or {@link #CLOSED} if the {@code Observer} is no longer quarantined.
+         */
+        synchronized int probe(final long cooldown) {
+            if (!quarantined) {
+                return CLOSED;
+            }
+            final long now = System.nanoTime();
+            if (now - since < cooldown) {
+                return OPEN;
+            }
+            since = now;
+            return PROBE;
+        }
+
+        /**
+         * @return The transition, if the update quarantined or restored the {@code Observer}.
+         */
+        synchronized int record(final long elapsed, final boolean failed, final long threshold,
+                                final int failureLimit) {
+            average = updates == 0 ? elapsed : average + (elapsed - average) / WEIGHT;
+            updates++;
+            failures = failed ? failures + 1 : 0;
+            if (!quarantined && (failures >= failureLimit || updates >= WARM_UP && average > threshold)) {
+                quarantined = true;
+                since = System.nanoTime();
+                return QUARANTINED;
+            }
+            if (quarantined && failures == 0 && average <= threshold / 2) {
+                quarantined = false;
+                return RESTORED;
+            }
+            return NONE;
+        }
+
+        /**
+         * @return {@link #RESTORED} if the update that was tried after the cooldown was quick and did not fail.
+         */
+        synchronized int probed(final long elapsed, final boolean failed, final long threshold) {
+            if (failed || elapsed > threshold) {
+                failures = failed ? failures + 1 : failures;
+                return NONE;
+            }
+            average = elapsed;
+            failures = 0;
+            quarantined = false;
+            return RESTORED;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Isolation[threshold = " + TimeUnit.NANOSECONDS.toMicros(threshold) + " us, lane = " + lane + "]";
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Audit trail of notifications, for finding out afterwards what the {@code Observer}s were told. Give it to a
+ * {@code Subject} with {@code setJournal(Journal)}, and every notification it publishes is appended as a fixed size
+ * binary record to a memory-mapped file: sequence number, time, name of the {@code Subject}, field and event.
+ * Appending is a few writes to memory, without allocating, so the journal can be left on in production, unlike
+ * logging at level {@code FINE}.</p>
+ * The file is a ring holding the latest {@code capacity} records; older records are overwritten. Opening an existing
+ * journal continues its sequence. Use {@link JournalReader} to read it, or to replay it against a new model.
+ * <pre>
+ * Journal journal = Journal.open(new File("notifications.journal"), 100000);
+ * subject.setJournal(journal);
+ * </pre>
+ */
+public final class Journal implements Closeable {
+
+    /**
+     * Size of a record in bytes. Names longer than fit are cut.
+     */
+    public static final int RECORD_SIZE = 64;
+
+    static final int MAGIC = 0x4f42534a;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+
+    static final int CAPACITY_OFFSET = 8;
+    static final int RECORD_SIZE_OFFSET = 12;
+    static final int NEXT_OFFSET = 16;
+
+    static final int SEQUENCE = 0;
+    static final int TIME = 8;
+    static final int FIELD_ORDINAL = 16;
+    static final int EVENT = 18;
+    static final int SUBJECT_LENGTH = 19;
+    static final int SUBJECT = 20;
+    static final int SUBJECT_SIZE = 28;
+    static final int FIELD_LENGTH = 48;
+    static final int FIELD = 49;
+    static final int FIELD_SIZE = 15;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private long next;
+    private boolean closed;
+
+    private Journal(final RandomAccessFile file, final MappedByteBuffer buffer, final int capacity, final long next) {
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.next = next;
+    }
+
+    /**
+     * Opens a journal, creating the file if it does not exist.
+     *
+     * @param file     The file of the journal.
+     * @param capacity Number of records kept. Must be the same as when the file was created.
+     * @return The journal, appending after the records already in {@code file}.
+     * @throws IOException If the file cannot be mapped, or is not a journal of the same capacity.
+     */
+    public static Journal open(final File file, final int capacity) throws IOException {
+        Validate.notNull(file, "file");
+        Validate.isTrue(capacity > 0, "Capacity must be 1 or more");
+        final boolean exists = file.length() > 0;
+        final RandomAccessFile access = new RandomAccessFile(file, "rw");
+        try {
+            final MappedByteBuffer buffer = access.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) capacity * RECORD_SIZE);
+            long next = 0;
+            if (exists) {
+                checkHeader(buffer, file);
+                if (buffer.getInt(CAPACITY_OFFSET) != capacity) {
+                    throw new IOException(file + " has a capacity of " + buffer.getInt(CAPACITY_OFFSET)
+                            + " records, not " + capacity);
+                }
+                next = buffer.getLong(NEXT_OFFSET);
+            } else {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(CAPACITY_OFFSET, capacity);
+                buffer.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);
+                buffer.putLong(NEXT_OFFSET, 0);
+            }
+            return new Journal(access, buffer, capacity, next);
+        } catch (IOException e) {
+            access.close();
+            throw e;
+        }
+    }
+
+    static void checkHeader(final MappedByteBuffer buffer, final File file) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(RECORD_SIZE_OFFSET) != RECORD_SIZE) {
+            throw new IOException(file + " is not a journal");
+        }
+    }
+
+    /**
+     * Appends a record of a notification. Does nothing once the journal is closed.
+     *
+     * @param subject {@code Subject} making the notification.
+     * @param field   Field being notified about.
+     * @param event   Type of event.
+     */
+    public void record(final Subject subject, final Enum field, final EventCRUD event) {
+        final long time = System.currentTimeMillis();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            final int offset = HEADER_SIZE + (int) (next % capacity) * RECORD_SIZE;
+            buffer.putLong(offset + SEQUENCE, next);
+            buffer.putLong(offset + TIME, time);
+            buffer.putShort(offset + FIELD_ORDINAL, (short) field.ordinal());
+            buffer.put(offset + EVENT, (byte) event.ordinal());
+            buffer.put(offset + SUBJECT_LENGTH, put(offset + SUBJECT, SUBJECT_SIZE, subject.name()));
+            buffer.put(offset + FIELD_LENGTH, put(offset + FIELD, FIELD_SIZE, field.name()));
+            next++;
+            buffer.putLong(NEXT_OFFSET, next);
+        }
+    }
+
+    /**
+     * Writes the characters of {@code text} that fit, one byte each.
+     *
+     * @return Number of bytes written.
+     */
+    private byte put(final int offset, final int size, final String text) {
+        final int length = text == null ? 0 : Math.min(size, text.length());
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            buffer.put(offset + i, (byte) (c < 128 ? c : '?'));
+        }
+        return (byte) length;
+    }
+
+    /**
+     * @return Sequence number of the next record, which is also the number of records ever appended.
+     */
+    public synchronized long sequence() {
+        return next;
+    }
+
+    /**
+     * @return Number of records kept.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Writes the records to the file, and closes it.
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer.force();
+        file.close();
+    }
+}
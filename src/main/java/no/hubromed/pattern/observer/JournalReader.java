@@ -0,0 +1,240 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads the records of a {@link Journal}, oldest first, and replays them against a {@code Subject}, to reproduce a
+ * bug or to load test a model with a recorded stream of notifications.
+ * <pre>
+ * JournalReader reader = JournalReader.open(new File("notifications.journal"));
+ * reader.replay("MySubjectImpl", freshModel, MySubject.Field.class);
+ * </pre>
+ */
+public final class JournalReader {
+
+    private static final Logger LOGGER = Logger.getLogger(JournalReader.class.getSimpleName());
+
+    /**
+     * One notification read from the journal.
+     */
+    public static final class Record {
+        private final long sequence;
+        private final long time;
+        private final String subject;
+        private final int fieldOrdinal;
+        private final String field;
+        private final EventCRUD event;
+
+        Record(final long sequence, final long time, final String subject, final int fieldOrdinal,
+               final String field, final EventCRUD event) {
+            this.sequence = sequence;
+            this.time = time;
+            this.subject = subject;
+            this.fieldOrdinal = fieldOrdinal;
+            this.field = field;
+            this.event = event;
+        }
+
+        /**
+         * @return Sequence number, counting all notifications ever recorded in the journal.
+         */
+        public long sequence() {
+            return sequence;
+        }
+
+        /**
+         * @return Time of the notification, in milliseconds since the epoch.
+         */
+        public long time() {
+            return time;
+        }
+
+        /**
+         * @return Name of the {@code Subject}, see {@link Subject#name()}.
+         */
+        public String subject() {
+            return subject;
+        }
+
+        /**
+         * @return Ordinal of the field.
+         */
+        public int fieldOrdinal() {
+            return fieldOrdinal;
+        }
+
+        /**
+         * @return Name of the field.
+         */
+        public String field() {
+            return field;
+        }
+
+        /**
+         * @return Type of event.
+         */
+        public EventCRUD event() {
+            return event;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + sequence + " " + time + " " + subject + " " + field + " " + event;
+        }
+    }
+
+    private final List<Record> records;
+
+    private JournalReader(final List<Record> records) {
+        this.records = records;
+    }
+
+    /**
+     * Reads all records kept in a journal. The journal may still be open for appending, in which case the records
+     * appended after this call are not read.
+     *
+     * @param file The file of the journal.
+     * @return Reader of the records in {@code file}.
+     * @throws IOException If {@code file} cannot be read, or is not a journal.
+     */
+    public static JournalReader open(final File file) throws IOException {
+        Validate.notNull(file, "file");
+        final RandomAccessFile access = new RandomAccessFile(file, "r");
+        try {
+            final MappedByteBuffer buffer = access.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, access.length());
+            Journal.checkHeader(buffer, file);
+            final int capacity = buffer.getInt(Journal.CAPACITY_OFFSET);
+            final long next = buffer.getLong(Journal.NEXT_OFFSET);
+            final EventCRUD[] events = EventCRUD.values();
+            final List<Record> records = new ArrayList<Record>();
+            for (long sequence = Math.max(0, next - capacity); sequence < next; sequence++) {
+                final int offset = Journal.HEADER_SIZE + (int) (sequence % capacity) * Journal.RECORD_SIZE;
+                records.add(new Record(buffer.getLong(offset + Journal.SEQUENCE),
+                        buffer.getLong(offset + Journal.TIME),
+                        text(buffer, offset + Journal.SUBJECT, buffer.get(offset + Journal.SUBJECT_LENGTH)),
+                        buffer.getShort(offset + Journal.FIELD_ORDINAL),
+                        text(buffer, offset + Journal.FIELD, buffer.get(offset + Journal.FIELD_LENGTH)),
+                        events[buffer.get(offset + Journal.EVENT)]));
+            }
+            return new JournalReader(records);
+        } finally {
+            access.close();
+        }
+    }
+
+    private static String text(final MappedByteBuffer buffer, final int offset, final int length) {
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) buffer.get(offset + i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return The records, oldest first.
+     */
+    public List<Record> records() {
+        return Collections.unmodifiableList(records);
+    }
+
+    /**
+     * Replays the notifications of every {@code Subject} in the journal against {@code target}.
+     *
+     * @param target The {@code Subject} to notify.
+     * @param fields The fields of {@code target}, for looking up the fields by ordinal and name.
+     * @return Number of notifications replayed.
+     * @see #replay(String, Subject, Class)
+     */
+    public <E extends Enum<E>> int replay(final Subject<E, ?> target, final Class<E> fields) {
+        return replay(null, target, fields);
+    }
+
+    /**
+     * Replays, in order, the notifications of one {@code Subject} against {@code target}.
+     * <p>
+     * A record is replayed only if {@code fields} has a field with the recorded ordinal and name, as a journal may
+     * hold the notifications of unrelated subjects, or of an older version of the fields. The other records are
+     * skipped and counted in a warning.
+     * </p>
+     * <p>
+     * When {@code target} derives fields, see {@link AbstractSubject#derive}, the recorded updates of the derived
+     * fields are skipped too, as {@code target} notifies them itself when it replays the fields they depend on.
+     * </p>
+     *
+     * @param subject Name of the {@code Subject} whose notifications are replayed, {@code null} for all.
+     * @param target  The {@code Subject} to notify.
+     * @param fields  The fields of {@code target}, for looking up the fields by ordinal and name.
+     * @return Number of notifications replayed.
+     */
+    public <E extends Enum<E>> int replay(final String subject, final Subject<E, ?> target, final Class<E> fields) {
+        Validate.notNull(target, "target");
+        Validate.notNull(fields, "fields");
+        final E[] constants = fields.getEnumConstants();
+        //noinspection unchecked
+        final Derivations<E> derivations = target instanceof AbstractSubject
+                ? ((AbstractSubject) target).settings().derivations : null;
+        int replayed = 0;
+        int skipped = 0;
+        for (Record record : records) {
+            if (subject != null && !matches(record.subject(), subject, Journal.SUBJECT_SIZE)) {
+                continue;
+            }
+            final int ordinal = record.fieldOrdinal();
+            if (ordinal < 0 || ordinal >= constants.length
+                    || !matches(record.field(), constants[ordinal].name(), Journal.FIELD_SIZE)) {
+                skipped++;
+            } else if (derivations == null || record.event() != EventCRUD.UPDATE
+                    || !derivations.isDerived(constants[ordinal])) {
+                target.notify(constants[ordinal], record.event());
+                replayed++;
+            }
+        }
+        if (skipped > 0) {
+            LOGGER.log(Level.WARNING, "Skipped {0} records with no such field in {1}",
+                    new Object[]{skipped, fields.getSimpleName()});
+        }
+        return replayed;
+    }
+
+    /**
+     * @return {@code true} if {@code recorded} is {@code name} as the journal writes it, cut to {@code size}
+     *         characters and with {@code ?} for any character that is not ASCII.
+     */
+    private static boolean matches(final String recorded, final String name, final int size) {
+        if (recorded.length() != Math.min(size, name.length())) {
+            return false;
+        }
+        for (int i = 0; i < recorded.length(); i++) {
+            final char c = name.charAt(i);
+            if (recorded.charAt(i) != (c < 128 ? c : '?')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A {@code Mailbox} gives an {@code Observer} a bounded queue of its own. Attach the {@code Mailbox} instead of the
+ * {@code Observer}: the {@code Subject} only appends the notification to the queue and returns, while the
+ * {@code Observer} is updated in order, one notification at a time, on the threads of an {@code Executor}. A slow
+ * {@code Observer} then only delays itself, and never the {@code Subject} or the other {@code Observer}s.</p>
+ * What happens when the queue is full is decided by the {@link Overflow} policy. Use {@link #depth()} to monitor how
+ * far behind the {@code Observer} is. The {@code Observer} is updated through the {@code Subject} that notified, as
+ * if it were attached itself, so that the {@code Isolation} of the {@code Subject} applies to it, and the
+ * {@code Subject} compares the {@code Observer} when the {@code Mailbox} is attached again or detached.
+ * <pre>
+ * Mailbox&lt;Field, MySubject&gt; mailbox = new Mailbox&lt;Field, MySubject&gt;(observer, executor, 100, Overflow.CONFLATE);
+ * subject.attach(mailbox, EventCRUD.CUD, Field.values());
+ * </pre>
+ *
+ * @param <E> An enum that describes which field has a change.
+ * @param <S> Subject.
+ */
+public final class Mailbox<E extends Enum, S extends Subject> implements Observer<E, S>, Observer.Prioritized,
+        Decorator.Forwarding {
+
+    /**
+     * What to do when a notification arrives and the queue is full.
+     */
+    public enum Overflow {
+        /**
+         * Block the notifying thread until there is room in the queue.
+         */
+        BLOCK,
+        /**
+         * Discard the oldest notification waiting in the queue.
+         */
+        DROP_OLDEST,
+        /**
+         * Discard the notification that arrived.
+         */
+        DROP_NEWEST,
+        /**
+         * Never queue a field and event from a {@code Subject} that is already waiting in the queue, as the
+         * {@code Observer} reads the latest state when it is updated anyway. If the queue still is full, the oldest
+         * notification is discarded.
+         */
+        CONFLATE
+    }
+
+    private final Observer<E, S> observer;
+    private final Executor executor;
+    private final Overflow overflow;
+
+    private final Enum[] fields;
+    private final EventCRUD[] events;
+    private final Subject[] subjects;
+    private final AbstractSubject[] owners;
+    private final Waiting waiting;
+    private int head;
+    private int size;
+    private long dropped;
+    private boolean scheduled;
+
+    private final Runnable drain = new Runnable() {
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * @param observer The {@code Observer} receiving the notifications.
+     * @param executor Runs the updates of {@code observer}, never more than one at a time.
+     * @param capacity Maximum number of notifications waiting.
+     * @param overflow What to do when {@code capacity} is reached.
+     */
+    public Mailbox(final Observer<E, S> observer, final Executor executor, final int capacity, final Overflow overflow) {
+        Validate.notNull(observer, "Observer");
+        Validate.notNull(executor, "executor");
+        Validate.notNull(overflow, "overflow");
+        Validate.isTrue(capacity > 0, "Capacity must be 1 or more");
+        this.observer = observer;
+        this.executor = executor;
+        this.overflow = overflow;
+        this.fields = new Enum[capacity];
+        this.events = new EventCRUD[capacity];
+        this.subjects = new Subject[capacity];
+        this.owners = new AbstractSubject[capacity];
+        this.waiting = overflow == Overflow.CONFLATE ? new Waiting() : null;
+    }
+
+    /**
+     * @return The {@code Observer} receiving the notifications.
+     */
+    public Observer<E, S> observer() {
+        return observer;
+    }
+
+    /**
+     * @return Number of notifications waiting to be delivered.
+     */
+    public synchronized int depth() {
+        return size;
+    }
+
+    /**
+     * @return Maximum number of notifications waiting.
+     */
+    public int capacity() {
+        return fields.length;
+    }
+
+    /**
+     * @return Number of notifications discarded because the queue was full.
+     */
+    public synchronized long dropped() {
+        return dropped;
+    }
+
+    /**
+     * Appends the notification to the queue, and returns without waiting for the {@code Observer}, unless the queue
+     * is full and the policy is {@link Overflow#BLOCK}.
+     */
+    public void update(final E field, final EventCRUD event, final S subject) {
+        //noinspection unchecked
+        offer(subject instanceof AbstractSubject ? (AbstractSubject<E, S>) subject : null, field, event, subject);
+    }
+
+    /**
+     * Appends a notification from the {@code Subject} updating this {@code Mailbox}, so that the {@code Observer}
+     * is updated through it.
+     */
+    void update(final AbstractSubject<E, S> owner, final E field, final EventCRUD event) {
+        offer(owner, field, event, owner.delegateFor());
+    }
+
+    /**
+     * @param owner The {@code Subject} updating the {@code Observer}, or {@code null} to update it directly.
+     */
+    private void offer(final AbstractSubject<E, S> owner, final E field, final EventCRUD event, final S subject) {
+        synchronized (this) {
+            if (waiting != null && waiting.contains(subject, field, event)) {
+                return;
+            }
+            while (size == fields.length) {
+                switch (overflow) {
+                    case BLOCK:
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            dropped++;
+                            return;
+                        }
+                        break;
+                    case DROP_NEWEST:
+                        dropped++;
+                        return;
+                    default:
+                        poll();
+                        dropped++;
+                        break;
+                }
+            }
+            final int tail = (head + size) % fields.length;
+            fields[tail] = field;
+            events[tail] = event;
+            subjects[tail] = subject;
+            owners[tail] = owner;
+            if (waiting != null) {
+                waiting.add(subject, field, event);
+            }
+            size++;
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        executor.execute(drain);
+    }
+
+    private void poll() {
+        if (waiting != null) {
+            waiting.remove(subjects[head], fields[head], events[head]);
+        }
+        fields[head] = null;
+        events[head] = null;
+        subjects[head] = null;
+        owners[head] = null;
+        head = (head + 1) % fields.length;
+        size--;
+        notifyAll();
+    }
+
+    private void drain() {
+        while (true) {
+            final E field;
+            final EventCRUD event;
+            final S subject;
+            final AbstractSubject<E, S> owner;
+            synchronized (this) {
+                if (size == 0) {
+                    scheduled = false;
+                    return;
+                }
+                //noinspection unchecked
+                field = (E) fields[head];
+                event = events[head];
+                //noinspection unchecked
+                subject = (S) subjects[head];
+                //noinspection unchecked
+                owner = owners[head];
+                poll();
+            }
+            try {
+                if (owner != null) {
+                    owner.update(observer, field, event, null);
+                } else {
+                    observer.update(field, event, subject);
+                }
+            } catch (RuntimeException e) {
+                reschedule();
+                throw e;
+            } catch (Error e) {
+                reschedule();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Makes sure the remaining notifications are delivered when an update fails.
+     */
+    private void reschedule() {
+        synchronized (this) {
+            if (size == 0) {
+                scheduled = false;
+                return;
+            }
+        }
+        executor.execute(drain);
+    }
+
+    public Observer unwrap() {
+        return observer;
+    }
+
+    public int priority() {
+        return observer instanceof Observer.Prioritized ? ((Observer.Prioritized) observer).priority() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Mailbox[" + observer + "]";
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+/**
+ * One notification of a {@code Subject}, as an item of a {@link SubjectPublisher}, or to be published by a
+ * {@link SubjectSubscriber}. Instances are immutable.
+ *
+ * @param <E> An enum that describes the fields that we can observe.
+ * @param <S> Subject.
+ */
+public final class Notification<E extends Enum, S extends Subject> {
+
+    private final E field;
+    private final EventCRUD event;
+    private final S subject;
+    private final Change change;
+
+    /**
+     * @param field   Field notified.
+     * @param event   Event notified.
+     * @param subject {@code Subject} that notified.
+     * @param change  What changed, or {@code null}.
+     */
+    public Notification(final E field, final EventCRUD event, final S subject, final Change change) {
+        Validate.notNull(field, "Field");
+        Validate.notNull(event, "event");
+        this.field = field;
+        this.event = event;
+        this.subject = subject;
+        this.change = change;
+    }
+
+    public E field() {
+        return field;
+    }
+
+    public EventCRUD event() {
+        return event;
+    }
+
+    /**
+     * @return The {@code Subject} that notified, or {@code null} if not known.
+     */
+    public S subject() {
+        return subject;
+    }
+
+    /**
+     * @return What changed, or {@code null} if the {@code Subject} did not tell.
+     */
+    public Change change() {
+        return change;
+    }
+
+    @Override
+    public String toString() {
+        return "Notification[" + field + " " + event + (change == null ? "" : " " + change) + "]";
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A list that tells its {@code Observer}s which rows changed, instead of only that the list did. Each change is
+ * published as a {@link Change#range(int, List) range} of consecutive elements, with {@link EventCRUD#CREATE} for
+ * elements inserted, {@link EventCRUD#DELETE} for elements removed, and {@link EventCRUD#UPDATE} for elements
+ * replaced.</p>
+ * Changes are coalesced until they are delivered: appending 10 000 rows before the event dispatch thread gets to run
+ * is delivered as a single insertion of 10 000 rows. Use {@link ObservableListModel} or {@link ObservableTableModel}
+ * to show the list in a {@code JList} or a {@code JTable}; they fire the matching interval events, so that only the
+ * affected rows are repainted.</p>
+ * The list may be changed from any thread. {@code ChangeObserver}s receive the changes made after they attached, so
+ * together with the state read when they are sent {@link EventCRUD#INITIAL}, they always know the full list. Other
+ * {@code Observer}s are updated as usual, and read the list when they are updated. A list without {@code Observer}s
+ * records no changes.
+ *
+ * @param <T> Type of the elements.
+ */
+public class ObservableList<T> extends Subject.AsynchronousSubject<ObservableList.Field, ObservableList> {
+
+    /**
+     * The only field of the list.
+     */
+    public enum Field {
+        ELEMENTS
+    }
+
+    private final List<T> elements = new ArrayList<T>();
+    private final List<Burst> pending = new ArrayList<Burst>();
+    private Burst open;
+    private boolean scheduled;
+
+    private final Runnable flush = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    public ObservableList() {
+    }
+
+    /**
+     * @param elements The initial elements of the list.
+     */
+    public ObservableList(final Collection<? extends T> elements) {
+        Validate.notNull(elements, "elements");
+        this.elements.addAll(elements);
+    }
+
+    /**
+     * Closes the changes recorded so far to new {@code Observer}s, as they are already part of the state they read
+     * when they are sent {@link EventCRUD#INITIAL}.
+     */
+    @Override
+    public void attach(final Observer<Field, ObservableList> observer, final Set<EventCRUD> events,
+                       final Field... fields) {
+        synchronized (this) {
+            super.attach(observer, events, fields);
+            open = null;
+        }
+    }
+
+    public synchronized int size() {
+        return elements.size();
+    }
+
+    public synchronized T get(final int index) {
+        return elements.get(index);
+    }
+
+    public synchronized int indexOf(final T element) {
+        return elements.indexOf(element);
+    }
+
+    /**
+     * @return A copy of the elements.
+     */
+    public synchronized List<T> snapshot() {
+        return new ArrayList<T>(elements);
+    }
+
+    public void add(final T element) {
+        final boolean schedule;
+        synchronized (this) {
+            elements.add(element);
+            schedule = record(EventCRUD.CREATE, elements.size() - 1, element);
+        }
+        schedule(schedule);
+    }
+
+    public void add(final int index, final T element) {
+        final boolean schedule;
+        synchronized (this) {
+            elements.add(index, element);
+            schedule = record(EventCRUD.CREATE, index, element);
+        }
+        schedule(schedule);
+    }
+
+    public void addAll(final Collection<? extends T> added) {
+        Validate.notNull(added, "elements");
+        if (added.isEmpty()) {
+            return;
+        }
+        final boolean schedule;
+        synchronized (this) {
+            final int from = elements.size();
+            elements.addAll(added);
+            schedule = record(EventCRUD.CREATE, from, new ArrayList<Object>(added));
+        }
+        schedule(schedule);
+    }
+
+    /**
+     * @return The element replaced.
+     */
+    public T set(final int index, final T element) {
+        final T replaced;
+        final boolean schedule;
+        synchronized (this) {
+            replaced = elements.set(index, element);
+            schedule = record(EventCRUD.UPDATE, index, element);
+        }
+        schedule(schedule);
+        return replaced;
+    }
+
+    /**
+     * @return The element removed.
+     */
+    public T remove(final int index) {
+        final T removed;
+        final boolean schedule;
+        synchronized (this) {
+            removed = elements.remove(index);
+            schedule = record(EventCRUD.DELETE, index, removed);
+        }
+        schedule(schedule);
+        return removed;
+    }
+
+    /**
+     * @return {@code true} if {@code element} was in the list.
+     */
+    public boolean remove(final T element) {
+        final boolean schedule;
+        synchronized (this) {
+            final int index = elements.indexOf(element);
+            if (index < 0) {
+                return false;
+            }
+            elements.remove(index);
+            schedule = record(EventCRUD.DELETE, index, element);
+        }
+        schedule(schedule);
+        return true;
+    }
+
+    public void clear() {
+        final boolean schedule;
+        synchronized (this) {
+            if (elements.isEmpty()) {
+                return;
+            }
+            final List<Object> removed = new ArrayList<Object>(elements);
+            elements.clear();
+            schedule = record(EventCRUD.DELETE, 0, removed);
+        }
+        schedule(schedule);
+    }
+
+    /**
+     * Records a change of a single element. Must be called holding the lock.
+     *
+     * @return {@code true} if the caller must {@link #schedule(boolean)} the delivery.
+     */
+    private boolean record(final EventCRUD event, final int index, final T element) {
+        final Burst burst = burst(event);
+        if (burst == null) {
+            return false;
+        }
+        final Delta last = burst.last();
+        if (last == null || !last.merge(event, index, element)) {
+            final List<Object> items = new ArrayList<Object>();
+            items.add(element);
+            burst.deltas.add(new Delta(event, index, items));
+        }
+        return scheduling();
+    }
+
+    /**
+     * Records a change of consecutive elements. Must be called holding the lock.
+     *
+     * @return {@code true} if the caller must {@link #schedule(boolean)} the delivery.
+     */
+    private boolean record(final EventCRUD event, final int from, final List<Object> items) {
+        final Burst burst = burst(event);
+        if (burst == null) {
+            return false;
+        }
+        burst.deltas.add(new Delta(event, from, items));
+        return scheduling();
+    }
+
+    /**
+     * @return The burst recording the changes, or {@code null} if no {@code Observer} is interested in
+     *         {@code event}.
+     */
+    private Burst burst(final EventCRUD event) {
+        if (open == null) {
+            final DispatchIndex<Field, ObservableList> index = index();
+            if (index.observers(Field.ELEMENTS, event).length == 0) {
+                return null;
+            }
+            open = new Burst(index);
+            pending.add(open);
+        } else if (open.index.observers(Field.ELEMENTS, event).length == 0) {
+            return null;
+        }
+        return open;
+    }
+
+    private boolean scheduling() {
+        if (scheduled) {
+            return false;
+        }
+        scheduled = true;
+        return true;
+    }
+
+    private void schedule(final boolean schedule) {
+        if (schedule) {
+            dispatcher().execute(flush);
+        }
+    }
+
+    /**
+     * Publishes the changes recorded, on the thread of the {@code Dispatcher}. Each delta is journaled and published
+     * into the {@code Hub} as it is delivered, so those see the coalesced deltas, not every single change.
+     */
+    private void flush() {
+        final List<Burst> bursts;
+        synchronized (this) {
+            bursts = new ArrayList<Burst>(pending);
+            pending.clear();
+            open = null;
+            scheduled = false;
+        }
+        for (Burst burst : bursts) {
+            for (Delta delta : burst.deltas) {
+                final Observer<Field, ObservableList>[] observers = burst.index.observers(Field.ELEMENTS, delta.event);
+                if (observers.length > 0) {
+                    publishRecorded(Field.ELEMENTS, delta.event, Change.wrap(delta.from, delta.items), observers);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies a change published by an {@code ObservableList} to a copy of it.
+     *
+     * @param copy   A copy of the list, as it was before the change.
+     * @param event  {@code CREATE}, {@code DELETE} or {@code UPDATE}.
+     * @param change The elements changed.
+     */
+    static <T> void apply(final List<T> copy, final EventCRUD event, final Change change) {
+        final List<T> items = change.elements();
+        final int from = change.index();
+        switch (event) {
+            case CREATE:
+                copy.addAll(from, items);
+                break;
+            case DELETE:
+                copy.subList(from, from + items.size()).clear();
+                break;
+            case UPDATE:
+                for (int i = 0; i < items.size(); i++) {
+                    copy.set(from + i, items.get(i));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * The changes recorded while the same {@code Observer}s were attached.
+     */
+    private static final class Burst {
+        private final DispatchIndex<Field, ObservableList> index;
+        private final List<Delta> deltas = new ArrayList<Delta>();
+
+        Burst(final DispatchIndex<Field, ObservableList> index) {
+            this.index = index;
+        }
+
+        Delta last() {
+            return deltas.isEmpty() ? null : deltas.get(deltas.size() - 1);
+        }
+    }
+
+    /**
+     * Consecutive elements inserted, removed or replaced, starting at {@code from}.
+     */
+    private static final class Delta {
+        private final EventCRUD event;
+        private final int from;
+        private final List<Object> items;
+
+        Delta(final EventCRUD event, final int from, final List<Object> items) {
+            this.event = event;
+            this.from = from;
+            this.items = items;
+        }
+
+        /**
+         * @return {@code true} if the change of the element at {@code index} extends this delta.
+         */
+        boolean merge(final EventCRUD event, final int index, final Object element) {
+            if (event != this.event) {
+                return false;
+            }
+            final int to = from + items.size() - 1;
+            switch (event) {
+                case CREATE:
+                    if (index >= from && index <= to + 1) {
+                        items.add(index - from, element);
+                        return true;
+                    }
+                    return false;
+                case DELETE:
+                    // Removing the element now at the start of the range, as when removing the same row repeatedly.
+                    if (index == from) {
+                        items.add(element);
+                        return true;
+                    }
+                    return false;
+                case UPDATE:
+                    if (index >= from && index <= to) {
+                        items.set(index - from, element);
+                        return true;
+                    }
+                    if (index == to + 1) {
+                        items.add(element);
+                        return true;
+                    }
+                    return false;
+                default:
+                    return false;
+            }
+        }
+    }
+}
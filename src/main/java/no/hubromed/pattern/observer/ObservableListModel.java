@@ -0,0 +1,95 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.AbstractListModel;
+
+/**
+ * {@code ListModel} showing an {@link ObservableList} in a {@code JList}. The model keeps its own copy of the list,
+ * changed on the event dispatch thread only, and fires {@code intervalAdded}, {@code intervalRemoved} and
+ * {@code contentsChanged} for the rows that actually changed.</p>
+ * Create it on the event dispatch thread, and {@link #dispose()} it when the {@code JList} is no longer used.
+ *
+ * @param <T> Type of the elements.
+ */
+public class ObservableListModel<T> extends AbstractListModel<T>
+        implements ChangeObserver<ObservableList.Field, ObservableList> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ObservableList<T> list;
+    private final List<T> rows = new ArrayList<T>();
+
+    /**
+     * @param list The list to show.
+     */
+    public ObservableListModel(final ObservableList<T> list) {
+        Validate.notNull(list, "list");
+        this.list = list;
+        list.attach(this, EventCRUD.CUD, ObservableList.Field.ELEMENTS);
+    }
+
+    /**
+     * Stops observing the list.
+     */
+    public void dispose() {
+        list.detach(this);
+    }
+
+    public int getSize() {
+        return rows.size();
+    }
+
+    public T getElementAt(final int index) {
+        return rows.get(index);
+    }
+
+    /**
+     * Reloads all the rows, as when attaching.
+     */
+    public void update(final ObservableList.Field field, final EventCRUD event, final ObservableList subject) {
+        final int removed = rows.size();
+        rows.clear();
+        if (removed > 0) {
+            fireIntervalRemoved(this, 0, removed - 1);
+        }
+        rows.addAll(list.snapshot());
+        if (!rows.isEmpty()) {
+            fireIntervalAdded(this, 0, rows.size() - 1);
+        }
+    }
+
+    public void update(final ObservableList.Field field, final EventCRUD event, final ObservableList subject,
+                       final Change change) {
+        ObservableList.apply(rows, event, change);
+        switch (event) {
+            case CREATE:
+                fireIntervalAdded(this, change.index(), change.toIndex());
+                break;
+            case DELETE:
+                fireIntervalRemoved(this, change.index(), change.toIndex());
+                break;
+            case UPDATE:
+                fireContentsChanged(this, change.index(), change.toIndex());
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * {@code TableModel} showing an {@link ObservableList} in a {@code JTable}, one element per row. The model keeps its
+ * own copy of the list, changed on the event dispatch thread only, and fires {@code fireTableRowsInserted},
+ * {@code fireTableRowsDeleted} and {@code fireTableRowsUpdated} for the rows that actually changed, instead of
+ * {@code fireTableDataChanged}.</p>
+ * Create it on the event dispatch thread, and {@link #dispose()} it when the {@code JTable} is no longer used.
+ * <pre>
+ * TableModel model = new ObservableTableModel&lt;Trade&gt;(trades) {
+ *     public int getColumnCount() {
+ *         return 2;
+ *     }
+ *
+ *     protected Object getColumnValue(Trade trade, int column) {
+ *         return column == 0 ? trade.getInstrument() : trade.getPrice();
+ *     }
+ * };
+ * </pre>
+ *
+ * @param <T> Type of the elements.
+ */
+public abstract class ObservableTableModel<T> extends AbstractTableModel
+        implements ChangeObserver<ObservableList.Field, ObservableList> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ObservableList<T> list;
+    private final List<T> rows = new ArrayList<T>();
+
+    /**
+     * @param list The list to show.
+     */
+    protected ObservableTableModel(final ObservableList<T> list) {
+        Validate.notNull(list, "list");
+        this.list = list;
+        list.attach(this, EventCRUD.CUD, ObservableList.Field.ELEMENTS);
+    }
+
+    /**
+     * @param row    Element shown in the row.
+     * @param column Index of the column.
+     * @return Value of the cell.
+     */
+    protected abstract Object getColumnValue(T row, int column);
+
+    /**
+     * Stops observing the list.
+     */
+    public void dispose() {
+        list.detach(this);
+    }
+
+    /**
+     * @param row Index of the row.
+     * @return Element shown in the row.
+     */
+    public T getRow(final int row) {
+        return rows.get(row);
+    }
+
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    public Object getValueAt(final int row, final int column) {
+        return getColumnValue(rows.get(row), column);
+    }
+
+    /**
+     * Reloads all the rows, as when attaching.
+     */
+    public void update(final ObservableList.Field field, final EventCRUD event, final ObservableList subject) {
+        rows.clear();
+        rows.addAll(list.snapshot());
+        fireTableDataChanged();
+    }
+
+    public void update(final ObservableList.Field field, final EventCRUD event, final ObservableList subject,
+                       final Change change) {
+        ObservableList.apply(rows, event, change);
+        switch (event) {
+            case CREATE:
+                fireTableRowsInserted(change.index(), change.toIndex());
+                break;
+            case DELETE:
+                fireTableRowsDeleted(change.index(), change.toIndex());
+                break;
+            case UPDATE:
+                fireTableRowsUpdated(change.index(), change.toIndex());
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -45,6 +45,30 @@ public interface Observer<E extends Enum, S extends Subject> {
      */
     void update(final E field, final EventCRUD event, final S subject);
 
+    /**
+     * Marker for {@code Observer}s that must be updated in the order they were attached, on the thread making the
+     * notification, also when the {@code Subject} updates its {@code Observer}s in parallel, see
+     * {@link Subject.SynchronousSubject#setParallel(java.util.concurrent.ForkJoinPool, int)}.
+     */
+    interface Ordered {
+    }
+
+    /**
+     * For {@code Observer}s that should be updated before others when the deliveries are time sliced, see
+     * {@link FrameScheduler}. Typically a component returns a higher priority while it is showing.
+     */
+    interface Prioritized {
+
+        /**
+         * Asked once per notification, on the thread making it. An {@link ChangeObserver} should keep the same
+         * priority while notifications are pending, as notifications of different priorities are not delivered in
+         * the order they were made.
+         *
+         * @return The priority. Higher priorities are updated first, {@code 0} is the priority of other
+         *         {@code Observer}s.
+         */
+        int priority();
+    }
 
     /**
      * The {@code ObserverCounter} can be used for testing that a Subject fires the correct fields and events.
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.Arrays;
+
+/**
+ * Immutable snapshot of everything a {@code Subject} knows about its {@code Observer}s: who is attached, what each
+ * of them subscribes to, and the {@link DispatchIndex} built from it. Attaching or detaching makes a new snapshot,
+ * which the {@code Subject} publishes atomically, so a notification always sees a consistent registry without
+ * taking any lock.
+ *
+ * @param <E> An enum that describes the fields that we can observe.
+ * @param <S> Subject.
+ */
+final class Registry<E extends Enum, S extends Subject> {
+
+    private static final Registry EMPTY = new Registry(new Observer[0], new Subscription[0], DispatchIndex.empty());
+
+    private final Observer<E, S>[] observers;
+    private final Subscription[] subscriptions;
+    private final DispatchIndex<E, S> index;
+
+    private Registry(final Observer<E, S>[] observers, final Subscription[] subscriptions, final DispatchIndex<E, S> index) {
+        this.observers = observers;
+        this.subscriptions = subscriptions;
+        this.index = index;
+    }
+
+    /**
+     * @return A registry without any {@code Observer}s.
+     */
+    static <E extends Enum, S extends Subject> Registry<E, S> empty() {
+        //noinspection unchecked
+        return EMPTY;
+    }
+
+    /**
+     * @return The index used when notifying.
+     */
+    DispatchIndex<E, S> index() {
+        return index;
+    }
+
+    /**
+     * @return Number of {@code Observer}s attached.
+     */
+    int size() {
+        return observers.length;
+    }
+
+    /**
+     * @return The {@code Observer}s attached, in the order they were attached. Must not be modified.
+     */
+    Observer<E, S>[] observers() {
+        return observers;
+    }
+
+    /**
+     * @param observer     {@code Observer} attaching.
+     * @param subscription What {@code observer} subscribes to. Replaces any previous subscription of {@code observer},
+     *                     as well as the instance attached, which may have been wrapped in a {@link DeliveryPolicy}.
+     * @return A new registry where {@code observer} is attached.
+     */
+    Registry<E, S> attach(final Observer<E, S> observer, final Subscription subscription) {
+        final int i = indexOf(observer);
+        final Observer<E, S>[] newObservers;
+        final Subscription[] newSubscriptions;
+        if (i >= 0) {
+            newObservers = observers.clone();
+            newSubscriptions = subscriptions.clone();
+        } else {
+            newObservers = Arrays.copyOf(observers, observers.length + 1);
+            newSubscriptions = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+        }
+        newObservers[i >= 0 ? i : observers.length] = observer;
+        newSubscriptions[i >= 0 ? i : subscriptions.length] = subscription;
+        return new Registry<E, S>(newObservers, newSubscriptions, DispatchIndex.build(newObservers, newSubscriptions));
+    }
+
+    /**
+     * @param observer {@code Observer} detaching.
+     * @return A new registry where {@code observer} is not attached, or this registry if it was not attached.
+     */
+    Registry<E, S> detach(final Observer<E, S> observer) {
+        final int i = indexOf(observer);
+        if (i < 0) {
+            return this;
+        }
+        if (observers.length == 1) {
+            return empty();
+        }
+        //noinspection unchecked
+        final Observer<E, S>[] newObservers = new Observer[observers.length - 1];
+        final Subscription[] newSubscriptions = new Subscription[subscriptions.length - 1];
+        System.arraycopy(observers, 0, newObservers, 0, i);
+        System.arraycopy(observers, i + 1, newObservers, i, observers.length - i - 1);
+        System.arraycopy(subscriptions, 0, newSubscriptions, 0, i);
+        System.arraycopy(subscriptions, i + 1, newSubscriptions, i, subscriptions.length - i - 1);
+        return new Registry<E, S>(newObservers, newSubscriptions, DispatchIndex.build(newObservers, newSubscriptions));
+    }
+
+    /**
+     * @param observer {@code Observer} to look for.
+     * @return {@code true} if {@code observer} is attached.
+     */
+    boolean contains(final Observer<E, S> observer) {
+        return indexOf(observer) >= 0;
+    }
+
+    private int indexOf(final Observer<E, S> observer) {
+        final Observer target = unwrap(observer);
+        for (int i = 0; i < observers.length; i++) {
+            if (unwrap(observers[i]).equals(target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param observer An {@code Observer}, possibly a {@link Decorator}.
+     * @return The {@code Observer} given to {@code attach}, without the {@link Decorator}s around it.
+     */
+    static Observer unwrap(final Observer observer) {
+        Observer unwrapped = observer;
+        while (unwrapped instanceof Decorator) {
+            unwrapped = ((Decorator) unwrapped).unwrap();
+        }
+        return unwrapped;
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+
+/**
+ * Watches the {@code Observer}s updated on the Swing event dispatch thread, and reports any update that runs longer
+ * than a threshold, together with the stack of the event dispatch thread at the time, so that a frozen user
+ * interface can be traced to the {@code Subject}, field and {@code Observer} that froze it.
+ * <pre>
+ * StallWatchdog watchdog = new StallWatchdog(200, TimeUnit.MILLISECONDS);
+ * watchdog.start();
+ * </pre>
+ * While a watchdog is running, each update on the event dispatch thread records which {@code Observer} it is, in a
+ * few fields that only the event dispatch thread writes. The watchdog thread checks them a few times per threshold,
+ * and only takes the stack once an update is stalled. An update is reported once, however long it stalls. When
+ * {@code Observer}s update other {@code Subject}s in turn, the innermost update that has stalled is reported.</p>
+ * At most one watchdog runs at a time; starting another replaces it.
+ */
+public final class StallWatchdog {
+
+    private static final Logger LOGGER = Logger.getLogger(StallWatchdog.class.getSimpleName());
+
+    /**
+     * Nested updates recorded; those deeper are counted but not attributed.
+     */
+    private static final int MAX_DEPTH = 8;
+
+    private static volatile StallWatchdog running;
+
+    /**
+     * Told of the stalls found by a {@code StallWatchdog}.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the thread of the watchdog, while the update is still running.
+         *
+         * @param stall The update that stalled.
+         */
+        void stalled(Stall stall);
+    }
+
+    /**
+     * An update of an {@code Observer} that ran longer than the threshold.
+     */
+    public static final class Stall {
+        private final Subject subject;
+        private final Enum field;
+        private final Observer observer;
+        private final long nanos;
+        private final StackTraceElement[] stackTrace;
+
+        Stall(final Subject subject, final Enum field, final Observer observer, final long nanos,
+              final StackTraceElement[] stackTrace) {
+            this.subject = subject;
+            this.field = field;
+            this.observer = observer;
+            this.nanos = nanos;
+            this.stackTrace = stackTrace;
+        }
+
+        public Subject getSubject() {
+            return subject;
+        }
+
+        public Enum getField() {
+            return field;
+        }
+
+        public Observer getObserver() {
+            return observer;
+        }
+
+        /**
+         * @param unit Unit of the result.
+         * @return How long the update had been running when the stall was found.
+         */
+        public long getDuration(final TimeUnit unit) {
+            return unit.convert(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return The stack of the event dispatch thread when the stall was found.
+         */
+        public StackTraceElement[] getStackTrace() {
+            return stackTrace.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "Stall[subject = " + subject.name() + ", field = " + field + ", observer = " + observer + ", "
+                    + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms]";
+        }
+    }
+
+    private final long threshold;
+    private volatile Listener listener;
+    private volatile Thread watched;
+    private Thread watchdog;
+
+    // Written by the watched thread only; read by the watchdog between two equal, even, values of sequence.
+    private final Subject[] subjects = new Subject[MAX_DEPTH];
+    private final Enum[] fields = new Enum[MAX_DEPTH];
+    private final Observer[] observers = new Observer[MAX_DEPTH];
+    private final long[] started = new long[MAX_DEPTH];
+    private int depth;
+    private volatile long sequence;
+
+    /**
+     * @param threshold Longest time an update may run on the event dispatch thread before it is reported.
+     * @param unit      Unit of {@code threshold}.
+     */
+    public StallWatchdog(final long threshold, final TimeUnit unit) {
+        Validate.isTrue(threshold > 0, "Threshold must be more than 0");
+        Validate.notNull(unit, "unit");
+        this.threshold = unit.toNanos(threshold);
+    }
+
+    /**
+     * @param listener Told of each stall, {@code null} (default) to log it as a warning with the stack of the event
+     *                 dispatch thread.
+     */
+    public void setListener(final Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts watching the event dispatch thread, stopping the watchdog already running, if any.
+     */
+    public void start() {
+        synchronized (this) {
+            if (watchdog != null) {
+                throw new IllegalStateException("The watchdog is already started");
+            }
+            watchdog = new Thread(new Runnable() {
+                public void run() {
+                    watch();
+                }
+            }, "StallWatchdog");
+            watchdog.setDaemon(true);
+            watchdog.start();
+        }
+        final StallWatchdog previous;
+        synchronized (StallWatchdog.class) {
+            previous = running;
+            running = this;
+        }
+        if (previous != null) {
+            previous.stop();
+        }
+        findWatched();
+    }
+
+    /**
+     * Stops watching.
+     */
+    public void stop() {
+        synchronized (StallWatchdog.class) {
+            if (running == this) {
+                running = null;
+            }
+        }
+        final Thread watchdog;
+        synchronized (this) {
+            watchdog = this.watchdog;
+            this.watchdog = null;
+        }
+        if (watchdog != null) {
+            watchdog.interrupt();
+        }
+    }
+
+    /**
+     * @return The watchdog running, or {@code null}.
+     */
+    static StallWatchdog running() {
+        return running;
+    }
+
+    /**
+     * Looks up the event dispatch thread, which Swing replaces if an event throws.
+     */
+    private void findWatched() {
+        if (SwingUtilities.isEventDispatchThread()) {
+            watched = Thread.currentThread();
+        } else {
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    watched = Thread.currentThread();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return {@code true} if the updates on the calling thread are watched. If the event dispatch thread that was
+     *         watched has died, the next one is watched from its first update.
+     */
+    boolean isWatched() {
+        final Thread watched = this.watched;
+        final Thread current = Thread.currentThread();
+        if (watched == current) {
+            return true;
+        }
+        if (watched == null && SwingUtilities.isEventDispatchThread()) {
+            this.watched = current;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called by the watched thread before updating {@code observer}.
+     */
+    void enter(final Subject subject, final Enum field, final Observer observer) {
+        final int i = depth;
+        if (i < MAX_DEPTH) {
+            sequence++;
+            subjects[i] = subject;
+            fields[i] = field;
+            observers[i] = observer;
+            started[i] = System.nanoTime();
+            depth = i + 1;
+            sequence++;
+        } else {
+            depth = i + 1;
+        }
+    }
+
+    /**
+     * Called by the watched thread after updating the {@code Observer} of the matching {@link #enter}.
+     */
+    void exit() {
+        final int i = depth - 1;
+        if (i < MAX_DEPTH) {
+            sequence++;
+            subjects[i] = null;
+            fields[i] = null;
+            observers[i] = null;
+            depth = i;
+            sequence++;
+        } else {
+            depth = i;
+        }
+    }
+
+    private void watch() {
+        final long interval = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(threshold) / 4);
+        long reported = 0L;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(interval);
+                final Thread watched = this.watched;
+                if (watched == null) {
+                    continue;
+                }
+                if (!watched.isAlive()) {
+                    this.watched = null;
+                    continue;
+                }
+                reported = check(watched, reported);
+            }
+        } catch (InterruptedException e) {
+            // Stopped.
+        }
+    }
+
+    /**
+     * @param reported When the update last reported started, so that it is reported once.
+     * @return When the update reported started, or {@code reported} if none was.
+     */
+    private long check(final Thread watched, final long reported) {
+        final long before = sequence;
+        if ((before & 1L) != 0L) {
+            return reported;
+        }
+        final int depth = Math.min(this.depth, MAX_DEPTH);
+        final long now = System.nanoTime();
+        int stalled = -1;
+        for (int i = depth - 1; i >= 0 && stalled < 0; i--) {
+            if (now - started[i] > threshold) {
+                stalled = i;
+            }
+        }
+        if (stalled < 0) {
+            return reported;
+        }
+        final Subject subject = subjects[stalled];
+        final Enum field = fields[stalled];
+        final Observer observer = observers[stalled];
+        final long start = started[stalled];
+        if (sequence != before || subject == null || start == reported) {
+            return reported;
+        }
+        final Stall stall = new Stall(subject, field, observer, now - start, watched.getStackTrace());
+        FlightEvents.stall(stall);
+        final Listener listener = this.listener;
+        if (listener != null) {
+            try {
+                listener.stalled(stall);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Listener failed on " + stall, e);
+            }
+        } else {
+            final Throwable trace = new Throwable("Stack of " + watched.getName());
+            trace.setStackTrace(stall.getStackTrace());
+            LOGGER.log(Level.WARNING, stall.toString(), trace);
+        }
+        return start;
+    }
+
+    @Override
+    public String toString() {
+        return "StallWatchdog[threshold = " + TimeUnit.NANOSECONDS.toMillis(threshold) + " ms]";
+    }
+}
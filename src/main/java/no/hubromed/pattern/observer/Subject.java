@@ -16,8 +16,8 @@
 
 package no.hubromed.pattern.observer;
 
-import javax.swing.SwingUtilities;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 
 /**
@@ -76,27 +76,79 @@ public interface Subject<E extends Enum, S extends Subject> {
      */
     void notify(E field);
 
+    /**
+     * Starts a batch. Until the matching {@link #commit()}, notifications are recorded instead of published, no
+     * matter which thread makes them. Batches may be nested, in which case nothing is published before the outermost
+     * batch is committed.
+     * <p/>
+     * Use it when a compound change fires several notifications, so that the {@code Observer}s do not react to each
+     * intermediate state:
+     * <pre>
+     * subject.beginBatch();
+     * try {
+     *     ...
+     * } finally {
+     *     subject.commit();
+     * }
+     * </pre>
+     */
+    void beginBatch();
+
+    /**
+     * Ends the batch started by the matching {@link #beginBatch()}. When the outermost batch is committed, each
+     * distinct field and event recorded is published exactly once, in the order it was first notified.
+     *
+     * @throws IllegalStateException If no batch is started.
+     */
+    void commit();
+
+    /**
+     * Implementation of {@link Subject} updating its {@code Observer}s on the threads of the {@link Dispatcher} it is
+     * given. Use it when neither {@link SynchronousSubject} nor {@link AsynchronousSubject} fits, for instance to run
+     * the same model in a headless server process, see {@link Dispatchers}.
+     *
+     * @param <E> An {@code enum} describing the fields.
+     * @param <S> Subject.
+     */
+    class DispatchingSubject<E extends Enum, S extends Subject> extends AbstractSubject<E, S> {
+
+        public DispatchingSubject(final Dispatcher dispatcher) {
+            super(dispatcher);
+        }
+
+        public DispatchingSubject(final S delegateFor, final Dispatcher dispatcher) {
+            super(delegateFor, dispatcher);
+        }
+
+    }
+
     /**
      * Implementation of {@link Subject} used when notifications should be sent asynchronous.
      * This implementation is useful when for instance writing a Swing application.
      * <p/>
      * Note that for testing purposes, when you in a unit test want to verify that the correct events and fields are
      * emitted as the model changes, remember set the {@link #setSynchronous(boolean)} to {@code true}, as you otherwise
-     * most likely will encounter timing problems.
+     * most likely will encounter timing problems. Alternatively, keep the threading and wait for the
+     * {@code CompletionStage} returned by {@link #notifyAsync(Enum, EventCRUD)}.
+     * <p/>
+     * Notifications are {@link #setCoalescing(boolean) coalesced}: instead of one {@code invokeLater} per
+     * notification, the subject keeps one buffer of pending notifications, and schedules one {@code invokeLater} that
+     * delivers all of them in order.
      *
      * @param <E> An {@code enum} describing the fields.
      * @param <S> Subject.
+     * @see Dispatchers#eventDispatchThread()
      */
     class AsynchronousSubject<E extends Enum, S extends Subject> extends AbstractSubject<E, S> {
 
         private boolean synchronous;
 
         public AsynchronousSubject() {
-            super();
+            super(Dispatchers.eventDispatchThread());
         }
 
         public AsynchronousSubject(final S delegateFor) {
-            super(delegateFor);
+            super(delegateFor, Dispatchers.eventDispatchThread());
         }
 
         /**
@@ -114,17 +166,9 @@ public interface Subject<E extends Enum, S extends Subject> {
             return synchronous;
         }
 
-        void notify(final E felt, final EventCRUD event, final Observer<E, S> observer) {
-            if (SwingUtilities.isEventDispatchThread() || synchronous) {
-                observer.update(felt, event, delegateFor());
-            } else {
-                Runnable doFirePropertyChange = new Runnable() {
-                    public void run() {
-                        observer.update(felt, event, delegateFor());
-                    }
-                };
-                SwingUtilities.invokeLater(doFirePropertyChange);
-            }
+        @Override
+        Dispatcher dispatcher() {
+            return synchronous ? Dispatchers.inline() : super.dispatcher();
         }
 
     }
@@ -135,19 +179,60 @@ public interface Subject<E extends Enum, S extends Subject> {
      *
      * @param <E> An {@code enum} describing the fields.
      * @param <S> Subject.
+     * @see Dispatchers#inline()
      */
     class SynchronousSubject<E extends Enum, S extends Subject> extends AbstractSubject<E, S> {
 
         public SynchronousSubject() {
-            super();
+            super(Dispatchers.inline());
         }
 
         public SynchronousSubject(final S delegateFor) {
-            super(delegateFor);
+            super(delegateFor, Dispatchers.inline());
+        }
+
+        /**
+         * Spreads the {@code Observer}s of a notification across the workers of {@code pool}, for models with many
+         * CPU-heavy {@code Observer}s. {@code notify} still returns only once all of them have been updated. The
+         * {@code Observer}s must then be thread safe, except those marked {@link Observer.Ordered}, which are updated
+         * in the order they were attached, on the thread making the notification.
+         *
+         * @param pool      Pool updating the {@code Observer}s, {@code null} to update them one after another on the
+         *                  thread making the notification (default).
+         * @param threshold Minimum number of {@code Observer}s of a notification before it is worth spreading them,
+         *                  fewer are updated one after another on the thread making the notification.
+         */
+        public void setParallel(final ForkJoinPool pool, final int threshold) {
+            Validate.isTrue(threshold > 0, "Threshold must be 1 or more");
+            final Settings settings = changeSettings();
+            settings.threshold = threshold;
+            settings.pool = pool;
+        }
+
+        /**
+         * @return {@code true} if notifications with many {@code Observer}s update them in parallel.
+         */
+        public boolean isParallel() {
+            return settings().pool != null;
         }
 
-        void notify(final E felt, final EventCRUD event, final Observer<E, S> observer) {
-            observer.update(felt, event, delegateFor());
+        @Override
+        void deliver(final E field, final EventCRUD event, final Change change, final Observer<E, S>[] observers) {
+            final Settings settings = settings();
+            final ForkJoinPool pool = settings.pool;
+            if (pool == null || observers.length < settings.threshold) {
+                super.deliver(field, event, change, observers);
+            } else {
+                FanOut.deliver(pool, field, event, change, observers, this);
+            }
+        }
+
+        /**
+         * @return {@code true}, as no one else delivers the notifications collected for a {@link BatchObserver}.
+         */
+        @Override
+        boolean flushesBatches() {
+            return true;
         }
 
     }
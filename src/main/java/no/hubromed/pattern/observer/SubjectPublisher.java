@@ -0,0 +1,377 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * Publishes the notifications of a {@code Subject} to {@link Flow.Subscriber}s, for reactive pipelines. Each
+ * {@code Subscriber} is attached to the {@code Subject} as an {@code Observer} of its own, with a bounded buffer of
+ * the notifications it has not requested yet, and receives them on the threads of the {@code Executor}, no faster than
+ * it requests them.</p>
+ * What happens when the buffer of a {@code Subscriber} is full is decided by its {@link Mailbox.Overflow} policy,
+ * {@link Mailbox.Overflow#BLOCK} by default, so that no notification is lost, at the price of blocking the
+ * notifying thread until the {@code Subscriber} requests more. Choose another policy for a {@code Subject} notifying
+ * on the event dispatch thread.
+ * <pre>
+ * SubjectPublisher&lt;Field, Prices&gt; publisher =
+ *         new SubjectPublisher&lt;Field, Prices&gt;(prices, executor, EventCRUD.CUD, Field.PRICE);
+ * publisher.subscribe(subscriber, 100, Mailbox.Overflow.CONFLATE);
+ * </pre>
+ * A {@code Subject} never completes; {@link #close()} completes the {@code Subscriber}s once they have received the
+ * notifications already buffered.
+ *
+ * @param <E> An enum that describes the fields that we can observe.
+ * @param <S> Subject.
+ */
+public final class SubjectPublisher<E extends Enum, S extends Subject> implements Flow.Publisher<Notification<E, S>> {
+
+    private final Subject<E, S> subject;
+    private final Executor executor;
+    private final Set<EventCRUD> events;
+    private final E[] fields;
+    private final CopyOnWriteArrayList<Link> links = new CopyOnWriteArrayList<Link>();
+    private volatile boolean closed;
+
+    /**
+     * @param subject  {@code Subject} whose notifications are published.
+     * @param executor Signals the {@code Subscriber}s, never more than one signal per {@code Subscriber} at a time.
+     * @param events   Events published.
+     * @param fields   Fields published.
+     */
+    public SubjectPublisher(final Subject<E, S> subject, final Executor executor, final Set<EventCRUD> events,
+                            final E... fields) {
+        Validate.notNull(subject, "subject");
+        Validate.notNull(executor, "executor");
+        Validate.notNull(events, "events");
+        Validate.notNull(fields, "fields");
+        Validate.isTrue(fields.length > 0, "Please publish 1 or more fields");
+        Validate.isTrue(events.size() > 0, "Please publish at least 1 event");
+        this.subject = subject;
+        this.executor = executor;
+        this.events = EnumSet.copyOf(events);
+        this.fields = fields.clone();
+    }
+
+    /**
+     * Subscribes with a buffer of {@link Flow#defaultBufferSize()} notifications, blocking the {@code Subject} when it
+     * is full.
+     */
+    public void subscribe(final Flow.Subscriber<? super Notification<E, S>> subscriber) {
+        subscribe(subscriber, Flow.defaultBufferSize(), Mailbox.Overflow.BLOCK);
+    }
+
+    /**
+     * @param subscriber Receives the notifications.
+     * @param capacity   Maximum number of notifications buffered, not yet requested by {@code subscriber}.
+     * @param overflow   What to do when {@code capacity} is reached. The {@link EventCRUD#INITIAL} events sent while
+     *                   subscribing never block, as {@code subscriber} can not request them yet; those beyond
+     *                   {@code capacity} are dropped.
+     */
+    public void subscribe(final Flow.Subscriber<? super Notification<E, S>> subscriber, final int capacity,
+                          final Mailbox.Overflow overflow) {
+        Validate.notNull(subscriber, "subscriber");
+        Validate.notNull(overflow, "overflow");
+        Validate.isTrue(capacity > 0, "Capacity must be 1 or more");
+        // Attached before onSubscribe, so that a cancel from onSubscribe, or a racing close(), detaches it again.
+        final Link link = new Link(subscriber, capacity, overflow);
+        links.add(link);
+        subject.attach(link, events, fields);
+        if (closed) {
+            link.complete();
+        }
+        subscriber.onSubscribe(link);
+        link.start();
+    }
+
+    /**
+     * @return Number of {@code Subscriber}s.
+     */
+    public int subscribers() {
+        return links.size();
+    }
+
+    /**
+     * @return Number of notifications discarded because the buffer of a {@code Subscriber} was full, summed over
+     *         the {@code Subscriber}s.
+     */
+    public long dropped() {
+        long dropped = 0L;
+        for (Link link : links) {
+            dropped += link.dropped();
+        }
+        return dropped;
+    }
+
+    /**
+     * Detaches from the {@code Subject}, and completes the {@code Subscriber}s once they have received the
+     * notifications already buffered.
+     */
+    public void close() {
+        closed = true;
+        for (Link link : links) {
+            link.complete();
+        }
+    }
+
+    /**
+     * The subscription of one {@code Subscriber}, attached to the {@code Subject} as an {@code Observer}, buffering
+     * the notifications in a ring until they are requested.
+     */
+    private final class Link implements Flow.Subscription, ChangeObserver<E, S> {
+        private final Flow.Subscriber<? super Notification<E, S>> subscriber;
+        private final Mailbox.Overflow overflow;
+        private final Object[] fields;
+        private final EventCRUD[] events;
+        private final Object[] subjects;
+        private final Change[] changes;
+        private final Waiting waiting;
+        private int head;
+        private int size;
+        private long demand;
+        private long dropped;
+        // Nothing is signalled until the Subscriber has been given the subscription, see start().
+        private boolean scheduled = true;
+        private boolean completing;
+        private boolean cancelled;
+        private boolean started;
+        private Throwable failure;
+
+        private final Runnable drain = new Runnable() {
+            public void run() {
+                drain();
+            }
+        };
+
+        Link(final Flow.Subscriber<? super Notification<E, S>> subscriber, final int capacity,
+             final Mailbox.Overflow overflow) {
+            this.subscriber = subscriber;
+            this.overflow = overflow;
+            this.fields = new Object[capacity];
+            this.events = new EventCRUD[capacity];
+            this.subjects = new Object[capacity];
+            this.changes = new Change[capacity];
+            this.waiting = overflow == Mailbox.Overflow.CONFLATE ? new Waiting() : null;
+        }
+
+        public void update(final E field, final EventCRUD event, final S subject) {
+            update(field, event, subject, null);
+        }
+
+        public void update(final E field, final EventCRUD event, final S subject, final Change change) {
+            synchronized (this) {
+                if (cancelled || completing) {
+                    return;
+                }
+                if (waiting != null && change == null && waiting.contains(subject, field, event)) {
+                    return;
+                }
+                while (size == fields.length) {
+                    // Blocking before the Subscriber has the subscription would block subscribe() for good.
+                    switch (started ? overflow : Mailbox.Overflow.DROP_NEWEST) {
+                        case BLOCK:
+                            try {
+                                wait();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                dropped++;
+                                return;
+                            }
+                            if (cancelled || completing) {
+                                return;
+                            }
+                            break;
+                        case DROP_NEWEST:
+                            dropped++;
+                            return;
+                        default:
+                            poll();
+                            dropped++;
+                            break;
+                    }
+                }
+                final int tail = (head + size) % fields.length;
+                fields[tail] = field;
+                events[tail] = event;
+                subjects[tail] = subject;
+                changes[tail] = change;
+                if (waiting != null && change == null) {
+                    waiting.add(subject, field, event);
+                }
+                size++;
+                if (demand == 0) {
+                    return;
+                }
+            }
+            schedule();
+        }
+
+        private void poll() {
+            if (waiting != null && changes[head] == null) {
+                waiting.remove(subjects[head], (Enum) fields[head], events[head]);
+            }
+            fields[head] = null;
+            events[head] = null;
+            subjects[head] = null;
+            changes[head] = null;
+            head = (head + 1) % fields.length;
+            size--;
+            notifyAll();
+        }
+
+        public void request(final long n) {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                if (n <= 0) {
+                    failure = new IllegalArgumentException("Please request 1 or more notifications, not " + n);
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            schedule();
+        }
+
+        public void cancel() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                while (size > 0) {
+                    poll();
+                }
+                notifyAll();
+            }
+            detach();
+        }
+
+        /**
+         * Starts signalling the {@code Subscriber}, once it has been given the subscription.
+         */
+        void start() {
+            synchronized (this) {
+                started = true;
+                scheduled = false;
+            }
+            schedule();
+        }
+
+        /**
+         * Completes the {@code Subscriber} once the notifications buffered are delivered.
+         */
+        void complete() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                completing = true;
+                notifyAll();
+            }
+            detach();
+            schedule();
+        }
+
+        private void detach() {
+            links.remove(this);
+            subject.detach(this);
+        }
+
+        private void schedule() {
+            synchronized (this) {
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
+            executor.execute(drain);
+        }
+
+        /**
+         * Signals the {@code Subscriber}, one signal at a time, while it has demand.
+         */
+        private void drain() {
+            while (true) {
+                final Notification<E, S> notification;
+                synchronized (this) {
+                    if (cancelled) {
+                        scheduled = false;
+                        return;
+                    }
+                    if (failure != null || (completing && size == 0)) {
+                        cancelled = true;
+                        scheduled = false;
+                    } else if (size == 0 || demand == 0) {
+                        scheduled = false;
+                        return;
+                    }
+                    if (cancelled) {
+                        notification = null;
+                    } else {
+                        //noinspection unchecked
+                        notification = new Notification<E, S>((E) fields[head], events[head], (S) subjects[head],
+                                changes[head]);
+                        poll();
+                        if (demand != Long.MAX_VALUE) {
+                            demand--;
+                        }
+                    }
+                }
+                if (notification == null) {
+                    detach();
+                    if (failure != null) {
+                        subscriber.onError(failure);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                try {
+                    subscriber.onNext(notification);
+                } catch (RuntimeException e) {
+                    cancel();
+                    throw e;
+                } catch (Error e) {
+                    cancel();
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * @return Number of notifications discarded because the buffer was full.
+         */
+        synchronized long dropped() {
+            return dropped;
+        }
+
+        @Override
+        public String toString() {
+            return "SubjectPublisher.Link[" + subscriber + "]";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SubjectPublisher[" + subject.name() + ", subscribers = " + links.size() + "]";
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Subscribes to a {@link Flow.Publisher} of notifications, such as a {@link SubjectPublisher}, and notifies them to a
+ * {@code Subject} of its own, so that its {@code Observer}s are updated as if the {@code Subject} had changed. The
+ * {@link EventCRUD#INITIAL} events, which are only meant for a new {@code Observer}, are skipped.</p>
+ * It requests {@code batch} notifications at a time, and requests more as soon as half of them are notified, so
+ * that the {@code Publisher} never sends more than the {@code Subject} has notified and is not held back waiting for
+ * requests either.
+ * <pre>
+ * publisher.subscribe(new SubjectSubscriber&lt;Field&gt;(mirror, 64));
+ * </pre>
+ *
+ * @param <E> An enum that describes the fields that we can observe.
+ */
+public final class SubjectSubscriber<E extends Enum> implements Flow.Subscriber<Notification<E, ?>> {
+
+    private final Subject<E, ?> subject;
+    private final int batch;
+    private final CompletableFuture<Void> done = new CompletableFuture<Void>();
+    private Flow.Subscription subscription;
+    private int outstanding;
+
+    /**
+     * @param subject {@code Subject} notifying the notifications received.
+     * @param batch   Number of notifications requested at a time.
+     */
+    public SubjectSubscriber(final Subject<E, ?> subject, final int batch) {
+        Validate.notNull(subject, "subject");
+        Validate.isTrue(batch > 0, "Batch must be 1 or more");
+        this.subject = subject;
+        this.batch = batch;
+    }
+
+    public void onSubscribe(final Flow.Subscription subscription) {
+        Validate.notNull(subscription, "subscription");
+        synchronized (this) {
+            if (this.subscription != null) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            outstanding = batch;
+        }
+        subscription.request(batch);
+    }
+
+    public void onNext(final Notification<E, ?> notification) {
+        Validate.notNull(notification, "notification");
+        if (notification.event() != EventCRUD.INITIAL) {
+            if (notification.change() != null && subject instanceof AbstractSubject) {
+                ((AbstractSubject<E, ?>) subject).notify(notification.field(), notification.event(),
+                        notification.change());
+            } else {
+                subject.notify(notification.field(), notification.event());
+            }
+        }
+        final int more;
+        synchronized (this) {
+            outstanding--;
+            if (outstanding > batch / 2) {
+                return;
+            }
+            more = batch - outstanding;
+            outstanding = batch;
+        }
+        subscription.request(more);
+    }
+
+    public void onError(final Throwable failure) {
+        Validate.notNull(failure, "failure");
+        done.completeExceptionally(failure);
+    }
+
+    public void onComplete() {
+        done.complete(null);
+    }
+
+    /**
+     * Stops notifying, by cancelling the subscription.
+     */
+    public void cancel() {
+        final Flow.Subscription subscription;
+        synchronized (this) {
+            subscription = this.subscription;
+        }
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        done.complete(null);
+    }
+
+    /**
+     * @return Completes when the {@code Publisher} completes or the subscription is cancelled, or completes
+     *         exceptionally with the failure of the {@code Publisher}.
+     */
+    public CompletionStage<Void> done() {
+        return done.minimalCompletionStage();
+    }
+
+    @Override
+    public String toString() {
+        return "SubjectSubscriber[" + subject.name() + "]";
+    }
+}
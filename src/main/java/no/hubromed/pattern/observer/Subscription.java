@@ -0,0 +1,111 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * The fields and events an {@code Observer} has attached to, encoded as bit masks. Fields are keyed by their
+ * ordinal, 64 to a {@code long}, and events by the ordinal of {@link EventCRUD}, which fits in 5 bits.</p>
+ * Instances are immutable and canonical: {@code Observer}s attaching with the same fields and events share the
+ * same instance, so the cost per {@code Observer} is a single reference.
+ */
+final class Subscription {
+
+    private static final Map<Subscription, WeakReference<Subscription>> CANONICAL =
+            new WeakHashMap<Subscription, WeakReference<Subscription>>();
+
+    private final long[] fields;
+    private final int events;
+
+    private Subscription(final long[] fields, final int events) {
+        this.fields = fields;
+        this.events = events;
+    }
+
+    /**
+     * @param events Events to subscribe to.
+     * @param fields Fields to subscribe to.
+     * @return The canonical subscription for {@code events} and {@code fields}.
+     */
+    static Subscription of(final Set<EventCRUD> events, final Enum... fields) {
+        int length = 0;
+        for (Enum field : fields) {
+            length = Math.max(length, (field.ordinal() >>> 6) + 1);
+        }
+        final long[] words = new long[length];
+        for (Enum field : fields) {
+            words[field.ordinal() >>> 6] |= 1L << field.ordinal();
+        }
+        return intern(new Subscription(words, EventCRUD.mask(events)));
+    }
+
+    private static Subscription intern(final Subscription subscription) {
+        synchronized (CANONICAL) {
+            final WeakReference<Subscription> reference = CANONICAL.get(subscription);
+            final Subscription canonical = reference == null ? null : reference.get();
+            if (canonical != null) {
+                return canonical;
+            }
+            CANONICAL.put(subscription, new WeakReference<Subscription>(subscription));
+            return subscription;
+        }
+    }
+
+    /**
+     * @return One more than the highest field ordinal subscribed to, or {@code 0} if there are none.
+     */
+    int length() {
+        for (int i = fields.length - 1; i >= 0; i--) {
+            if (fields[i] != 0) {
+                return (i << 6) + 64 - Long.numberOfLeadingZeros(fields[i]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param ordinal Ordinal of the field.
+     * @param event   The event.
+     * @return {@code true} if both the field and the event are subscribed to.
+     */
+    boolean matches(final int ordinal, final EventCRUD event) {
+        final int word = ordinal >>> 6;
+        return word < fields.length && (fields[word] & (1L << ordinal)) != 0 && (events & event.mask()) != 0;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Subscription)) {
+            return false;
+        }
+        final Subscription that = (Subscription) o;
+        return events == that.events && Arrays.equals(fields, that.fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(fields) + events;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hashed timer wheel shared by all {@link DeliveryPolicy}s, so that thousands of throttled or debounced
+ * {@code Observer}s cost one thread, instead of one timer each. Scheduling is cheap and lock free, and the accuracy is
+ * one tick.</p>
+ * The tasks are run on the thread of the wheel, and must be short.
+ */
+final class TimerWheel {
+
+    private static final Logger LOGGER = Logger.getLogger(TimerWheel.class.getSimpleName());
+    private static final long TICK_MILLIS = 10;
+    private static final int WHEEL_SIZE = 512;
+
+    private static TimerWheel shared;
+
+    private final long tickNanos;
+    private final Timeout[] wheel;
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<Timeout>();
+    private final long startNanos = System.nanoTime();
+    private long tick;
+
+    TimerWheel(final long tickMillis, final int wheelSize) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheel = new Timeout[wheelSize];
+        final Thread worker = new Thread(new Runnable() {
+            public void run() {
+                work();
+            }
+        }, "subject-timer-wheel");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * @return The wheel shared by all subjects, started on first use.
+     */
+    static synchronized TimerWheel shared() {
+        if (shared == null) {
+            shared = new TimerWheel(TICK_MILLIS, WHEEL_SIZE);
+        }
+        return shared;
+    }
+
+    /**
+     * @param task  Run once, on the thread of the wheel, when the delay has passed.
+     * @param delay Delay before running {@code task}.
+     * @param unit  Unit of {@code delay}.
+     */
+    void schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        added.add(new Timeout(task, System.nanoTime() + unit.toNanos(Math.max(0, delay))));
+    }
+
+    private void work() {
+        while (true) {
+            final long deadline = startNanos + (tick + 1) * tickNanos;
+            long sleep = deadline - System.nanoTime();
+            while (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    // The wheel is a daemon, and runs as long as the JVM does.
+                }
+                sleep = deadline - System.nanoTime();
+            }
+            transferAdded();
+            expire(wheel[(int) (tick % wheel.length)], deadline);
+            tick++;
+        }
+    }
+
+    private void transferAdded() {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            final long ticks = Math.max(tick, (timeout.deadline - startNanos) / tickNanos);
+            timeout.rounds = (ticks - tick) / wheel.length;
+            final int bucket = (int) (ticks % wheel.length);
+            timeout.next = wheel[bucket];
+            wheel[bucket] = timeout;
+        }
+    }
+
+    private void expire(final Timeout first, final long now) {
+        final int bucket = (int) (tick % wheel.length);
+        Timeout previous = null;
+        Timeout timeout = first;
+        while (timeout != null) {
+            final Timeout next = timeout.next;
+            if (timeout.rounds <= 0 && timeout.deadline <= now) {
+                if (previous == null) {
+                    wheel[bucket] = next;
+                } else {
+                    previous.next = next;
+                }
+                run(timeout.task);
+            } else {
+                timeout.rounds--;
+                previous = timeout;
+            }
+            timeout = next;
+        }
+    }
+
+    private void run(final Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Timer task failed", e);
+        }
+    }
+
+    /**
+     * A task waiting in the wheel.
+     */
+    private static final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long rounds;
+        private Timeout next;
+
+        Timeout(final Runnable task, final long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.IdentityHashMap;
+
+/**
+ * The notifications waiting in a conflating queue, as one bit for each field and event of each {@code Subject}, so
+ * that the queue tells in constant time whether a notification already is waiting. Not thread safe; the queue
+ * guards it with its own lock.
+ */
+final class Waiting {
+
+    private static final int EVENTS = EventCRUD.values().length;
+
+    private final IdentityHashMap<Object, long[]> masks = new IdentityHashMap<Object, long[]>();
+    private int size;
+
+    /**
+     * @return {@code true} if the notification is waiting.
+     */
+    boolean contains(final Object subject, final Enum field, final EventCRUD event) {
+        final long[] mask = masks.get(subject);
+        final int bit = bit(field, event);
+        return mask != null && (bit >>> 6) < mask.length && (mask[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Records that the notification is waiting.
+     */
+    void add(final Object subject, final Enum field, final EventCRUD event) {
+        final int bit = bit(field, event);
+        long[] mask = masks.get(subject);
+        if (mask == null || (bit >>> 6) >= mask.length) {
+            final long[] grown = new long[(bit >>> 6) + 1];
+            if (mask != null) {
+                System.arraycopy(mask, 0, grown, 0, mask.length);
+            }
+            mask = grown;
+            masks.put(subject, mask);
+        }
+        mask[bit >>> 6] |= 1L << bit;
+        size++;
+    }
+
+    /**
+     * Records that the notification is no longer waiting.
+     */
+    void remove(final Object subject, final Enum field, final EventCRUD event) {
+        if (!contains(subject, field, event)) {
+            return;
+        }
+        final int bit = bit(field, event);
+        masks.get(subject)[bit >>> 6] &= ~(1L << bit);
+        // Forgets the Subjects once nothing is waiting, so that the masks do not keep them from being collected.
+        if (--size == 0) {
+            masks.clear();
+        }
+    }
+
+    private static int bit(final Enum field, final EventCRUD event) {
+        return field.ordinal() * EVENTS + event.ordinal();
+    }
+}
@@ -19,6 +19,7 @@ package no.hubromed.pattern.observer.example;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import no.hubromed.pattern.observer.Derived;
 import no.hubromed.pattern.observer.EventCRUD;
 import no.hubromed.pattern.observer.Observer;
 import no.hubromed.pattern.observer.Subject;
@@ -34,8 +35,13 @@ public class MySubject2 extends SomeClassIWantToInherit implements Subject<MySub
     }
 
     private Subject.AsynchronousSubject<Field, MySubject2> delegate = new AsynchronousSubject<Field, MySubject2>(this);
-    private Integer sum = 0;
     private List<Integer> values = Collections.emptyList();
+    private final Derived<Integer> sum = delegate.derive(Field.SUM, new Derived<Integer>() {
+        @Override
+        protected Integer compute() {
+            return sum(values);
+        }
+    }, Field.VALUES);
 
 
     @Override
@@ -68,9 +74,19 @@ public class MySubject2 extends SomeClassIWantToInherit implements Subject<MySub
         delegate.notify(field);
     }
 
+    @Override
+    public void beginBatch() {
+        delegate.beginBatch();
+    }
+
+    @Override
+    public void commit() {
+        delegate.commit();
+    }
+
 
     public Integer getSum() {
-        return sum;
+        return sum.get();
     }
 
     public List<Integer> getValues() {
@@ -80,9 +96,8 @@ public class MySubject2 extends SomeClassIWantToInherit implements Subject<MySub
     public void setValues(final List<Integer> values) {
         if (!this.values.equals(values)) {
             this.values = values;
-            this.sum = sum(values);
+            // SUM is notified by the delegate, and only summed when read.
             notify(Field.VALUES);
-            notify(Field.SUM);
         }
     }
 }
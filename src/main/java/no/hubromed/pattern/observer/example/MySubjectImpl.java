@@ -20,13 +20,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import no.hubromed.pattern.observer.Change;
 import no.hubromed.pattern.observer.EventCRUD;
 import no.hubromed.pattern.observer.Subject;
 
 public class MySubjectImpl extends Subject.AsynchronousSubject<MySubject.Field, MySubject> implements MySubject {
 
     private String name = "Hello Moon";
-    private List<String> moons = Arrays.asList("Moon A", "Moon B");
+    private List<String> moons = new ArrayList<String>(Arrays.asList("Moon A", "Moon B"));
 
     @Override
     public String getName() {
@@ -35,9 +36,10 @@ public class MySubjectImpl extends Subject.AsynchronousSubject<MySubject.Field,
 
     public void setName(String name) {
         if (!this.name.equals(name)) {
+            final String oldName = this.name;
             this.name = name;
-            // Shortcut for: notify(Field.NAME, EventCRUD.UPDATE);
-            notify(Field.NAME);
+            // Tells a ChangeObserver the old and new name, other observers are updated as by notify(Field.NAME);
+            notify(Field.NAME, EventCRUD.UPDATE, Change.value(oldName, name));
         }
     }
 
@@ -55,13 +57,15 @@ public class MySubjectImpl extends Subject.AsynchronousSubject<MySubject.Field,
 
     public void add(String moon) {
         if (moons.add(moon)) {
-            notify(Field.MOONS, EventCRUD.CREATE);
+            notify(Field.MOONS, EventCRUD.CREATE, Change.element(moon, moons.size() - 1));
         }
     }
 
     public void remove(String moon) {
-        if (moons.remove(moon)) {
-            notify(Field.MOONS, EventCRUD.DELETE);
+        final int index = moons.indexOf(moon);
+        if (index >= 0) {
+            moons.remove(index);
+            notify(Field.MOONS, EventCRUD.DELETE, Change.element(moon, index));
         }
     }
 }
@@ -16,7 +16,9 @@
 
 package no.hubromed.pattern.observer;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -32,6 +34,25 @@ public abstract class AbstractSubjectTest {
 
     enum Field {
         NUMBER,
+        TEXT
+    }
+
+    /**
+     * Records its name, or the field and event if it has no name, each time it is updated, so that the delivery
+     * order can be verified.
+     */
+    private static class NamedObserver<S extends Subject> implements Observer<Field, S> {
+        private final String name;
+        private final List<String> received;
+
+        NamedObserver(final String name, final List<String> received) {
+            this.name = name;
+            this.received = received;
+        }
+
+        public void update(final Field field, final EventCRUD event, final S subject) {
+            received.add(name != null ? name : field + " - " + event);
+        }
     }
 
     private Subject<Field, Subject.SynchronousSubject> subject;
@@ -110,6 +131,101 @@ public abstract class AbstractSubjectTest {
         assertCRUD(1, 2, 0, 1, 2);
     }
 
+    @Test
+    public void testNotifyUnobservedField() throws Exception {
+        subject.attach(observer, EventCRUD.CRUD, Field.NUMBER);
+        subject.notify(Field.TEXT);
+        subject.notify(Field.TEXT, EventCRUD.DELETE);
+        assertCRUD(1, 0, 0, 0, 0);
+        assertEquals(0, observer.count(Field.TEXT));
+    }
+
+    @Test
+    public void testNotifyUnobservedEvent() throws Exception {
+        subject.attach(observer, EventCRUD.U, Field.NUMBER, Field.TEXT);
+        subject.notify(Field.NUMBER, EventCRUD.DELETE);
+        subject.notify(Field.TEXT, EventCRUD.CREATE);
+        assertCRUD(0, 0, 0, 0, 0);
+
+        subject.notify(Field.TEXT);
+        assertEquals(1, observer.count(Field.TEXT));
+    }
+
+    @Test
+    public void testAttachAgainReplacesSubscription() throws Exception {
+        subject.attach(observer, EventCRUD.U, Field.TEXT);
+        subject.attach(observer, EventCRUD.D, Field.NUMBER);
+
+        subject.notify(Field.TEXT);
+        subject.notify(Field.NUMBER, EventCRUD.DELETE);
+        assertEquals(0, observer.count(Field.TEXT));
+        assertCRUD(0, 0, 0, 0, 1);
+    }
+
+    @Test
+    public void testNotifyInAttachOrder() throws Exception {
+        final List<String> received = new ArrayList<String>();
+        subject.attach(new NamedObserver<Subject.SynchronousSubject>("first", received), EventCRUD.U, Field.NUMBER);
+        subject.attach(new NamedObserver<Subject.SynchronousSubject>("second", received), EventCRUD.U, Field.NUMBER);
+
+        subject.notify(Field.NUMBER);
+        assertEquals(2, received.size());
+        assertEquals("first", received.get(0));
+        assertEquals("second", received.get(1));
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        subject.attach(observer, EventCRUD.CRUD, Field.NUMBER);
+        subject.beginBatch();
+        subject.notify(Field.NUMBER);
+        subject.notify(Field.NUMBER, EventCRUD.DELETE);
+        subject.notify(Field.NUMBER);
+        subject.notify(Field.TEXT);
+        assertCRUD(1, 0, 0, 0, 0);
+
+        subject.commit();
+        assertCRUD(1, 0, 0, 1, 1);
+
+        subject.notify(Field.NUMBER);
+        assertCRUD(1, 0, 0, 2, 1);
+    }
+
+    @Test
+    public void testNestedBatch() throws Exception {
+        subject.attach(observer, EventCRUD.CRUD, Field.NUMBER);
+        subject.beginBatch();
+        subject.notify(Field.NUMBER);
+        subject.beginBatch();
+        subject.notify(Field.NUMBER);
+        subject.commit();
+        assertCRUD(1, 0, 0, 0, 0);
+
+        subject.commit();
+        assertCRUD(1, 0, 0, 1, 0);
+    }
+
+    @Test
+    public void testBatchInOrderOfFirstNotification() throws Exception {
+        final List<String> received = new ArrayList<String>();
+        subject.attach(new NamedObserver<Subject.SynchronousSubject>(null, received), EventCRUD.U, Field.TEXT);
+        subject.attach(new NamedObserver<Subject.SynchronousSubject>(null, received), EventCRUD.C, Field.NUMBER);
+
+        subject.beginBatch();
+        subject.notify(Field.TEXT);
+        subject.notify(Field.NUMBER, EventCRUD.CREATE);
+        subject.notify(Field.TEXT);
+        subject.commit();
+        assertEquals(2, received.size());
+        assertEquals("TEXT - UPDATE", received.get(0));
+        assertEquals("NUMBER - CREATE", received.get(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void commitWithoutBatch() {
+        subject.commit();
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void attachWithNoEvents() {
         subject.attach(observer, new HashSet<EventCRUD>(0), Field.NUMBER);
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.EnumSet;
+import java.util.concurrent.CountDownLatch;
+import javax.swing.SwingUtilities;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies that a notification does not allocate, once the {@code Observer}s are attached and the subject is warmed
+ * up. Counts the bytes allocated by the publishing thread, which requires a HotSpot based JVM. As what is left
+ * allocated after the warm-up depends on the JIT, the count is allowed a {@link #TOLERANCE} well below one object per
+ * notification; {@code AllocationBenchmark} with {@code -prof gc} measures the exact rate.
+ */
+public class AllocationTest {
+
+    private static final int NOTIFICATIONS = 10000;
+    private static final int WARM_UP_ROUNDS = 20;
+
+    /**
+     * Bytes that a measurement may allocate, less than one per notification. The smallest object takes 16 bytes, so
+     * any notification allocating goes over it, while a one-off allocation by the JVM, such as when the JIT replaces
+     * compiled code in the measured window, does not.
+     */
+    private static final long TOLERANCE = NOTIFICATIONS;
+
+    private enum Field {
+        NUMBER,
+        TEXT
+    }
+
+    /**
+     * Counts updates without allocating.
+     */
+    private static class CountingObserver<S extends Subject> implements Observer<Field, S> {
+        private int count;
+
+        public void update(final Field field, final EventCRUD event, final S subject) {
+            count++;
+        }
+    }
+
+    private com.sun.management.ThreadMXBean threads;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private long allocated() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return Bytes allocated by {@code NOTIFICATIONS} notifications, corrected for the cost of measuring.
+     */
+    private long measure(final Subject<Field, ?> subject) {
+        final long calibrationStart = allocated();
+        final long calibrationEnd = allocated();
+        final long start = allocated();
+        for (int i = 0; i < NOTIFICATIONS; i++) {
+            subject.notify(Field.NUMBER);
+            subject.notify(Field.TEXT, EventCRUD.DELETE);
+        }
+        final long end = allocated();
+        return (end - start) - (calibrationEnd - calibrationStart);
+    }
+
+    /**
+     * @param bytes What {@link #measure(Subject)} returned.
+     */
+    private static void assertAllocationFree(final long bytes) {
+        assertTrue(bytes + " bytes allocated by " + 2 * NOTIFICATIONS + " notifications", bytes < TOLERANCE);
+    }
+
+    /**
+     * Runs the notifications until the delivery path is compiled. The parallel check in
+     * {@code SynchronousSubject.deliver} makes that path longer, and with a single round it still allocates a few
+     * hundred bytes in the measured window.
+     */
+    private void warmUp(final Subject<Field, ?> subject) {
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            measure(subject);
+        }
+    }
+
+    private <S extends Subject> CountingObserver<S>[] attach(final Subject<Field, S> subject) {
+        //noinspection unchecked
+        final CountingObserver<S>[] observers = new CountingObserver[10];
+        for (int i = 0; i < observers.length; i++) {
+            observers[i] = new CountingObserver<S>();
+            subject.attach(observers[i], EnumSet.of(EventCRUD.UPDATE, EventCRUD.DELETE), Field.values());
+        }
+        return observers;
+    }
+
+    @Test
+    public void testSynchronousSubject() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final CountingObserver<Subject.SynchronousSubject>[] observers = attach(subject);
+        warmUp(subject);
+
+        assertAllocationFree(measure(subject));
+        assertEquals(2 * (WARM_UP_ROUNDS + 1) * NOTIFICATIONS, observers[0].count);
+    }
+
+    @Test
+    public void testJournal() throws Exception {
+        final File file = File.createTempFile("allocation", ".journal");
+        final Journal journal = Journal.open(file, 1000);
+        try {
+            final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                    new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+            subject.setJournal(journal);
+            attach(subject);
+            warmUp(subject);
+
+            assertAllocationFree(measure(subject));
+            assertEquals(2 * (WARM_UP_ROUNDS + 1) * NOTIFICATIONS, journal.sequence());
+        } finally {
+            journal.close();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSynchronousAsynchronousSubject() throws Exception {
+        final Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject> subject =
+                new Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject>();
+        subject.setSynchronous(true);
+        attach(subject);
+        warmUp(subject);
+
+        assertAllocationFree(measure(subject));
+    }
+
+    @Test
+    public void testAsynchronousSubject() throws Exception {
+        final Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject> subject =
+                new Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject>();
+        final CountingObserver<Subject.AsynchronousSubject>[] observers = attach(subject);
+
+        // Warms up both of the double buffers, so that they are large enough.
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            final CountDownLatch release = blockEventDispatchThread();
+            measure(subject);
+            release.countDown();
+            drainEventDispatchThread();
+        }
+
+        // The first notification schedules the delivery, the rest are appended to the pending buffer.
+        final CountDownLatch release = blockEventDispatchThread();
+        subject.notify(Field.NUMBER);
+        final long bytes = measure(subject);
+        release.countDown();
+        drainEventDispatchThread();
+
+        assertAllocationFree(bytes);
+        assertEquals(2 * (WARM_UP_ROUNDS + 1) * NOTIFICATIONS + 1, observers[0].count);
+    }
+
+    private CountDownLatch blockEventDispatchThread() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        return latch;
+    }
+
+    private void drainEventDispatchThread() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+            }
+        });
+    }
+}
@@ -80,6 +80,14 @@ public class AsynchronousDelegateSubjectTest {
             delegate.notify(field);
         }
 
+        public void beginBatch() {
+            delegate.beginBatch();
+        }
+
+        public void commit() {
+            delegate.commit();
+        }
+
         @Override
         public long getTime() {
             notify(Field.TIME, EventCRUD.READ);
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test of {@link BatchObserver}.
+ */
+public class BatchObserverTest {
+
+    private enum Field {
+        PRICE,
+        QUANTITY
+    }
+
+    /**
+     * Records each group of notifications, and the events given one at a time.
+     */
+    private static class RecordingObserver<S extends Subject> implements BatchObserver<Field, S> {
+        private final List<String> batches = new ArrayList<String>();
+        private final List<String> single = new ArrayList<String>();
+        private int notifications;
+        private boolean onDispatchThread = true;
+
+        public synchronized void update(final List<Notification<Field, S>> changes) {
+            onDispatchThread &= SwingUtilities.isEventDispatchThread();
+            notifications += changes.size();
+            batches.add(changes.toString());
+        }
+
+        public synchronized void update(final Field field, final EventCRUD event, final S subject) {
+            single.add(field + " " + event);
+        }
+
+        synchronized int notifications() {
+            return notifications;
+        }
+    }
+
+    /**
+     * Fails every group of notifications, while told to.
+     */
+    private static class FailingObserver extends RecordingObserver<Subject.SynchronousSubject> {
+        private boolean failing = true;
+
+        @Override
+        public synchronized void update(final List<Notification<Field, Subject.SynchronousSubject>> changes) {
+            super.update(changes);
+            if (failing) {
+                throw new IllegalStateException("batch failed");
+            }
+        }
+    }
+
+    private void flushEventDispatchThread() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testSynchronousFlush() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final RecordingObserver<Subject.SynchronousSubject> observer =
+                new RecordingObserver<Subject.SynchronousSubject>();
+        subject.attach(observer, EventCRUD.CRUD, Field.values());
+        assertEquals("INITIAL is given at once", "[PRICE INITIAL, QUANTITY INITIAL]", observer.single.toString());
+
+        subject.notify(Field.PRICE);
+        subject.notify(Field.QUANTITY, EventCRUD.CREATE, Change.value(1, 2));
+        subject.notify(Field.PRICE, EventCRUD.DELETE);
+        assertTrue("Not delivered until flushed", observer.batches.isEmpty());
+
+        subject.flushBatches();
+        subject.flushBatches();
+
+        assertEquals(1, observer.batches.size());
+        assertEquals("[[Notification[PRICE UPDATE], Notification[QUANTITY CREATE " + Change.value(1, 2)
+                + "], Notification[PRICE DELETE]]]", observer.batches.toString());
+    }
+
+    @Test
+    public void testAsynchronousDrain() throws Exception {
+        final Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject> subject =
+                new Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject>();
+        final RecordingObserver<Subject.AsynchronousSubject> observer =
+                new RecordingObserver<Subject.AsynchronousSubject>();
+        subject.attach(observer, EnumSet.of(EventCRUD.UPDATE), Field.values());
+
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                for (int i = 0; i < 100; i++) {
+                    subject.notify(i % 2 == 0 ? Field.PRICE : Field.QUANTITY);
+                }
+            }
+        });
+        flushEventDispatchThread();
+
+        assertEquals(100, observer.notifications());
+        assertEquals("One callback per drain", 1, observer.batches.size());
+        assertTrue(observer.onDispatchThread);
+    }
+
+    @Test
+    public void testDetach() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final RecordingObserver<Subject.SynchronousSubject> observer =
+                new RecordingObserver<Subject.SynchronousSubject>();
+        subject.attach(observer, EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+        subject.notify(Field.PRICE);
+
+        subject.detach(observer);
+        subject.flushBatches();
+        subject.notify(Field.PRICE);
+
+        assertTrue(observer.batches.isEmpty());
+    }
+
+    @Test
+    public void testSubject() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final List<Notification<Field, Subject.SynchronousSubject>> received =
+                new ArrayList<Notification<Field, Subject.SynchronousSubject>>();
+        subject.attach(new BatchObserver<Field, Subject.SynchronousSubject>() {
+            public void update(final List<Notification<Field, Subject.SynchronousSubject>> changes) {
+                received.addAll(changes);
+            }
+
+            public void update(final Field field, final EventCRUD event, final Subject.SynchronousSubject source) {
+            }
+        }, EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+
+        subject.notify(Field.PRICE);
+        subject.flushBatches();
+
+        assertEquals(1, received.size());
+        assertSame(subject, received.get(0).subject());
+    }
+
+    @Test
+    public void testFailureIsolated() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final Isolation isolation = new Isolation(1, TimeUnit.SECONDS);
+        final List<String> failed = new ArrayList<String>();
+        isolation.setListener(new Isolation.Listener() {
+            public void failed(final Subject source, final Observer observer, final Enum field, final EventCRUD event,
+                               final RuntimeException failure) {
+                failed.add(observer + " " + failure.getMessage());
+            }
+
+            public void quarantined(final Subject source, final Observer observer, final long averageNanos) {
+            }
+
+            public void restored(final Subject source, final Observer observer, final long averageNanos) {
+            }
+        });
+        subject.setIsolation(isolation);
+        final FailingObserver observer = new FailingObserver() {
+            @Override
+            public String toString() {
+                return "failing";
+            }
+        };
+        subject.attach(observer, EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+
+        subject.notify(Field.PRICE);
+        subject.flushBatches();
+
+        assertEquals("[failing batch failed]", failed.toString());
+        assertEquals(1, observer.notifications());
+    }
+
+    @Test
+    public void testFailureThrownOn() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final FailingObserver observer = new FailingObserver();
+        subject.attach(observer, EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+        subject.notify(Field.PRICE);
+
+        try {
+            subject.flushBatches();
+            fail("Thrown on, as for any other Observer");
+        } catch (IllegalStateException e) {
+            assertEquals("batch failed", e.getMessage());
+        }
+
+        observer.failing = false;
+        subject.notify(Field.PRICE);
+        subject.flushBatches();
+        assertEquals("The failed batch is not given again", 2, observer.notifications());
+    }
+
+    @Test
+    public void testNotifyAsync() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final FailingObserver observer = new FailingObserver();
+        observer.failing = false;
+        subject.attach(observer, EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+
+        final CompletableFuture<Void> done = subject.notifyAsync(Field.PRICE, EventCRUD.UPDATE).toCompletableFuture();
+        assertFalse("Completes when the notification is given, not when it is collected", done.isDone());
+        subject.flushBatches();
+        done.get(5, TimeUnit.SECONDS);
+
+        observer.failing = true;
+        final CompletableFuture<Void> failed = subject.notifyAsync(Field.PRICE, EventCRUD.UPDATE)
+                .toCompletableFuture();
+        try {
+            subject.flushBatches();
+            fail("Thrown on, as for any other Observer");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            failed.get(5, TimeUnit.SECONDS);
+            fail("The failure completes the stage");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DeliveryException);
+        }
+    }
+
+    @Test
+    public void testAsynchronousMadeSynchronous() throws Exception {
+        final Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject> subject =
+                new Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject>();
+        subject.setSynchronous(true);
+        final RecordingObserver<Subject.AsynchronousSubject> observer =
+                new RecordingObserver<Subject.AsynchronousSubject>();
+        subject.attach(observer, EnumSet.of(EventCRUD.UPDATE), Field.values());
+
+        subject.notify(Field.PRICE);
+        assertEquals("Given at once, on the calling thread", "[[Notification[PRICE UPDATE]]]",
+                observer.batches.toString());
+
+        final CompletableFuture<Void> done = subject.notifyAsync(Field.QUANTITY, EventCRUD.UPDATE)
+                .toCompletableFuture();
+        assertTrue(done.isDone());
+        done.get();
+        assertEquals(2, observer.notifications());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPolicy() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        subject.attach(new RecordingObserver<Subject.SynchronousSubject>(), EnumSet.of(EventCRUD.UPDATE),
+                DeliveryPolicy.sample(100), Field.PRICE);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import javax.swing.SwingUtilities;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test of {@link ChangeObserver}s, and notifications carrying a {@link Change}.
+ */
+public class ChangeObserverTest {
+
+    private enum Field {
+        NAME,
+        MOONS
+    }
+
+    /**
+     * Records each update, with the change if any.
+     */
+    private static class RecordingObserver<S extends Subject> implements ChangeObserver<Field, S> {
+        private final List<String> updates = new ArrayList<String>();
+
+        public void update(final Field field, final EventCRUD event, final S subject) {
+            updates.add(field + " " + event);
+        }
+
+        public void update(final Field field, final EventCRUD event, final S subject, final Change change) {
+            updates.add(field + " " + event + " " + change);
+        }
+    }
+
+    private Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject;
+    private RecordingObserver<Subject.SynchronousSubject> observer;
+
+    @Before
+    public void setUp() throws Exception {
+        subject = new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        observer = new RecordingObserver<Subject.SynchronousSubject>();
+    }
+
+    @Test
+    public void testValue() {
+        subject.attach(observer, EventCRUD.U, Field.NAME);
+
+        subject.notify(Field.NAME, EventCRUD.UPDATE, Change.value("Moon", "Luna"));
+
+        assertEquals("[NAME UPDATE Change[Moon -> Luna]]", observer.updates.toString());
+    }
+
+    @Test
+    public void testElement() {
+        subject.attach(observer, EventCRUD.CUD, Field.MOONS);
+
+        subject.notify(Field.MOONS, EventCRUD.CREATE, Change.element("Europa", 2));
+        subject.notify(Field.MOONS, EventCRUD.DELETE, Change.element("Io", 0));
+
+        assertEquals("[MOONS INITIAL, MOONS CREATE Change[element = Europa, index = 2], "
+                + "MOONS DELETE Change[element = Io, index = 0]]", observer.updates.toString());
+    }
+
+    @Test
+    public void testAccessors() {
+        final Change value = Change.value(1, 2);
+        final Integer oldValue = value.oldValue();
+        final Integer newValue = value.newValue();
+        assertEquals(Integer.valueOf(1), oldValue);
+        assertEquals(Integer.valueOf(2), newValue);
+        assertEquals(Change.NO_INDEX, value.index());
+
+        final Change element = Change.element("Io", 3);
+        assertEquals("Io", element.<String>element());
+        assertEquals(3, element.index());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeIndex() {
+        Change.element("Io", -2);
+    }
+
+    @Test
+    public void testPlainObserver() {
+        final Observer.ObserverCounter<Field, Subject.SynchronousSubject> counter =
+                new Observer.ObserverCounter<Field, Subject.SynchronousSubject>();
+        subject.attach(counter, EventCRUD.U, Field.NAME);
+
+        subject.notify(Field.NAME, EventCRUD.UPDATE, Change.value("Moon", "Luna"));
+
+        assertEquals(1, counter.count(Field.NAME));
+    }
+
+    @Test
+    public void testWithoutChange() {
+        subject.attach(observer, EventCRUD.U, Field.NAME);
+
+        subject.notify(Field.NAME);
+
+        assertEquals("[NAME UPDATE]", observer.updates.toString());
+    }
+
+    @Test
+    public void testBatchDropsChange() {
+        subject.attach(observer, EventCRUD.U, Field.NAME);
+
+        subject.beginBatch();
+        subject.notify(Field.NAME, EventCRUD.UPDATE, Change.value("Moon", "Luna"));
+        subject.notify(Field.NAME, EventCRUD.UPDATE, Change.value("Luna", "Selene"));
+        subject.commit();
+
+        assertEquals("[NAME UPDATE]", observer.updates.toString());
+    }
+
+    @Test
+    public void testNeverCollapsed() throws Exception {
+        final Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject> async =
+                new Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject>();
+        async.setCollapsing(true);
+        final RecordingObserver<Subject.AsynchronousSubject> asyncObserver =
+                new RecordingObserver<Subject.AsynchronousSubject>();
+        async.attach(asyncObserver, EventCRUD.C, Field.MOONS);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        async.notify(Field.MOONS, EventCRUD.CREATE, Change.element("Io", 0));
+        async.notify(Field.MOONS, EventCRUD.CREATE, Change.element("Europa", 1));
+        async.notify(Field.MOONS, EventCRUD.CREATE);
+        async.notify(Field.MOONS, EventCRUD.CREATE);
+        release.countDown();
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+            }
+        });
+
+        assertEquals("[MOONS CREATE Change[element = Io, index = 0], MOONS CREATE Change[element = Europa, index = 1], "
+                + "MOONS CREATE]", asyncObserver.updates.toString());
+    }
+}
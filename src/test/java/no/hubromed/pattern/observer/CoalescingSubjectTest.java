@@ -0,0 +1,206 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import javax.swing.SwingUtilities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of coalescing, collapsing and conflating notifications in an {@link Subject.AsynchronousSubject},
+ * delivering on the real event dispatch thread.
+ */
+public class CoalescingSubjectTest {
+
+    private enum Field {
+        NUMBER,
+        TEXT
+    }
+
+    /**
+     * Records each update, and the EDT event it was delivered within.
+     */
+    private static class RecordingObserver<S extends Subject> implements Observer<Field, S> {
+        private final List<String> received = new ArrayList<String>();
+        private final Set<AWTEvent> drains = new HashSet<AWTEvent>();
+
+        public void update(final Field field, final EventCRUD event, final S subject) {
+            assertTrue(SwingUtilities.isEventDispatchThread());
+            received.add(field + " - " + event);
+            drains.add(EventQueue.getCurrentEvent());
+        }
+    }
+
+    private Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject> subject;
+    private RecordingObserver<Subject.AsynchronousSubject> observer;
+    private CountDownLatch edtBlocked;
+
+    @Before
+    public void setUp() throws Exception {
+        subject = new Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject>();
+        subject.setCoalescing(true);
+        observer = new RecordingObserver<Subject.AsynchronousSubject>();
+        subject.attach(observer, EnumSet.of(EventCRUD.CREATE, EventCRUD.UPDATE), Field.NUMBER, Field.TEXT);
+        blockEventDispatchThread();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        edtBlocked.countDown();
+    }
+
+    private void blockEventDispatchThread() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        edtBlocked = latch;
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    private void drain() throws Exception {
+        edtBlocked.countDown();
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+            }
+        });
+    }
+
+    @Test
+    public void testOneDrainInOrder() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            subject.notify(Field.NUMBER);
+            subject.notify(Field.TEXT, EventCRUD.CREATE);
+        }
+        drain();
+
+        assertEquals(200, observer.received.size());
+        assertEquals("NUMBER - UPDATE", observer.received.get(0));
+        assertEquals("TEXT - CREATE", observer.received.get(1));
+        assertEquals("NUMBER - UPDATE", observer.received.get(198));
+        assertEquals("TEXT - CREATE", observer.received.get(199));
+        assertEquals("All notifications delivered by one drain", 1, observer.drains.size());
+    }
+
+    @Test
+    public void testCollapsing() throws Exception {
+        subject.setCollapsing(true);
+        for (int i = 0; i < 100; i++) {
+            subject.notify(Field.NUMBER);
+            subject.notify(Field.TEXT, EventCRUD.CREATE);
+            subject.notify(Field.NUMBER);
+        }
+        drain();
+
+        assertEquals(2, observer.received.size());
+        assertEquals("NUMBER - UPDATE", observer.received.get(0));
+        assertEquals("TEXT - CREATE", observer.received.get(1));
+
+        // Once delivered, the same field and event is queued again.
+        blockEventDispatchThread();
+        subject.notify(Field.NUMBER);
+        drain();
+        assertEquals(3, observer.received.size());
+    }
+
+    @Test
+    public void testConflated() throws Exception {
+        subject.setConflated(Field.NUMBER);
+        for (int i = 0; i < 100; i++) {
+            subject.notify(Field.NUMBER);
+            subject.notify(Field.TEXT);
+        }
+        subject.notify(Field.NUMBER, EventCRUD.CREATE);
+        subject.notify(Field.NUMBER, EventCRUD.CREATE);
+        drain();
+
+        assertEquals(1 + 100 + 2, observer.received.size());
+        assertEquals("NUMBER - UPDATE", observer.received.get(0));
+        assertEquals("TEXT - UPDATE", observer.received.get(1));
+        assertEquals("TEXT - UPDATE", observer.received.get(100));
+        assertEquals("NUMBER - CREATE", observer.received.get(101));
+        assertEquals("NUMBER - CREATE", observer.received.get(102));
+    }
+
+    @Test
+    public void testConflatedFields() throws Exception {
+        assertFalse(subject.isConflated(Field.NUMBER));
+        subject.setConflated(Field.NUMBER, Field.TEXT);
+        assertTrue(subject.isConflated(Field.NUMBER));
+        assertTrue(subject.isConflated(Field.TEXT));
+        subject.setConflated();
+        assertFalse(subject.isConflated(Field.NUMBER));
+    }
+
+    @Test
+    public void testFailingObserverDoesNotStopTheQueue() throws Exception {
+        final List<Runnable> runs = new ArrayList<Runnable>();
+        final Subject.DispatchingSubject<Field, Subject.DispatchingSubject> failing =
+                new Subject.DispatchingSubject<Field, Subject.DispatchingSubject>(new Dispatcher() {
+                    public boolean isDispatchThread() {
+                        return false;
+                    }
+
+                    public void execute(final Runnable delivery) {
+                        runs.add(delivery);
+                    }
+                });
+        failing.attach(new Observer<Field, Subject.DispatchingSubject>() {
+            public void update(final Field field, final EventCRUD event, final Subject.DispatchingSubject source) {
+                throw new NotObservedException(field);
+            }
+        }, EnumSet.of(EventCRUD.UPDATE), Field.NUMBER);
+        final Observer.ObserverCounter<Field, Subject.DispatchingSubject> counter =
+                new Observer.ObserverCounter<Field, Subject.DispatchingSubject>();
+        failing.attach(counter, EnumSet.of(EventCRUD.UPDATE), Field.TEXT);
+
+        failing.notify(Field.NUMBER);
+        failing.notify(Field.TEXT);
+        assertEquals(1, runs.size());
+        try {
+            runs.remove(0).run();
+        } catch (NotObservedException e) {
+            // Thrown on to the Dispatcher.
+        }
+        assertEquals("The rest of the drain is scheduled again", 1, runs.size());
+        runs.remove(0).run();
+        assertEquals(1, counter.count(Field.TEXT));
+
+        failing.notify(Field.TEXT);
+        assertEquals(1, runs.size());
+        runs.remove(0).run();
+        assertEquals(2, counter.count(Field.TEXT));
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the {@link DeliveryPolicy}s.
+ */
+public class DeliveryPolicyTest {
+
+    private enum Field {
+        NUMBER,
+        TEXT
+    }
+
+    /**
+     * Records each update, and which thread it was made on.
+     */
+    private static class RecordingObserver<S extends Subject> implements Observer<Field, S> {
+        private final List<String> updates = new ArrayList<String>();
+        private boolean onEventDispatchThread = true;
+
+        public synchronized void update(final Field field, final EventCRUD event, final S subject) {
+            updates.add(field + " - " + event);
+            onEventDispatchThread &= SwingUtilities.isEventDispatchThread();
+            notifyAll();
+        }
+
+        synchronized List<String> updates() {
+            return new ArrayList<String>(updates);
+        }
+
+        synchronized List<String> await(final int count) throws InterruptedException {
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (updates.size() < count && System.nanoTime() < deadline) {
+                wait(10);
+            }
+            return updates();
+        }
+    }
+
+    @Test
+    public void testSample() {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final RecordingObserver<Subject.SynchronousSubject> observer =
+                new RecordingObserver<Subject.SynchronousSubject>();
+        subject.attach(observer, EventCRUD.U, DeliveryPolicy.sample(3), Field.NUMBER);
+
+        for (int i = 0; i < 7; i++) {
+            subject.notify(Field.NUMBER);
+        }
+
+        assertEquals(3, observer.updates().size());
+    }
+
+    @Test
+    public void testInitialIsNotHeldBack() {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final RecordingObserver<Subject.SynchronousSubject> observer =
+                new RecordingObserver<Subject.SynchronousSubject>();
+        subject.attach(observer, EventCRUD.CRUD, DeliveryPolicy.debounce(10000), Field.NUMBER, Field.TEXT);
+
+        assertEquals("[NUMBER - INITIAL, TEXT - INITIAL]", observer.updates().toString());
+    }
+
+    @Test
+    public void testThrottle() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final RecordingObserver<Subject.SynchronousSubject> observer =
+                new RecordingObserver<Subject.SynchronousSubject>();
+        subject.attach(observer, EventCRUD.U, DeliveryPolicy.throttle(10), Field.NUMBER, Field.TEXT);
+
+        subject.notify(Field.NUMBER);
+        assertEquals("The first notification is delivered at once", 1, observer.updates().size());
+
+        for (int i = 0; i < 5; i++) {
+            subject.notify(Field.NUMBER);
+            subject.notify(Field.TEXT);
+        }
+        assertEquals(1, observer.updates().size());
+
+        assertEquals("[NUMBER - UPDATE, NUMBER - UPDATE, TEXT - UPDATE]", observer.await(3).toString());
+    }
+
+    @Test
+    public void testDebounce() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final RecordingObserver<Subject.SynchronousSubject> observer =
+                new RecordingObserver<Subject.SynchronousSubject>();
+        subject.attach(observer, EventCRUD.U, DeliveryPolicy.debounce(200), Field.NUMBER);
+
+        for (int i = 0; i < 5; i++) {
+            subject.notify(Field.NUMBER);
+            Thread.sleep(10);
+        }
+        assertEquals("Nothing is delivered while notifications keep coming", 0, observer.updates().size());
+
+        assertEquals("[NUMBER - UPDATE]", observer.await(1).toString());
+        Thread.sleep(250);
+        assertEquals(1, observer.updates().size());
+    }
+
+    @Test
+    public void testHeldBackDeliveryIsIsolated() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final Isolation isolation = new Isolation(1, TimeUnit.SECONDS);
+        final List<Observer> failed = new ArrayList<Observer>();
+        final CountDownLatch reported = new CountDownLatch(1);
+        isolation.setListener(new Isolation.Listener() {
+            public void failed(final Subject source, final Observer observer, final Enum field, final EventCRUD event,
+                               final RuntimeException failure) {
+                failed.add(observer);
+                reported.countDown();
+            }
+
+            public void quarantined(final Subject source, final Observer observer, final long averageNanos) {
+            }
+
+            public void restored(final Subject source, final Observer observer, final long averageNanos) {
+            }
+        });
+        subject.setIsolation(isolation);
+        final RecordingObserver<Subject.SynchronousSubject> observer =
+                new RecordingObserver<Subject.SynchronousSubject>() {
+                    @Override
+                    public synchronized void update(final Field field, final EventCRUD event,
+                                                    final Subject.SynchronousSubject source) {
+                        super.update(field, event, source);
+                        throw new IllegalStateException("failed on the timer");
+                    }
+                };
+        subject.attach(observer, EventCRUD.U, DeliveryPolicy.debounce(20), Field.NUMBER);
+
+        subject.notify(Field.NUMBER);
+
+        assertTrue(reported.await(5, TimeUnit.SECONDS));
+        assertEquals(1, failed.size());
+        assertTrue("Reported as the Observer attached", failed.get(0) == observer);
+    }
+
+    @Test
+    public void testDebounceOnEventDispatchThread() throws Exception {
+        final Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject> subject =
+                new Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject>();
+        final RecordingObserver<Subject.AsynchronousSubject> observer =
+                new RecordingObserver<Subject.AsynchronousSubject>();
+        subject.attach(observer, EventCRUD.U, DeliveryPolicy.debounce(20), Field.NUMBER);
+
+        subject.notify(Field.NUMBER);
+        subject.notify(Field.NUMBER);
+
+        assertEquals("[NUMBER - UPDATE]", observer.await(1).toString());
+        assertTrue("Updated on the event dispatch thread", observer.onEventDispatchThread);
+    }
+
+    @Test
+    public void testDetachDropsHeldBack() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final RecordingObserver<Subject.SynchronousSubject> observer =
+                new RecordingObserver<Subject.SynchronousSubject>();
+        subject.attach(observer, EventCRUD.U, DeliveryPolicy.debounce(20), Field.NUMBER);
+
+        subject.notify(Field.NUMBER);
+        subject.detach(observer);
+        Thread.sleep(100);
+
+        assertEquals(0, observer.updates().size());
+    }
+
+    @Test
+    public void testReattachRemovesPolicy() {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final RecordingObserver<Subject.SynchronousSubject> observer =
+                new RecordingObserver<Subject.SynchronousSubject>();
+        subject.attach(observer, EventCRUD.U, DeliveryPolicy.sample(100), Field.NUMBER);
+        subject.attach(observer, EventCRUD.U, Field.NUMBER);
+
+        subject.notify(Field.NUMBER);
+        subject.notify(Field.NUMBER);
+
+        assertEquals(2, observer.updates().size());
+    }
+
+    @Test
+    public void testReattachAddsPolicy() {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final RecordingObserver<Subject.SynchronousSubject> observer =
+                new RecordingObserver<Subject.SynchronousSubject>();
+        subject.attach(observer, EventCRUD.U, Field.NUMBER);
+        subject.attach(observer, EventCRUD.U, DeliveryPolicy.sample(1000), Field.NUMBER);
+
+        subject.notify(Field.NUMBER);
+        subject.notify(Field.NUMBER);
+
+        assertEquals("Attached once, sampled", 1, observer.updates().size());
+
+        subject.detach(observer);
+        subject.notify(Field.NUMBER);
+        assertEquals(1, observer.updates().size());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of derived fields, see {@link Derived}.
+ */
+public class DerivedTest {
+
+    private enum Field {
+        PRICE,
+        QUANTITY,
+        VALUE,
+        TAX,
+        TOTAL
+    }
+
+    /**
+     * A model of an order line, where VALUE = PRICE * QUANTITY, TAX = VALUE / 4 and TOTAL = VALUE + TAX.
+     */
+    private static class Line extends Subject.SynchronousSubject<Field, Line> {
+        private int price = 10;
+        private int quantity = 2;
+        private int computations;
+
+        private final Derived<Integer> value = derive(Field.VALUE, new Derived<Integer>() {
+            @Override
+            protected Integer compute() {
+                computations++;
+                return price * quantity;
+            }
+        }, Field.PRICE, Field.QUANTITY);
+
+        private final Derived<Integer> tax = derive(Field.TAX, new Derived<Integer>() {
+            @Override
+            protected Integer compute() {
+                return value.get() / 4;
+            }
+        }, Field.VALUE);
+
+        private final Derived<Integer> total = derive(Field.TOTAL, new Derived<Integer>() {
+            @Override
+            protected Integer compute() {
+                return value.get() + tax.get();
+            }
+        }, Field.VALUE, Field.TAX);
+
+        void setPrice(final int price) {
+            this.price = price;
+            notify(Field.PRICE);
+        }
+
+        void setQuantity(final int quantity) {
+            this.quantity = quantity;
+            notify(Field.QUANTITY);
+        }
+    }
+
+    /**
+     * Records each update, with the total read at the time.
+     */
+    private static class RecordingObserver implements Observer<Field, Line> {
+        private final List<String> updates = new ArrayList<String>();
+
+        public void update(final Field field, final EventCRUD event, final Line subject) {
+            updates.add(field + "=" + subject.total.get());
+        }
+    }
+
+    private Line line;
+    private RecordingObserver observer;
+
+    @Before
+    public void setUp() throws Exception {
+        line = new Line();
+        observer = new RecordingObserver();
+    }
+
+    @Test
+    public void testLazy() throws Exception {
+        line.setPrice(20);
+        line.setPrice(30);
+        assertEquals("Not computed until read", 0, line.computations);
+
+        assertEquals(60, (int) line.value.get());
+        assertEquals(60, (int) line.value.get());
+        assertEquals(1, line.computations);
+
+        line.setQuantity(3);
+        assertTrue(line.value.isStale());
+        assertEquals(90, (int) line.value.get());
+        assertEquals(2, line.computations);
+    }
+
+    @Test
+    public void testTopologicalOrder() throws Exception {
+        line.attach(observer, EnumSet.of(EventCRUD.UPDATE), Field.values());
+
+        line.setPrice(20);
+
+        assertEquals("Each derived field once, after the fields it depends on, never an outdated total",
+                "[PRICE=50, VALUE=50, TAX=50, TOTAL=50]", observer.updates.toString());
+        assertEquals(1, line.computations);
+    }
+
+    @Test
+    public void testOnlyObservedFieldsAreNotified() throws Exception {
+        line.attach(observer, EnumSet.of(EventCRUD.UPDATE), Field.TOTAL);
+
+        line.setQuantity(4);
+
+        assertEquals("[TOTAL=50]", observer.updates.toString());
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        line.attach(observer, EnumSet.of(EventCRUD.UPDATE), Field.values());
+
+        line.beginBatch();
+        line.setPrice(20);
+        line.setQuantity(3);
+        line.notify(Field.VALUE);
+        line.commit();
+
+        assertEquals("One notification of each derived field per batch",
+                "[PRICE=75, QUANTITY=75, VALUE=75, TAX=75, TOTAL=75]", observer.updates.toString());
+    }
+
+    @Test
+    public void testReadDoesNotPropagate() throws Exception {
+        line.attach(observer, EnumSet.of(EventCRUD.READ, EventCRUD.UPDATE), Field.values());
+        line.value.get();
+
+        line.notify(Field.PRICE, EventCRUD.READ);
+
+        assertEquals("[PRICE=25]", observer.updates.toString());
+        assertFalse(line.value.isStale());
+    }
+
+    @Test
+    public void testNotifyDerivedField() throws Exception {
+        line.attach(observer, EnumSet.of(EventCRUD.UPDATE), Field.values());
+        line.value.get();
+
+        line.notify(Field.VALUE);
+
+        assertEquals("Computed again", 2, line.computations);
+        assertEquals("[VALUE=25, TAX=25, TOTAL=25]", observer.updates.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAlreadyDerived() throws Exception {
+        line.derive(Field.VALUE, line.value, Field.PRICE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCycle() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        subject.derive(Field.TAX, line.tax, Field.VALUE);
+        subject.derive(Field.VALUE, line.value, Field.TAX);
+    }
+}
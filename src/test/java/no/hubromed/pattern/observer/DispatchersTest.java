@@ -0,0 +1,149 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the {@link Dispatchers}, used by a {@link Subject.DispatchingSubject}.
+ */
+public class DispatchersTest {
+
+    private enum Field {
+        NUMBER
+    }
+
+    /**
+     * Records the thread and value of each update.
+     */
+    private static class ThreadObserver<S extends Subject> implements Observer<Field, S> {
+        private final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        private final List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+        private final CountDownLatch latch;
+        private int value;
+
+        ThreadObserver(final int expected) {
+            latch = new CountDownLatch(expected);
+        }
+
+        public void update(final Field field, final EventCRUD event, final S subject) {
+            threads.add(Thread.currentThread());
+            values.add(value++);
+            latch.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("All updates delivered", latch.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private ThreadObserver<Subject.DispatchingSubject> notify(final Subject.DispatchingSubject<Field, Subject.DispatchingSubject> subject,
+                                                              final int count) throws InterruptedException {
+        final ThreadObserver<Subject.DispatchingSubject> observer = new ThreadObserver<Subject.DispatchingSubject>(count);
+        subject.attach(observer, EventCRUD.U, Field.NUMBER);
+        for (int i = 0; i < count; i++) {
+            subject.notify(Field.NUMBER);
+        }
+        observer.await();
+        return observer;
+    }
+
+    @Test
+    public void testInline() throws Exception {
+        final ThreadObserver<Subject.DispatchingSubject> observer =
+                notify(new Subject.DispatchingSubject<Field, Subject.DispatchingSubject>(Dispatchers.inline()), 3);
+        assertEquals(3, observer.threads.size());
+        assertSame(Thread.currentThread(), observer.threads.get(0));
+    }
+
+    @Test
+    public void testEventDispatchThread() throws Exception {
+        final ThreadObserver<Subject.DispatchingSubject> observer =
+                notify(new Subject.DispatchingSubject<Field, Subject.DispatchingSubject>(Dispatchers.eventDispatchThread()), 3);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                assertTrue(Dispatchers.eventDispatchThread().isDispatchThread());
+            }
+        });
+        assertFalse(Dispatchers.eventDispatchThread().isDispatchThread());
+        for (Thread thread : observer.threads) {
+            assertTrue(thread.getName().startsWith("AWT-EventQueue"));
+        }
+    }
+
+    @Test
+    public void testSerial() throws Exception {
+        final Subject.DispatchingSubject<Field, Subject.DispatchingSubject> subject =
+                new Subject.DispatchingSubject<Field, Subject.DispatchingSubject>(Dispatchers.serial("serial-test"));
+        final ThreadObserver<Subject.DispatchingSubject> observer = notify(subject, 100);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("serial-test", observer.threads.get(i).getName());
+            assertEquals(Integer.valueOf(i), observer.values.get(i));
+        }
+    }
+
+    @Test
+    public void testCoalescingExecutorKeepsOrder() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final Subject.DispatchingSubject<Field, Subject.DispatchingSubject> subject =
+                    new Subject.DispatchingSubject<Field, Subject.DispatchingSubject>(Dispatchers.executor(executor));
+            subject.setCoalescing(true);
+            final ThreadObserver<Subject.DispatchingSubject> observer = notify(subject, 1000);
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(Integer.valueOf(i), observer.values.get(i));
+                assertFalse(observer.threads.get(i) == Thread.currentThread());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        final ExecutorService fallback = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(runnable, "fallback-test");
+            }
+        });
+        try {
+            final Dispatcher dispatcher = Dispatchers.virtualThreads(fallback);
+            final ThreadObserver<Subject.DispatchingSubject> observer =
+                    notify(new Subject.DispatchingSubject<Field, Subject.DispatchingSubject>(dispatcher), 3);
+            assertEquals(3, observer.threads.size());
+            for (Thread thread : observer.threads) {
+                assertEquals(!Dispatchers.isVirtualThreadsAvailable(), "fallback-test".equals(thread.getName()));
+            }
+        } finally {
+            fallback.shutdown();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import javax.swing.SwingUtilities;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the Java Flight Recorder events in {@link FlightEvents}.
+ */
+public class FlightEventsTest {
+
+    private enum Field {
+        PRICE,
+        VOLUME
+    }
+
+    private static class Instrument extends Subject.AsynchronousSubject<Field, Instrument> {
+        @Override
+        public String name() {
+            return "EURUSD";
+        }
+    }
+
+    private static class SlowObserver implements Observer<Field, Instrument> {
+        public void update(final Field field, final EventCRUD event, final Instrument subject) {
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Recording recording;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("subject", ".jfr");
+        recording = new Recording();
+        for (String event : new String[]{"Attach", "Detach", "Notify", "Update", "Delivery"}) {
+            recording.enable(FlightEvents.PREFIX + event).withThreshold(Duration.ZERO);
+        }
+        recording.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        recording.close();
+        file.delete();
+    }
+
+    /**
+     * @return The events of the type recorded until now.
+     */
+    private List<RecordedEvent> recorded(final String event) throws Exception {
+        if (recording.getState() == RecordingState.RUNNING) {
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+        final List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+        for (RecordedEvent recorded : RecordingFile.readAllEvents(file.toPath())) {
+            if (recorded.getEventType().getName().equals(FlightEvents.PREFIX + event)) {
+                events.add(recorded);
+            }
+        }
+        return events;
+    }
+
+    @Test
+    public void testAttachAndDetach() throws Exception {
+        final Instrument instrument = new Instrument();
+        instrument.setSynchronous(true);
+        final SlowObserver observer = new SlowObserver();
+        instrument.attach(observer, EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+        instrument.detach(observer);
+
+        final List<RecordedEvent> attached = recorded("Attach");
+        assertEquals(1, attached.size());
+        assertEquals("EURUSD", attached.get(0).getString("subject"));
+        assertEquals(SlowObserver.class.getName(), attached.get(0).<RecordedClass>getValue("observer").getName());
+        assertEquals("[PRICE]", attached.get(0).getString("fields"));
+    }
+
+    @Test
+    public void testNotifyAndUpdate() throws Exception {
+        final Instrument instrument = new Instrument();
+        instrument.setSynchronous(true);
+        instrument.attach(new SlowObserver(), EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+        instrument.attach(new SlowObserver(), EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+        instrument.notify(Field.PRICE);
+        instrument.notify(Field.VOLUME);
+
+        final List<RecordedEvent> notified = recorded("Notify");
+        assertEquals(2, notified.size());
+        assertEquals("PRICE", notified.get(0).getString("field"));
+        assertEquals("UPDATE", notified.get(0).getString("event"));
+        assertEquals(2, notified.get(0).getInt("observers"));
+        assertEquals(0, notified.get(1).getInt("observers"));
+
+        final List<RecordedEvent> updated = recorded("Update");
+        assertEquals(2, updated.size());
+        assertTrue("Time spent in the Observer", updated.get(0).getDuration().toMillis() >= 2);
+    }
+
+    @Test
+    public void testDelivery() throws Exception {
+        final Instrument instrument = new Instrument();
+        instrument.attach(new SlowObserver(), EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        instrument.notify(Field.PRICE);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+            }
+        });
+
+        final List<RecordedEvent> delivered = recorded("Delivery");
+        assertEquals(1, delivered.size());
+        assertEquals("EURUSD", delivered.get(0).getString("subject"));
+        assertEquals(1, delivered.get(0).getInt("observers"));
+        assertTrue("Waited for the event dispatch thread", delivered.get(0).getLong("queueTime") >= 10000000L);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.EnumSet;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how many bytes a subject that is never observed takes, as the models may have millions of them. The
+ * expected sizes assume compressed references, which the JVM uses for heaps below 32 GB: a header of 12 bytes, 4
+ * bytes per reference, rounded up to 8 bytes.
+ */
+public class FootprintTest {
+
+    private static final int SUBJECTS = 10000;
+    private static final int ROUNDS = 5;
+
+    /**
+     * Header and 6 references: registry, batch, queue, settings, delegateFor and dispatcher.
+     */
+    private static final long SUBJECT_SIZE = 40;
+
+    private enum Field {
+        NUMBER
+    }
+
+    /**
+     * Creates one subject.
+     */
+    private interface Factory {
+        Object create();
+    }
+
+    private com.sun.management.ThreadMXBean threads;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        final HotSpotDiagnosticMXBean diagnostic = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+        Assume.assumeTrue(Boolean.parseBoolean(diagnostic.getVMOption("UseCompressedOops").getValue()));
+    }
+
+    private long allocated() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return The fewest bytes allocated per subject in a few rounds, so that the JIT does not disturb the result.
+     */
+    private long footprint(final Factory factory) {
+        final Object[] subjects = new Object[SUBJECTS];
+        long fewest = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            final long calibrationStart = allocated();
+            final long calibrationEnd = allocated();
+            final long start = allocated();
+            for (int i = 0; i < SUBJECTS; i++) {
+                subjects[i] = factory.create();
+            }
+            final long end = allocated();
+            fewest = Math.min(fewest, ((end - start) - (calibrationEnd - calibrationStart)) / SUBJECTS);
+        }
+        return fewest;
+    }
+
+    @Test
+    public void testSynchronousSubject() throws Exception {
+        assertEquals(SUBJECT_SIZE, footprint(new Factory() {
+            public Object create() {
+                return new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+            }
+        }));
+    }
+
+    @Test
+    public void testAsynchronousSubject() throws Exception {
+        assertEquals("The flag synchronous fits in the padding", SUBJECT_SIZE, footprint(new Factory() {
+            public Object create() {
+                return new Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject>();
+            }
+        }));
+    }
+
+    @Test
+    public void testDelegate() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> delegateFor =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        assertEquals(SUBJECT_SIZE, footprint(new Factory() {
+            public Object create() {
+                return new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>(delegateFor);
+            }
+        }));
+    }
+
+    @Test
+    public void testNotifyWithoutObservers() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        long fewest = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            final long calibrationStart = allocated();
+            final long calibrationEnd = allocated();
+            final long start = allocated();
+            for (int i = 0; i < SUBJECTS; i++) {
+                subject.notify(Field.NUMBER);
+            }
+            final long end = allocated();
+            fewest = Math.min(fewest, (end - start) - (calibrationEnd - calibrationStart));
+        }
+        assertEquals("Notifying a subject nobody observes allocates nothing", 0, fewest);
+    }
+
+    @Test
+    public void testSettingsAreNotShared() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> changed =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> unchanged =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        changed.setHub(new Hub());
+        changed.setCoalescing(false);
+        changed.setConflated(Field.NUMBER);
+
+        assertNull(unchanged.getHub());
+        assertTrue(unchanged.isCoalescing());
+        assertTrue(!unchanged.isConflated(Field.NUMBER));
+        assertTrue(changed.isConflated(Field.NUMBER));
+
+        final Observer.ObserverCounter<Field, Subject.SynchronousSubject> counter =
+                new Observer.ObserverCounter<Field, Subject.SynchronousSubject>();
+        unchanged.attach(counter, EnumSet.of(EventCRUD.UPDATE), Field.NUMBER);
+        unchanged.notify(Field.NUMBER);
+        assertEquals(1, counter.count(Field.NUMBER));
+    }
+}
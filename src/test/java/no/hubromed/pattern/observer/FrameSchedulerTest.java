@@ -0,0 +1,239 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the {@link FrameScheduler}.
+ */
+public class FrameSchedulerTest {
+
+    private enum Field {
+        PRICE
+    }
+
+    private FrameScheduler scheduler;
+    private Subject.DispatchingSubject<Field, Subject.DispatchingSubject> subject;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new FrameScheduler(5, TimeUnit.MILLISECONDS);
+        subject = new Subject.DispatchingSubject<Field, Subject.DispatchingSubject>(scheduler);
+    }
+
+    /**
+     * Updated on the event dispatch thread, taking 1 ms.
+     */
+    private static class SlowObserver implements Observer<Field, Subject.DispatchingSubject> {
+        private final AtomicInteger updates;
+
+        SlowObserver(final AtomicInteger updates) {
+            this.updates = updates;
+        }
+
+        public void update(final Field field, final EventCRUD event, final Subject.DispatchingSubject subject) {
+            assertTrue(SwingUtilities.isEventDispatchThread());
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            updates.incrementAndGet();
+        }
+    }
+
+    private static class PrioritizedObserver implements Observer<Field, Subject.DispatchingSubject>,
+            Observer.Prioritized {
+        private final String name;
+        private final int priority;
+        private final List<String> updates;
+
+        PrioritizedObserver(final String name, final int priority, final List<String> updates) {
+            this.name = name;
+            this.priority = priority;
+            this.updates = updates;
+        }
+
+        public int priority() {
+            return priority;
+        }
+
+        public void update(final Field field, final EventCRUD event, final Subject.DispatchingSubject subject) {
+            updates.add(name);
+        }
+    }
+
+    private void drain() throws Exception {
+        while (scheduler.pending() > 0) {
+            Thread.sleep(5);
+        }
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+            }
+        });
+    }
+
+    @Test
+    public void testYieldsToOtherEvents() throws Exception {
+        final AtomicInteger updates = new AtomicInteger();
+        for (int i = 0; i < 100; i++) {
+            subject.attach(new SlowObserver(updates), EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+        }
+
+        subject.notify(Field.PRICE);
+        final int[] updatedBeforeEvent = new int[1];
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                updatedBeforeEvent[0] = updates.get();
+            }
+        });
+        drain();
+
+        assertEquals(100, updates.get());
+        assertTrue("An event posted after the notification ran between two slices, after "
+                + updatedBeforeEvent[0] + " updates", updatedBeforeEvent[0] > 0 && updatedBeforeEvent[0] < 100);
+    }
+
+    @Test
+    public void testPriorities() throws Exception {
+        final List<String> updates = Collections.synchronizedList(new ArrayList<String>());
+        subject.attach(new PrioritizedObserver("hidden", -1, updates), EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+        subject.attach(new Observer<Field, Subject.DispatchingSubject>() {
+            public void update(final Field field, final EventCRUD event, final Subject.DispatchingSubject subject) {
+                updates.add("plain");
+            }
+        }, EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+        subject.attach(new PrioritizedObserver("visible", 1, updates), EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        subject.notify(Field.PRICE);
+        subject.notify(Field.PRICE);
+        release.countDown();
+        drain();
+
+        assertEquals("[visible, visible, plain, plain, hidden, hidden]", updates.toString());
+    }
+
+    @Test
+    public void testPrioritiesOfMailboxes() throws Exception {
+        final List<String> updates = Collections.synchronizedList(new ArrayList<String>());
+        final Executor inline = new Executor() {
+            public void execute(final Runnable command) {
+                command.run();
+            }
+        };
+        subject.attach(new Mailbox<Field, Subject.DispatchingSubject>(new PrioritizedObserver("hidden", -1, updates),
+                inline, 10, Mailbox.Overflow.DROP_OLDEST), EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+        subject.attach(new PrioritizedObserver("plain", 0, updates), EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+        subject.attach(new Mailbox<Field, Subject.DispatchingSubject>(new PrioritizedObserver("visible", 1, updates),
+                inline, 10, Mailbox.Overflow.DROP_OLDEST), EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+
+        subject.notify(Field.PRICE);
+        drain();
+
+        assertEquals("[visible, plain, hidden]", updates.toString());
+    }
+
+    @Test
+    public void testCollapsing() throws Exception {
+        final List<String> updates = Collections.synchronizedList(new ArrayList<String>());
+        subject.attach(new PrioritizedObserver("observer", 0, updates), EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+        subject.setCollapsing(true);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        subject.notify(Field.PRICE);
+        subject.notify(Field.PRICE);
+        subject.notify(Field.PRICE);
+        release.countDown();
+        drain();
+
+        assertEquals("[observer]", updates.toString());
+    }
+
+    @Test
+    public void testNotifyOnEventDispatchThreadIsQueued() throws Exception {
+        final List<String> updates = Collections.synchronizedList(new ArrayList<String>());
+        subject.attach(new PrioritizedObserver("observer", 0, updates), EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                subject.notify(Field.PRICE);
+                updates.add("notified");
+            }
+        });
+        drain();
+
+        assertEquals("[notified, observer]", updates.toString());
+    }
+
+    @Test
+    public void testFailingObserverDoesNotStopTheScheduler() throws Exception {
+        final AtomicInteger updates = new AtomicInteger();
+        subject.attach(new Observer<Field, Subject.DispatchingSubject>() {
+            public void update(final Field field, final EventCRUD event, final Subject.DispatchingSubject subject) {
+                throw new IllegalStateException("Expected by the test");
+            }
+        }, EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+        subject.attach(new SlowObserver(updates), EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+
+        final Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            public void uncaughtException(final Thread t, final Throwable e) {
+            }
+        });
+        try {
+            subject.notify(Field.PRICE);
+            drain();
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
+
+        assertEquals(1, updates.get());
+    }
+}
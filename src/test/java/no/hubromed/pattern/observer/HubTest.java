@@ -0,0 +1,166 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test of the {@link Hub}.
+ */
+public class HubTest {
+
+    private enum Field {
+        PRICE,
+        VOLUME
+    }
+
+    private enum Other {
+        NAME
+    }
+
+    /**
+     * A subject without any {@code Observer}s of its own, publishing into the hub.
+     */
+    private static class Instrument extends Subject.SynchronousSubject<Field, Instrument> {
+        private final String name;
+
+        Instrument(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+    }
+
+    private static class Future extends Instrument {
+        Future(final String name) {
+            super(name);
+        }
+    }
+
+    /**
+     * Records the name of the subject, the field and the event of each update.
+     */
+    private static class RecordingObserver<E extends Enum, S extends Subject> implements Observer<E, S> {
+        private final List<String> updates = new ArrayList<String>();
+
+        public void update(final E field, final EventCRUD event, final S subject) {
+            updates.add(subject.name() + " " + field + " " + event);
+        }
+    }
+
+    private Hub hub;
+    private RecordingObserver<Field, Instrument> observer;
+
+    @Before
+    public void setUp() throws Exception {
+        hub = new Hub();
+        observer = new RecordingObserver<Field, Instrument>();
+    }
+
+    @Test
+    public void testByType() {
+        hub.attach(Instrument.class, observer, EventCRUD.U, Field.PRICE);
+
+        hub.notify(new Instrument("A"), Field.PRICE);
+        hub.notify(new Instrument("B"), Field.PRICE);
+        hub.notify(new Instrument("C"), Field.VOLUME);
+        hub.notify(new Instrument("D"), Field.PRICE, EventCRUD.DELETE);
+
+        assertEquals("[A PRICE UPDATE, B PRICE UPDATE]", observer.updates.toString());
+    }
+
+    @Test
+    public void testSubtype() {
+        final RecordingObserver<Field, Future> futures = new RecordingObserver<Field, Future>();
+        hub.attach(Instrument.class, observer, EventCRUD.U, Field.PRICE);
+        hub.attach(Future.class, futures, EventCRUD.U, Field.PRICE);
+
+        hub.notify(new Instrument("A"), Field.PRICE);
+        hub.notify(new Future("B"), Field.PRICE);
+
+        assertEquals("[A PRICE UPDATE, B PRICE UPDATE]", observer.updates.toString());
+        assertEquals("[B PRICE UPDATE]", futures.updates.toString());
+    }
+
+    @Test
+    public void testBySubject() {
+        final Instrument a = new Instrument("A");
+        hub.attach(a, observer, EventCRUD.U, Field.PRICE);
+
+        hub.notify(new Instrument("B"), Field.PRICE);
+        hub.notify(a, Field.PRICE);
+
+        assertEquals("[A PRICE UPDATE]", observer.updates.toString());
+    }
+
+    @Test
+    public void testOtherFieldType() {
+        final RecordingObserver<Other, Subject> other = new RecordingObserver<Other, Subject>();
+        hub.attach(Subject.class, other, EventCRUD.U, Other.NAME);
+
+        // PRICE has the same ordinal as NAME, but is another field.
+        hub.notify(new Instrument("A"), Field.PRICE);
+
+        assertEquals(0, other.updates.size());
+    }
+
+    @Test
+    public void testDetach() {
+        final Instrument a = new Instrument("A");
+        hub.attach(Instrument.class, observer, EventCRUD.U, Field.PRICE);
+        hub.attach(a, observer, EventCRUD.U, Field.VOLUME);
+        hub.detach(observer);
+
+        hub.notify(a, Field.PRICE);
+        hub.notify(a, Field.VOLUME);
+
+        assertEquals(0, observer.updates.size());
+    }
+
+    @Test
+    public void testReattachReplaces() {
+        hub.attach(Instrument.class, observer, EventCRUD.U, Field.PRICE);
+        hub.attach(Instrument.class, observer, EventCRUD.U, Field.VOLUME);
+
+        hub.notify(new Instrument("A"), Field.PRICE);
+        hub.notify(new Instrument("A"), Field.VOLUME);
+
+        assertEquals("[A VOLUME UPDATE]", observer.updates.toString());
+    }
+
+    @Test
+    public void testSubjectPublishesIntoHub() {
+        final Instrument a = new Instrument("A");
+        final RecordingObserver<Field, Instrument> own = new RecordingObserver<Field, Instrument>();
+        a.attach(own, EventCRUD.U, Field.PRICE);
+        a.setHub(hub);
+        hub.attach(Instrument.class, observer, EventCRUD.U, Field.PRICE);
+
+        a.notify(Field.PRICE);
+
+        assertEquals("[A PRICE UPDATE]", own.updates.toString());
+        assertEquals("[A PRICE UPDATE]", observer.updates.toString());
+    }
+}
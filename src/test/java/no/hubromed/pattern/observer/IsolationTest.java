@@ -0,0 +1,223 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test of the {@link Isolation} of {@code Observer}s.
+ */
+public class IsolationTest {
+
+    private enum Field {
+        NUMBER
+    }
+
+    /**
+     * Records what the {@code Isolation} reports.
+     */
+    private static class RecordingListener implements Isolation.Listener {
+        private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        public void failed(final Subject subject, final Observer observer, final Enum field, final EventCRUD event,
+                           final RuntimeException failure) {
+            events.add("failed " + observer + " " + failure.getMessage());
+        }
+
+        public void quarantined(final Subject subject, final Observer observer, final long averageNanos) {
+            events.add("quarantined " + observer);
+        }
+
+        public void restored(final Subject subject, final Observer observer, final long averageNanos) {
+            events.add("restored " + observer);
+        }
+    }
+
+    /**
+     * Fails, or sleeps, while told to.
+     */
+    private static class TroubledObserver implements Observer<Field, Subject.SynchronousSubject> {
+        private volatile boolean failing;
+        private volatile long sleepMillis;
+        private volatile Thread thread;
+        private volatile CountDownLatch updated = new CountDownLatch(1);
+        private int updates;
+
+        public void update(final Field field, final EventCRUD event, final Subject.SynchronousSubject subject) {
+            thread = Thread.currentThread();
+            updates++;
+            if (sleepMillis > 0) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            updated.countDown();
+            if (failing) {
+                throw new NotObservedException(field);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "troubled";
+        }
+    }
+
+    private Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject;
+    private Isolation isolation;
+    private RecordingListener listener;
+    private TroubledObserver troubled;
+    private Observer.ObserverCounter<Field, Subject.SynchronousSubject> counter;
+
+    @Before
+    public void setUp() throws Exception {
+        subject = new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        isolation = new Isolation(20, TimeUnit.MILLISECONDS);
+        listener = new RecordingListener();
+        isolation.setListener(listener);
+        subject.setIsolation(isolation);
+        troubled = new TroubledObserver();
+        counter = new Observer.ObserverCounter<Field, Subject.SynchronousSubject>();
+        subject.attach(troubled, EnumSet.of(EventCRUD.UPDATE), Field.NUMBER);
+        subject.attach(counter, EnumSet.of(EventCRUD.UPDATE), Field.NUMBER);
+    }
+
+    @Test
+    public void testFailureDoesNotStopTheOthers() throws Exception {
+        troubled.failing = true;
+
+        subject.notify(Field.NUMBER);
+
+        assertEquals("The Observer after the failing one is updated", 1, counter.count(Field.NUMBER));
+        assertEquals(1, listener.events.size());
+        assertTrue(listener.events.get(0), listener.events.get(0).startsWith("failed troubled"));
+        assertFalse(isolation.isQuarantined(troubled));
+    }
+
+    @Test
+    public void testFailuresOpenTheCircuit() throws Exception {
+        isolation.setFailureLimit(2);
+        isolation.setCooldown(1, TimeUnit.HOURS);
+        troubled.failing = true;
+
+        for (int i = 0; i < 5; i++) {
+            subject.notify(Field.NUMBER);
+        }
+
+        assertTrue(isolation.isQuarantined(troubled));
+        assertEquals("Dropped while the circuit is open", 2, troubled.updates);
+        assertEquals(5, counter.count(Field.NUMBER));
+        assertEquals("quarantined troubled", listener.events.get(2));
+    }
+
+    @Test
+    public void testRestoredAfterTheCooldown() throws Exception {
+        isolation.setCooldown(0, TimeUnit.MILLISECONDS);
+        troubled.sleepMillis = 40;
+        for (int i = 0; i < 4; i++) {
+            subject.notify(Field.NUMBER);
+        }
+        assertTrue(isolation.isQuarantined(troubled));
+        assertEquals(Collections.singletonList("quarantined troubled"), listener.events);
+
+        troubled.sleepMillis = 0;
+        subject.notify(Field.NUMBER);
+
+        assertFalse(isolation.isQuarantined(troubled));
+        assertEquals("restored troubled", listener.events.get(1));
+        assertEquals(5, troubled.updates);
+    }
+
+    @Test
+    public void testSlowObserverMovedToTheLane() throws Exception {
+        isolation.setLane(Dispatchers.serial("Quarantine"));
+        troubled.sleepMillis = 40;
+        for (int i = 0; i < 4; i++) {
+            subject.notify(Field.NUMBER);
+        }
+        assertTrue(isolation.isQuarantined(troubled));
+        assertTrue(isolation.getAverage(troubled, TimeUnit.MILLISECONDS) >= 20);
+
+        troubled.sleepMillis = 200;
+        troubled.updated = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        subject.notify(Field.NUMBER);
+        final long elapsed = System.nanoTime() - start;
+
+        assertTrue("The publisher does not wait for the quarantined Observer",
+                elapsed < TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(5, counter.count(Field.NUMBER));
+        assertTrue(troubled.updated.await(5, TimeUnit.SECONDS));
+        assertEquals("Quarantine", troubled.thread.getName());
+    }
+
+    @Test
+    public void testNotifyAsyncSeesTheFailure() throws Exception {
+        isolation.setFailureLimit(2);
+        isolation.setCooldown(1, TimeUnit.HOURS);
+        troubled.failing = true;
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                subject.notifyAsync(Field.NUMBER, EventCRUD.UPDATE).toCompletableFuture().get(5, TimeUnit.SECONDS);
+                fail("The failure completes the stage");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof DeliveryException);
+            }
+        }
+
+        assertTrue("Tracked as the Observer attached", isolation.isQuarantined(troubled));
+        assertTrue(listener.events.get(0), listener.events.get(0).startsWith("failed troubled"));
+        assertEquals("quarantined troubled", listener.events.get(2));
+        subject.notifyAsync(Field.NUMBER, EventCRUD.UPDATE).toCompletableFuture().get(5, TimeUnit.SECONDS);
+        assertEquals("Dropped while the circuit is open", 2, troubled.updates);
+        assertEquals(3, counter.count(Field.NUMBER));
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            subject.setParallel(pool, 1);
+            troubled.failing = true;
+
+            subject.notify(Field.NUMBER);
+
+            assertEquals(1, counter.count(Field.NUMBER));
+            assertEquals(1, listener.events.size());
+            assertTrue(listener.events.get(0), listener.events.get(0).startsWith("failed troubled"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test of the {@link Journal} and {@link JournalReader}.
+ */
+public class JournalTest {
+
+    private enum Field {
+        PRICE,
+        VOLUME
+    }
+
+    /**
+     * An older version of the fields, with the same ordinals under other names.
+     */
+    private enum OldField {
+        BID,
+        VOLUME
+    }
+
+    private static class OldInstrument extends Subject.SynchronousSubject<OldField, OldInstrument> {
+    }
+
+    private enum Order {
+        PRICE,
+        QUANTITY,
+        VALUE
+    }
+
+    /**
+     * A model where VALUE = PRICE * QUANTITY.
+     */
+    private static class Line extends Subject.SynchronousSubject<Order, Line> {
+        private final Derived<Integer> value = derive(Order.VALUE, new Derived<Integer>() {
+            @Override
+            protected Integer compute() {
+                return 0;
+            }
+        }, Order.PRICE, Order.QUANTITY);
+    }
+
+    private static class Instrument extends Subject.SynchronousSubject<Field, Instrument> {
+        private final String name;
+
+        Instrument(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+    }
+
+    /**
+     * Records the field and the event of each update.
+     */
+    private static class RecordingObserver implements Observer<Field, Instrument> {
+        private final List<String> updates = new ArrayList<String>();
+
+        public void update(final Field field, final EventCRUD event, final Instrument subject) {
+            updates.add(field + " " + event);
+        }
+    }
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("notifications", ".journal");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private List<String> read() throws IOException {
+        final List<String> records = new ArrayList<String>();
+        for (JournalReader.Record record : JournalReader.open(file).records()) {
+            records.add(record.sequence() + " " + record.subject() + " " + record.field() + " " + record.event());
+        }
+        return records;
+    }
+
+    @Test
+    public void testRecord() throws Exception {
+        final Journal journal = Journal.open(file, 10);
+        final Instrument instrument = new Instrument("EURUSD");
+        instrument.setJournal(journal);
+
+        final long before = System.currentTimeMillis();
+        instrument.notify(Field.PRICE);
+        instrument.notify(Field.VOLUME, EventCRUD.CREATE);
+        journal.close();
+
+        assertEquals("[0 EURUSD PRICE UPDATE, 1 EURUSD VOLUME CREATE]", read().toString());
+        final JournalReader.Record record = JournalReader.open(file).records().get(0);
+        assertEquals(Field.PRICE.ordinal(), record.fieldOrdinal());
+        assertEquals("Time of the notification", true, record.time() >= before
+                && record.time() <= System.currentTimeMillis());
+    }
+
+    @Test
+    public void testRingKeepsLatestRecords() throws Exception {
+        final Journal journal = Journal.open(file, 3);
+        final Instrument instrument = new Instrument("A very long name that does not fit in a record");
+        instrument.setJournal(journal);
+
+        for (int i = 0; i < 5; i++) {
+            instrument.notify(i % 2 == 0 ? Field.PRICE : Field.VOLUME);
+        }
+        journal.close();
+
+        assertEquals(5, journal.sequence());
+        assertEquals("[2 A very long name that does n PRICE UPDATE, 3 A very long name that does n VOLUME UPDATE, "
+                + "4 A very long name that does n PRICE UPDATE]", read().toString());
+    }
+
+    @Test
+    public void testReopenContinuesSequence() throws Exception {
+        final Instrument instrument = new Instrument("EURUSD");
+        Journal journal = Journal.open(file, 10);
+        instrument.setJournal(journal);
+        instrument.notify(Field.PRICE);
+        journal.close();
+
+        journal = Journal.open(file, 10);
+        instrument.setJournal(journal);
+        instrument.notify(Field.VOLUME);
+        journal.close();
+
+        assertEquals("[0 EURUSD PRICE UPDATE, 1 EURUSD VOLUME UPDATE]", read().toString());
+
+        try {
+            Journal.open(file, 20);
+            fail("Opened a journal with another capacity");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAJournal() throws Exception {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[100]);
+        } finally {
+            out.close();
+        }
+        JournalReader.open(file);
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        final Journal journal = Journal.open(file, 10);
+        final Instrument eurusd = new Instrument("EURUSD");
+        final Instrument usdjpy = new Instrument("USDJPY");
+        eurusd.setJournal(journal);
+        usdjpy.setJournal(journal);
+        eurusd.notify(Field.PRICE);
+        usdjpy.notify(Field.PRICE);
+        eurusd.notify(Field.VOLUME, EventCRUD.DELETE);
+        journal.close();
+
+        final Instrument fresh = new Instrument("EURUSD");
+        final RecordingObserver observer = new RecordingObserver();
+        fresh.attach(observer, EnumSet.of(EventCRUD.UPDATE, EventCRUD.DELETE), Field.PRICE, Field.VOLUME);
+
+        final JournalReader reader = JournalReader.open(file);
+        assertEquals(2, reader.replay("EURUSD", fresh, Field.class));
+        assertEquals("[PRICE UPDATE, VOLUME DELETE]", observer.updates.toString());
+
+        observer.updates.clear();
+        assertEquals(3, reader.replay(fresh, Field.class));
+        assertEquals("[PRICE UPDATE, PRICE UPDATE, VOLUME DELETE]", observer.updates.toString());
+    }
+
+    @Test
+    public void testReplaySkipsOtherFields() throws Exception {
+        final Journal journal = Journal.open(file, 10);
+        final Instrument instrument = new Instrument("EURUSD");
+        instrument.setJournal(journal);
+        instrument.notify(Field.PRICE);
+        instrument.notify(Field.VOLUME);
+        final Line line = new Line();
+        line.setJournal(journal);
+        line.notify(Order.QUANTITY);
+        journal.close();
+
+        final List<String> updates = new ArrayList<String>();
+        final OldInstrument old = new OldInstrument();
+        old.attach(new Observer<OldField, OldInstrument>() {
+            public void update(final OldField field, final EventCRUD event, final OldInstrument subject) {
+                updates.add(field + " " + event);
+            }
+        }, OldField.values());
+        updates.clear();
+
+        assertEquals(1, JournalReader.open(file).replay(old, OldField.class));
+        assertEquals("[VOLUME UPDATE]", updates.toString());
+    }
+
+    @Test
+    public void testReplayDerivesFields() throws Exception {
+        final Journal journal = Journal.open(file, 10);
+        final Line line = new Line();
+        line.setJournal(journal);
+        line.notify(Order.PRICE);
+        journal.close();
+        assertEquals(2, read().size());
+
+        final Line fresh = new Line();
+        final List<String> updates = new ArrayList<String>();
+        fresh.attach(new Observer<Order, Line>() {
+            public void update(final Order field, final EventCRUD event, final Line subject) {
+                updates.add(field + " " + event);
+            }
+        }, Order.values());
+        updates.clear();
+
+        assertEquals(1, JournalReader.open(file).replay(fresh, Order.class));
+        assertEquals("[PRICE UPDATE, VALUE UPDATE]", updates.toString());
+    }
+
+    @Test
+    public void testClosedJournalIgnoresNotifications() throws Exception {
+        final Journal journal = Journal.open(file, 10);
+        final Instrument instrument = new Instrument("EURUSD");
+        instrument.setJournal(journal);
+        journal.close();
+
+        instrument.notify(Field.PRICE);
+
+        assertEquals(0, journal.sequence());
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the {@link Mailbox}.
+ */
+public class MailboxTest {
+
+    private enum Field {
+        NUMBER,
+        TEXT
+    }
+
+    /**
+     * Only runs the drains when asked to.
+     */
+    private static class ManualExecutor implements Executor {
+        private final List<Runnable> scheduled = new ArrayList<Runnable>();
+
+        public synchronized void execute(final Runnable command) {
+            scheduled.add(command);
+        }
+
+        void runAll() {
+            final List<Runnable> runnables;
+            synchronized (this) {
+                runnables = new ArrayList<Runnable>(scheduled);
+                scheduled.clear();
+            }
+            for (Runnable runnable : runnables) {
+                runnable.run();
+            }
+        }
+    }
+
+    private Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject;
+    private Observer.ObserverCounter<Field, Subject.SynchronousSubject> observer;
+    private ManualExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        subject = new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        observer = new Observer.ObserverCounter<Field, Subject.SynchronousSubject>();
+        executor = new ManualExecutor();
+    }
+
+    private Mailbox<Field, Subject.SynchronousSubject> attach(final int capacity, final Mailbox.Overflow overflow) {
+        final Mailbox<Field, Subject.SynchronousSubject> mailbox =
+                new Mailbox<Field, Subject.SynchronousSubject>(observer, executor, capacity, overflow);
+        subject.attach(mailbox, EventCRUD.CUD, Field.NUMBER, Field.TEXT);
+        return mailbox;
+    }
+
+    @Test
+    public void testDeliveredByExecutor() throws Exception {
+        final Mailbox<Field, Subject.SynchronousSubject> mailbox = attach(10, Mailbox.Overflow.BLOCK);
+        subject.notify(Field.NUMBER);
+        subject.notify(Field.NUMBER);
+        assertEquals(0, observer.count(Field.NUMBER));
+        assertEquals(4, mailbox.depth()); // Two INITIAL and two UPDATE
+
+        executor.runAll();
+        assertEquals(2, observer.count(Field.NUMBER));
+        assertEquals(1, observer.count(Field.TEXT, EventCRUD.INITIAL));
+        assertEquals(0, mailbox.depth());
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        final Mailbox<Field, Subject.SynchronousSubject> mailbox = attach(3, Mailbox.Overflow.DROP_NEWEST);
+        subject.notify(Field.NUMBER, EventCRUD.CREATE);
+        subject.notify(Field.NUMBER, EventCRUD.DELETE);
+        assertEquals(3, mailbox.depth());
+        assertEquals(1, mailbox.dropped());
+
+        executor.runAll();
+        assertEquals(1, observer.count(Field.NUMBER, EventCRUD.CREATE));
+        assertEquals(0, observer.count(Field.NUMBER, EventCRUD.DELETE));
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        final Mailbox<Field, Subject.SynchronousSubject> mailbox = attach(3, Mailbox.Overflow.DROP_OLDEST);
+        subject.notify(Field.NUMBER, EventCRUD.CREATE);
+        subject.notify(Field.NUMBER, EventCRUD.DELETE);
+        assertEquals(3, mailbox.depth());
+        assertEquals(1, mailbox.dropped());
+
+        executor.runAll();
+        assertEquals(0, observer.count(Field.NUMBER, EventCRUD.INITIAL));
+        assertEquals(1, observer.count(Field.NUMBER, EventCRUD.CREATE));
+        assertEquals(1, observer.count(Field.NUMBER, EventCRUD.DELETE));
+    }
+
+    @Test
+    public void testConflate() throws Exception {
+        final Mailbox<Field, Subject.SynchronousSubject> mailbox = attach(10, Mailbox.Overflow.CONFLATE);
+        for (int i = 0; i < 100; i++) {
+            subject.notify(Field.NUMBER);
+            subject.notify(Field.TEXT);
+        }
+        assertEquals(4, mailbox.depth());
+
+        executor.runAll();
+        assertEquals(1, observer.count(Field.NUMBER));
+        assertEquals(1, observer.count(Field.TEXT));
+
+        subject.notify(Field.NUMBER);
+        executor.runAll();
+        assertEquals(2, observer.count(Field.NUMBER));
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        final Mailbox<Field, Subject.SynchronousSubject> mailbox = attach(2, Mailbox.Overflow.BLOCK);
+        final CountDownLatch published = new CountDownLatch(1);
+        final Thread publisher = new Thread() {
+            @Override
+            public void run() {
+                subject.notify(Field.NUMBER);
+                published.countDown();
+            }
+        };
+        publisher.start();
+        assertFalse("Publisher blocks while the mailbox is full", published.await(100, TimeUnit.MILLISECONDS));
+
+        executor.runAll();
+        assertTrue(published.await(5, TimeUnit.SECONDS));
+        executor.runAll();
+        assertEquals(1, observer.count(Field.NUMBER));
+        assertEquals(0, mailbox.dropped());
+    }
+
+    @Test
+    public void testSlowObserverDoesNotBlockPublisher() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Mailbox<Field, Subject.SynchronousSubject> slow = new Mailbox<Field, Subject.SynchronousSubject>(
+                new Observer<Field, Subject.SynchronousSubject>() {
+                    public void update(Field field, EventCRUD event, Subject.SynchronousSubject subject) {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }, new Executor() {
+                    public void execute(final Runnable command) {
+                        new Thread(command).start();
+                    }
+                }, 100, Mailbox.Overflow.DROP_OLDEST);
+        subject.attach(slow, EventCRUD.U, Field.NUMBER);
+        subject.attach(observer, EventCRUD.U, Field.NUMBER);
+
+        for (int i = 0; i < 10; i++) {
+            subject.notify(Field.NUMBER);
+        }
+        assertEquals(10, observer.count(Field.NUMBER));
+        release.countDown();
+    }
+
+    @Test
+    public void testIsolated() throws Exception {
+        final Isolation isolation = new Isolation(1, TimeUnit.SECONDS);
+        final List<Observer> failed = new ArrayList<Observer>();
+        isolation.setListener(new Isolation.Listener() {
+            public void failed(final Subject source, final Observer failing, final Enum field, final EventCRUD event,
+                               final RuntimeException failure) {
+                failed.add(failing);
+            }
+
+            public void quarantined(final Subject source, final Observer quarantined, final long averageNanos) {
+            }
+
+            public void restored(final Subject source, final Observer restored, final long averageNanos) {
+            }
+        });
+        subject.setIsolation(isolation);
+        final Observer<Field, Subject.SynchronousSubject> failing = new Observer<Field, Subject.SynchronousSubject>() {
+            public void update(final Field field, final EventCRUD event, final Subject.SynchronousSubject source) {
+                observer.update(field, event, source);
+                throw new IllegalStateException("failed in the mailbox");
+            }
+        };
+        subject.attach(new Mailbox<Field, Subject.SynchronousSubject>(failing, executor, 10, Mailbox.Overflow.BLOCK),
+                EventCRUD.U, Field.NUMBER);
+        subject.notify(Field.NUMBER);
+        subject.notify(Field.NUMBER);
+
+        executor.runAll();
+
+        assertEquals("The drain goes on past the failure", 2, observer.count(Field.NUMBER));
+        assertEquals(2, failed.size());
+        assertTrue("Reported as the Observer in the Mailbox", failed.get(0) == failing);
+    }
+
+    @Test
+    public void testDetachObserver() throws Exception {
+        final Mailbox<Field, Subject.SynchronousSubject> mailbox = attach(10, Mailbox.Overflow.BLOCK);
+        executor.runAll();
+
+        subject.detach(observer);
+        subject.notify(Field.NUMBER);
+
+        assertEquals(0, mailbox.depth());
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test of {@code notifyAsync}, tracking the completion of a notification.
+ */
+public class NotifyAsyncTest {
+
+    private enum Field {
+        PRICE,
+        VOLUME
+    }
+
+    /**
+     * Counts its updates, after taking a little time.
+     */
+    private static class SlowObserver<S extends Subject> implements Observer<Field, S> {
+        private final AtomicInteger updates = new AtomicInteger();
+
+        public void update(final Field field, final EventCRUD event, final S subject) {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            updates.incrementAndGet();
+        }
+    }
+
+    private static class FailingObserver<S extends Subject> implements Observer<Field, S> {
+        private final String message;
+
+        FailingObserver(final String message) {
+            this.message = message;
+        }
+
+        public void update(final Field field, final EventCRUD event, final S subject) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject> subject;
+
+    @Before
+    public void setUp() throws Exception {
+        subject = new Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject>();
+    }
+
+    @Test
+    public void testCompletesWhenObserversAreUpdated() throws Exception {
+        final SlowObserver<Subject.AsynchronousSubject> first = new SlowObserver<Subject.AsynchronousSubject>();
+        final SlowObserver<Subject.AsynchronousSubject> second = new SlowObserver<Subject.AsynchronousSubject>();
+        final SlowObserver<Subject.AsynchronousSubject> other = new SlowObserver<Subject.AsynchronousSubject>();
+        subject.attach(first, EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+        subject.attach(second, EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+        subject.attach(other, EnumSet.of(EventCRUD.UPDATE), Field.VOLUME);
+
+        subject.notifyAsync(Field.PRICE, EventCRUD.UPDATE).toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, first.updates.get());
+        assertEquals(1, second.updates.get());
+        assertEquals(0, other.updates.get());
+    }
+
+    @Test
+    public void testWithoutObservers() throws Exception {
+        assertTrue(subject.notifyAsync(Field.PRICE, EventCRUD.UPDATE).toCompletableFuture().isDone());
+    }
+
+    @Test
+    public void testFailuresAreAggregated() throws Exception {
+        final SlowObserver<Subject.AsynchronousSubject> working = new SlowObserver<Subject.AsynchronousSubject>();
+        subject.attach(new FailingObserver<Subject.AsynchronousSubject>("first"), EnumSet.of(EventCRUD.UPDATE),
+                Field.PRICE);
+        subject.attach(working, EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+        subject.attach(new FailingObserver<Subject.AsynchronousSubject>("second"), EnumSet.of(EventCRUD.UPDATE),
+                Field.PRICE);
+
+        try {
+            subject.notifyAsync(Field.PRICE, EventCRUD.UPDATE).toCompletableFuture().get(5, TimeUnit.SECONDS);
+            fail("Expected the failures");
+        } catch (ExecutionException e) {
+            final DeliveryException failure = (DeliveryException) e.getCause();
+            assertEquals(3, failure.getObservers());
+            assertEquals(2, failure.getFailures().size());
+            assertEquals("first", failure.getCause().getMessage());
+            assertEquals("second", failure.getSuppressed()[0].getMessage());
+        }
+        assertEquals("The failures did not stop the others", 1, working.updates.get());
+    }
+
+    @Test
+    public void testNotCollapsed() throws Exception {
+        subject.setCollapsing(true);
+        final SlowObserver<Subject.AsynchronousSubject> observer = new SlowObserver<Subject.AsynchronousSubject>();
+        subject.attach(observer, EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        subject.notify(Field.PRICE);
+        final CompletableFuture<Void> delivered =
+                subject.notifyAsync(Field.PRICE, EventCRUD.UPDATE).toCompletableFuture();
+        release.countDown();
+        delivered.get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, observer.updates.get());
+    }
+
+    @Test
+    public void testExecutor() throws Exception {
+        final Subject.DispatchingSubject<Field, Subject.DispatchingSubject> pooled =
+                new Subject.DispatchingSubject<Field, Subject.DispatchingSubject>(
+                        Dispatchers.executor(Executors.newFixedThreadPool(2)));
+        pooled.setCoalescing(false);
+        final SlowObserver<Subject.DispatchingSubject> observer = new SlowObserver<Subject.DispatchingSubject>();
+        pooled.attach(observer, EnumSet.of(EventCRUD.CREATE), Field.VOLUME);
+
+        pooled.notifyAsync(Field.VOLUME, EventCRUD.CREATE).toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, observer.updates.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBatch() throws Exception {
+        subject.beginBatch();
+        subject.notifyAsync(Field.PRICE, EventCRUD.UPDATE);
+    }
+}
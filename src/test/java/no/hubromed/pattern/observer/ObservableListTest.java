@@ -0,0 +1,242 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test of the {@link ObservableList}, {@link ObservableListModel} and {@link ObservableTableModel}.
+ */
+public class ObservableListTest {
+
+    /**
+     * Records the changes published by the list.
+     */
+    private static class RecordingObserver implements ChangeObserver<ObservableList.Field, ObservableList> {
+        private final List<String> updates = new ArrayList<String>();
+
+        public void update(final ObservableList.Field field, final EventCRUD event, final ObservableList subject) {
+            updates.add(event.name());
+        }
+
+        public void update(final ObservableList.Field field, final EventCRUD event, final ObservableList subject,
+                           final Change change) {
+            updates.add(event + " " + change.index() + ".." + change.toIndex() + " " + change.elements());
+        }
+    }
+
+    /**
+     * Records the events fired by a {@code ListModel}.
+     */
+    private static class ListEvents implements ListDataListener {
+        private final List<String> events = new ArrayList<String>();
+
+        public void intervalAdded(final ListDataEvent e) {
+            events.add("added " + e.getIndex0() + ".." + e.getIndex1());
+        }
+
+        public void intervalRemoved(final ListDataEvent e) {
+            events.add("removed " + e.getIndex0() + ".." + e.getIndex1());
+        }
+
+        public void contentsChanged(final ListDataEvent e) {
+            events.add("changed " + e.getIndex0() + ".." + e.getIndex1());
+        }
+    }
+
+    private ObservableList<String> list;
+
+    @Before
+    public void setUp() throws Exception {
+        list = new ObservableList<String>(Arrays.asList("a", "b", "c"));
+    }
+
+    private CountDownLatch blockEventDispatchThread() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        return latch;
+    }
+
+    private void drainEventDispatchThread() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+            }
+        });
+    }
+
+    @Test
+    public void testCoalesced() throws Exception {
+        final RecordingObserver observer = new RecordingObserver();
+        list.attach(observer, EventCRUD.CUD, ObservableList.Field.ELEMENTS);
+
+        final CountDownLatch release = blockEventDispatchThread();
+        list.add("d");
+        list.add("e");
+        list.add(3, "x");
+        list.set(0, "A");
+        list.set(1, "B");
+        list.remove(1);
+        list.remove(1);
+        list.clear();
+        release.countDown();
+        drainEventDispatchThread();
+
+        assertEquals("[INITIAL, CREATE 3..5 [x, d, e], UPDATE 0..1 [A, B], DELETE 1..2 [B, c], "
+                + "DELETE 0..3 [A, x, d, e]]", observer.updates.toString());
+    }
+
+    @Test
+    public void testSynchronous() {
+        list.setSynchronous(true);
+        final RecordingObserver observer = new RecordingObserver();
+        list.attach(observer, EventCRUD.CUD, ObservableList.Field.ELEMENTS);
+
+        list.add("d");
+        list.addAll(Arrays.asList("e", "f"));
+        list.remove("a");
+
+        assertEquals("[INITIAL, CREATE 3..3 [d], CREATE 4..5 [e, f], DELETE 0..0 [a]]", observer.updates.toString());
+    }
+
+    @Test
+    public void testAttachWhileChangesArePending() throws Exception {
+        final RecordingObserver first = new RecordingObserver();
+        list.attach(first, EventCRUD.CUD, ObservableList.Field.ELEMENTS);
+
+        final CountDownLatch release = blockEventDispatchThread();
+        list.add("d");
+        final RecordingObserver second = new RecordingObserver();
+        list.attach(second, EventCRUD.CUD, ObservableList.Field.ELEMENTS);
+        list.add("e");
+        release.countDown();
+        drainEventDispatchThread();
+
+        assertEquals("[INITIAL, CREATE 3..3 [d], CREATE 4..4 [e]]", first.updates.toString());
+        assertEquals("The second observer already read d on INITIAL", "[INITIAL, CREATE 4..4 [e]]",
+                second.updates.toString());
+    }
+
+    @Test
+    public void testListModel() throws Exception {
+        final ListEvents events = new ListEvents();
+        final List<ObservableListModel<String>> model = new ArrayList<ObservableListModel<String>>();
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                model.add(new ObservableListModel<String>(list));
+                model.get(0).addListDataListener(events);
+            }
+        });
+
+        final CountDownLatch release = blockEventDispatchThread();
+        for (int i = 0; i < 1000; i++) {
+            list.add("row " + i);
+        }
+        list.set(1, "B");
+        list.remove(0);
+        release.countDown();
+        drainEventDispatchThread();
+
+        assertEquals("[added 3..1002, changed 1..1, removed 0..0]", events.events.toString());
+        assertEquals(list.snapshot().size(), model.get(0).getSize());
+        assertEquals("B", model.get(0).getElementAt(0));
+        assertEquals("row 999", model.get(0).getElementAt(1001));
+    }
+
+    @Test
+    public void testTableModel() throws Exception {
+        final List<String> events = new ArrayList<String>();
+        final List<ObservableTableModel<String>> model = new ArrayList<ObservableTableModel<String>>();
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                model.add(new ObservableTableModel<String>(list) {
+                    public int getColumnCount() {
+                        return 2;
+                    }
+
+                    protected Object getColumnValue(final String row, final int column) {
+                        return column == 0 ? row : row.length();
+                    }
+                });
+                model.get(0).addTableModelListener(new TableModelListener() {
+                    public void tableChanged(final TableModelEvent e) {
+                        events.add(e.getType() + " " + e.getFirstRow() + ".." + e.getLastRow());
+                    }
+                });
+            }
+        });
+
+        list.addAll(Arrays.asList("d", "e"));
+        list.set(0, "A");
+        list.remove(2);
+        drainEventDispatchThread();
+
+        assertEquals(TableModelEvent.INSERT + " 3..4, " + TableModelEvent.UPDATE + " 0..0, "
+                + TableModelEvent.DELETE + " 2..2", events.toString().replaceAll("[\\[\\]]", ""));
+        assertEquals(4, model.get(0).getRowCount());
+        assertEquals("A", model.get(0).getValueAt(0, 0));
+        assertEquals(1, model.get(0).getValueAt(3, 1));
+    }
+
+    @Test
+    public void testHub() throws Exception {
+        final Hub hub = new Hub();
+        final RecordingObserver routed = new RecordingObserver();
+        hub.attach(ObservableList.class, routed, EventCRUD.CUD, ObservableList.Field.ELEMENTS);
+        list.setHub(hub);
+        list.attach(new RecordingObserver(), EventCRUD.CUD, ObservableList.Field.ELEMENTS);
+
+        final CountDownLatch release = blockEventDispatchThread();
+        list.add("d");
+        list.add("e");
+        list.remove(0);
+        release.countDown();
+        drainEventDispatchThread();
+
+        assertEquals("[CREATE 3..4 [d, e], DELETE 0..0 [a]]", routed.updates.toString());
+    }
+
+    @Test
+    public void testWithoutObservers() throws Exception {
+        list.add("d");
+        final RecordingObserver observer = new RecordingObserver();
+        list.setSynchronous(true);
+        list.attach(observer, EventCRUD.CUD, ObservableList.Field.ELEMENTS);
+
+        assertEquals("[INITIAL]", observer.updates.toString());
+        assertEquals(Arrays.asList("a", "b", "c", "d"), list.snapshot());
+    }
+}
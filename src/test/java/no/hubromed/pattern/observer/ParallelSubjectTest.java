@@ -0,0 +1,178 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test of {@link Subject.SynchronousSubject#setParallel(ForkJoinPool, int)}.
+ */
+public class ParallelSubjectTest {
+
+    private enum Field {
+        NUMBER
+    }
+
+    private static final int OBSERVERS = 64;
+
+    /**
+     * Counts the updates, and records the threads making them.
+     */
+    private static class BusyObserver<S extends Subject> implements Observer<Field, S> {
+        private final AtomicInteger updates;
+        private final Set<Thread> threads;
+
+        BusyObserver(final AtomicInteger updates, final Set<Thread> threads) {
+            this.updates = updates;
+            this.threads = threads;
+        }
+
+        public void update(final Field field, final EventCRUD event, final S subject) {
+            threads.add(Thread.currentThread());
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            updates.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records the order of the updates, and the threads making them.
+     */
+    private static class OrderedObserver<S extends Subject> implements Observer<Field, S>, Observer.Ordered {
+        private final int number;
+        private final List<Integer> order;
+        private final Set<Thread> threads;
+
+        OrderedObserver(final int number, final List<Integer> order, final Set<Thread> threads) {
+            this.number = number;
+            this.order = order;
+            this.threads = threads;
+        }
+
+        public void update(final Field field, final EventCRUD event, final S subject) {
+            order.add(number);
+            threads.add(Thread.currentThread());
+        }
+    }
+
+    private ForkJoinPool pool;
+    private Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject;
+    private AtomicInteger updates;
+    private Set<Thread> threads;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new ForkJoinPool(4);
+        subject = new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        updates = new AtomicInteger();
+        threads = Collections.synchronizedSet(new HashSet<Thread>());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutdown();
+    }
+
+    private void attachBusyObservers() {
+        for (int i = 0; i < OBSERVERS; i++) {
+            subject.attach(new BusyObserver<Subject.SynchronousSubject>(updates, threads), EventCRUD.U, Field.NUMBER);
+        }
+    }
+
+    @Test
+    public void testParallel() {
+        subject.setParallel(pool, 16);
+        attachBusyObservers();
+
+        subject.notify(Field.NUMBER);
+
+        assertEquals("notify returns once all observers are updated", OBSERVERS, updates.get());
+        assertTrue("Updated by more than one thread", threads.size() > 1);
+    }
+
+    @Test
+    public void testBelowThreshold() {
+        subject.setParallel(pool, OBSERVERS + 1);
+        attachBusyObservers();
+
+        subject.notify(Field.NUMBER);
+
+        assertEquals(OBSERVERS, updates.get());
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+    }
+
+    @Test
+    public void testOrdered() {
+        subject.setParallel(pool, 16);
+        attachBusyObservers();
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final Set<Thread> orderedThreads = Collections.synchronizedSet(new HashSet<Thread>());
+        for (int i = 0; i < 10; i++) {
+            subject.attach(new OrderedObserver<Subject.SynchronousSubject>(i, order, orderedThreads),
+                    EventCRUD.U, Field.NUMBER);
+        }
+
+        subject.notify(Field.NUMBER);
+
+        assertEquals(OBSERVERS, updates.get());
+        assertEquals("[0, 1, 2, 3, 4, 5, 6, 7, 8, 9]", order.toString());
+        assertEquals(Collections.singleton(Thread.currentThread()), orderedThreads);
+        assertFalse("Unordered observers are not updated by the notifying thread",
+                threads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    public void testFailureAfterAllUpdated() {
+        subject.setParallel(pool, 16);
+        subject.attach(new Observer<Field, Subject.SynchronousSubject>() {
+            public void update(final Field field, final EventCRUD event, final Subject.SynchronousSubject subject) {
+                throw new IllegalStateException("Failing observer");
+            }
+        }, EventCRUD.U, Field.NUMBER);
+        attachBusyObservers();
+
+        try {
+            subject.notify(Field.NUMBER);
+            fail("The failure should be thrown by notify");
+        } catch (IllegalStateException e) {
+            // The pool may wrap the failure of another thread, to keep the stack trace of the notifying thread.
+            Throwable cause = e;
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            assertEquals("Failing observer", cause.getMessage());
+        }
+        assertEquals(OBSERVERS, updates.get());
+    }
+}
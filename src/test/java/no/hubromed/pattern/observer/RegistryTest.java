@@ -0,0 +1,106 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit test of the {@link Registry}.
+ */
+public class RegistryTest {
+
+    private enum Field {
+        NUMBER,
+        TEXT
+    }
+
+    private final Observer.ObserverCounter<Field, Subject.SynchronousSubject> first =
+            new Observer.ObserverCounter<Field, Subject.SynchronousSubject>();
+    private final Observer.ObserverCounter<Field, Subject.SynchronousSubject> second =
+            new Observer.ObserverCounter<Field, Subject.SynchronousSubject>();
+
+    @Test
+    public void testImmutable() {
+        final Registry<Field, Subject.SynchronousSubject> empty = Registry.empty();
+        final Registry<Field, Subject.SynchronousSubject> one = empty.attach(first, Subscription.of(EventCRUD.U, Field.NUMBER));
+        final Registry<Field, Subject.SynchronousSubject> two = one.attach(second, Subscription.of(EventCRUD.U, Field.NUMBER));
+
+        assertEquals(0, empty.size());
+        assertEquals(1, one.size());
+        assertEquals(2, two.size());
+        assertEquals(1, one.index().observers(Field.NUMBER, EventCRUD.UPDATE).length);
+        assertEquals(2, two.index().observers(Field.NUMBER, EventCRUD.UPDATE).length);
+
+        final Registry<Field, Subject.SynchronousSubject> replaced = two.attach(first, Subscription.of(EventCRUD.U, Field.TEXT));
+        assertEquals(2, replaced.size());
+        assertSame(second, replaced.index().observers(Field.NUMBER, EventCRUD.UPDATE)[0]);
+        assertSame(first, replaced.index().observers(Field.TEXT, EventCRUD.UPDATE)[0]);
+
+        assertSame(empty, one.detach(first));
+        assertSame(one, one.detach(second));
+        assertEquals(1, two.detach(first).size());
+        assertSame(second, two.detach(first).index().observers(Field.NUMBER, EventCRUD.UPDATE)[0]);
+    }
+
+    @Test
+    public void testConcurrentAttach() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final List<Observer.ObserverCounter<Field, Subject.SynchronousSubject>> observers =
+                new ArrayList<Observer.ObserverCounter<Field, Subject.SynchronousSubject>>();
+        for (int i = 0; i < 400; i++) {
+            observers.add(new Observer.ObserverCounter<Field, Subject.SynchronousSubject>());
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final List<Observer.ObserverCounter<Field, Subject.SynchronousSubject>> part = observers.subList(t * 100, (t + 1) * 100);
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (Observer.ObserverCounter<Field, Subject.SynchronousSubject> observer : part) {
+                        subject.attach(observer, EventCRUD.U, Field.NUMBER);
+                        subject.notify(Field.TEXT);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        subject.notify(Field.NUMBER);
+        for (Observer.ObserverCounter<Field, Subject.SynchronousSubject> observer : observers) {
+            assertEquals(1, observer.count(Field.NUMBER));
+        }
+    }
+}
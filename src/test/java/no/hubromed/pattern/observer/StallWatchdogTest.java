@@ -0,0 +1,146 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the {@link StallWatchdog}.
+ */
+public class StallWatchdogTest {
+
+    private enum Field {
+        NUMBER
+    }
+
+    /**
+     * Sleeps on the event dispatch thread.
+     */
+    private static class SleepingObserver implements Observer<Field, Subject.AsynchronousSubject> {
+        private final long sleepMillis;
+        private final CountDownLatch updated = new CountDownLatch(1);
+
+        SleepingObserver(final long sleepMillis) {
+            this.sleepMillis = sleepMillis;
+        }
+
+        public void update(final Field field, final EventCRUD event, final Subject.AsynchronousSubject subject) {
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            updated.countDown();
+        }
+    }
+
+    private StallWatchdog watchdog;
+    private final List<StallWatchdog.Stall> stalls =
+            Collections.synchronizedList(new ArrayList<StallWatchdog.Stall>());
+    private Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject> subject;
+
+    @Before
+    public void setUp() throws Exception {
+        watchdog = new StallWatchdog(50, TimeUnit.MILLISECONDS);
+        watchdog.setListener(new StallWatchdog.Listener() {
+            public void stalled(final StallWatchdog.Stall stall) {
+                stalls.add(stall);
+            }
+        });
+        watchdog.start();
+        subject = new Subject.AsynchronousSubject<Field, Subject.AsynchronousSubject>();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        watchdog.stop();
+    }
+
+    private void flush() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+            }
+        });
+    }
+
+    @Test
+    public void testStall() throws Exception {
+        final SleepingObserver observer = new SleepingObserver(300);
+        subject.attach(observer, EnumSet.of(EventCRUD.UPDATE), Field.NUMBER);
+
+        subject.notify(Field.NUMBER);
+        assertTrue(observer.updated.await(5, TimeUnit.SECONDS));
+        flush();
+
+        assertEquals("Reported once", 1, stalls.size());
+        final StallWatchdog.Stall stall = stalls.get(0);
+        assertSame(subject, stall.getSubject());
+        assertSame(Field.NUMBER, stall.getField());
+        assertSame(observer, stall.getObserver());
+        assertTrue(stall.getDuration(TimeUnit.MILLISECONDS) >= 50);
+        boolean sleeping = false;
+        for (StackTraceElement element : stall.getStackTrace()) {
+            sleeping |= element.getClassName().equals(SleepingObserver.class.getName());
+        }
+        assertTrue("The stack of the event dispatch thread", sleeping);
+    }
+
+    @Test
+    public void testQuickUpdates() throws Exception {
+        final SleepingObserver observer = new SleepingObserver(1);
+        subject.attach(observer, EnumSet.of(EventCRUD.UPDATE), Field.NUMBER);
+
+        for (int i = 0; i < 20; i++) {
+            subject.notify(Field.NUMBER);
+            flush();
+        }
+
+        assertTrue(stalls.isEmpty());
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        watchdog.stop();
+
+        assertNull(StallWatchdog.running());
+    }
+
+    @Test
+    public void testStartReplaces() throws Exception {
+        final StallWatchdog replacement = new StallWatchdog(1, TimeUnit.SECONDS);
+        replacement.start();
+        try {
+            assertSame(replacement, StallWatchdog.running());
+        } finally {
+            replacement.stop();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of {@link SubjectPublisher} and {@link SubjectSubscriber}.
+ */
+public class SubjectPublisherTest {
+
+    private enum Field {
+        PRICE,
+        QUANTITY
+    }
+
+    /**
+     * Records the signals, requesting {@code initial} notifications on subscribe.
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<Notification<Field, Subject.SynchronousSubject>> {
+        private final long initial;
+        final List<String> signals = new ArrayList<String>();
+        private Flow.Subscription subscription;
+
+        RecordingSubscriber(final long initial) {
+            this.initial = initial;
+        }
+
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initial > 0) {
+                subscription.request(initial);
+            }
+        }
+
+        public void onNext(final Notification<Field, Subject.SynchronousSubject> notification) {
+            signals.add(notification.field() + " " + notification.event());
+        }
+
+        public void onError(final Throwable failure) {
+            signals.add("error " + failure.getClass().getSimpleName());
+        }
+
+        public void onComplete() {
+            signals.add("complete");
+        }
+    }
+
+    private Subject.SynchronousSubject<Field, Subject.SynchronousSubject> subject;
+
+    @Before
+    public void setUp() throws Exception {
+        subject = new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+    }
+
+    private SubjectPublisher<Field, Subject.SynchronousSubject> publisher() {
+        return new SubjectPublisher<Field, Subject.SynchronousSubject>(subject, Dispatchers.inline(),
+                EnumSet.of(EventCRUD.CREATE, EventCRUD.UPDATE), Field.values());
+    }
+
+    @Test
+    public void testDemand() throws Exception {
+        final RecordingSubscriber subscriber = new RecordingSubscriber(2);
+        publisher().subscribe(subscriber, 10, Mailbox.Overflow.DROP_NEWEST);
+
+        subject.notify(Field.PRICE);
+        subject.notify(Field.QUANTITY);
+        subject.notify(Field.PRICE, EventCRUD.CREATE);
+        subject.notify(Field.QUANTITY, EventCRUD.CREATE);
+        assertEquals("[PRICE UPDATE, QUANTITY UPDATE]", subscriber.signals.toString());
+
+        subscriber.subscription.request(5);
+        assertEquals("[PRICE UPDATE, QUANTITY UPDATE, PRICE CREATE, QUANTITY CREATE]", subscriber.signals.toString());
+
+        subject.notify(Field.PRICE);
+        assertEquals(5, subscriber.signals.size());
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        final SubjectPublisher<Field, Subject.SynchronousSubject> publisher = publisher();
+        final RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber, 2, Mailbox.Overflow.DROP_OLDEST);
+
+        subject.notify(Field.PRICE);
+        subject.notify(Field.QUANTITY);
+        subject.notify(Field.PRICE, EventCRUD.CREATE);
+        subject.notify(Field.QUANTITY, EventCRUD.CREATE);
+        assertEquals(2, publisher.dropped());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals("[PRICE CREATE, QUANTITY CREATE]", subscriber.signals.toString());
+    }
+
+    @Test
+    public void testConflate() throws Exception {
+        final RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher().subscribe(subscriber, 10, Mailbox.Overflow.CONFLATE);
+
+        for (int i = 0; i < 5; i++) {
+            subject.notify(Field.PRICE);
+            subject.notify(Field.QUANTITY);
+        }
+
+        subscriber.subscription.request(10);
+        assertEquals("[PRICE UPDATE, QUANTITY UPDATE]", subscriber.signals.toString());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final SubjectPublisher<Field, Subject.SynchronousSubject> publisher = publisher();
+        final RecordingSubscriber subscriber = new RecordingSubscriber(10);
+        publisher.subscribe(subscriber);
+        assertEquals(1, publisher.subscribers());
+
+        subscriber.subscription.cancel();
+        subject.notify(Field.PRICE);
+
+        assertEquals(0, publisher.subscribers());
+        assertTrue(subscriber.signals.isEmpty());
+    }
+
+    @Test
+    public void testCancelOnSubscribe() throws Exception {
+        final SubjectPublisher<Field, Subject.SynchronousSubject> publisher = publisher();
+        final RecordingSubscriber subscriber = new RecordingSubscriber(10) {
+            @Override
+            public void onSubscribe(final Flow.Subscription subscription) {
+                super.onSubscribe(subscription);
+                subscription.cancel();
+            }
+        };
+        publisher.subscribe(subscriber);
+
+        subject.notify(Field.PRICE);
+
+        assertEquals(0, publisher.subscribers());
+        assertTrue(subscriber.signals.isEmpty());
+        assertEquals("Detached from the subject", 0, subject.index().observers(Field.PRICE, EventCRUD.UPDATE).length);
+    }
+
+    @Test
+    public void testSubscribeAfterClose() throws Exception {
+        final SubjectPublisher<Field, Subject.SynchronousSubject> publisher = publisher();
+        publisher.close();
+        final RecordingSubscriber subscriber = new RecordingSubscriber(0) {
+            @Override
+            public void onSubscribe(final Flow.Subscription subscription) {
+                super.onSubscribe(subscription);
+                assertTrue("Nothing is signalled before onSubscribe", signals.isEmpty());
+            }
+        };
+        publisher.subscribe(subscriber);
+
+        assertEquals("[complete]", subscriber.signals.toString());
+        assertEquals(0, publisher.subscribers());
+        assertEquals(0, subject.index().observers(Field.PRICE, EventCRUD.UPDATE).length);
+    }
+
+    @Test
+    public void testInitialBeyondCapacity() throws Exception {
+        final SubjectPublisher<Field, Subject.SynchronousSubject> publisher =
+                new SubjectPublisher<Field, Subject.SynchronousSubject>(subject, Dispatchers.inline(), EventCRUD.CUD,
+                        Field.values());
+        final RecordingSubscriber subscriber = new RecordingSubscriber(0);
+
+        publisher.subscribe(subscriber, 1, Mailbox.Overflow.BLOCK);
+
+        assertEquals("The INITIAL event that does not fit is dropped", 1, publisher.dropped());
+        subscriber.subscription.request(10);
+        subject.notify(Field.QUANTITY);
+        assertEquals("[PRICE INITIAL, QUANTITY UPDATE]", subscriber.signals.toString());
+    }
+
+    @Test
+    public void testRequestNothing() throws Exception {
+        final RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher().subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+
+        assertEquals("[error IllegalArgumentException]", subscriber.signals.toString());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        final SubjectPublisher<Field, Subject.SynchronousSubject> publisher = publisher();
+        final RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber);
+        subject.notify(Field.PRICE);
+
+        publisher.close();
+        subject.notify(Field.QUANTITY);
+        assertTrue("Buffered notifications are delivered first", subscriber.signals.isEmpty());
+
+        subscriber.subscription.request(10);
+        assertEquals("[PRICE UPDATE, complete]", subscriber.signals.toString());
+    }
+
+    @Test
+    public void testSubscriberIntoSubject() throws Exception {
+        final Subject.SynchronousSubject<Field, Subject.SynchronousSubject> mirror =
+                new Subject.SynchronousSubject<Field, Subject.SynchronousSubject>();
+        final Observer.ObserverCounter<Field, Subject.SynchronousSubject> counter =
+                new Observer.ObserverCounter<Field, Subject.SynchronousSubject>();
+        mirror.attach(counter, EnumSet.of(EventCRUD.UPDATE), Field.PRICE);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final SubjectPublisher<Field, Subject.SynchronousSubject> publisher =
+                    new SubjectPublisher<Field, Subject.SynchronousSubject>(subject, executor, EventCRUD.CRUD,
+                            Field.PRICE);
+            final SubjectSubscriber<Field> subscriber = new SubjectSubscriber<Field>(mirror, 4);
+            publisher.subscribe(subscriber, 2, Mailbox.Overflow.BLOCK);
+
+            for (int i = 0; i < 1000; i++) {
+                subject.notify(Field.PRICE);
+            }
+            publisher.close();
+            subscriber.done().toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+            assertEquals("No notification lost", 1000, counter.count(Field.PRICE));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
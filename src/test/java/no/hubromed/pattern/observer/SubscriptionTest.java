@@ -0,0 +1,60 @@
+/*
+ * Copyright 2005-2013 Skjalg Bjorndal
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.hubromed.pattern.observer;
+
+import java.util.EnumSet;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the {@link Subscription}.
+ */
+public class SubscriptionTest {
+
+    private enum Field {
+        A, B, C
+    }
+
+    @Test
+    public void testShared() {
+        final Subscription first = Subscription.of(EventCRUD.CUD, Field.A, Field.C);
+        final Subscription second = Subscription.of(EnumSet.copyOf(EventCRUD.CUD), Field.C, Field.A, Field.C);
+        assertSame(first, second);
+        assertNotSame(first, Subscription.of(EventCRUD.CRUD, Field.A, Field.C));
+        assertNotSame(first, Subscription.of(EventCRUD.CUD, Field.A));
+    }
+
+    @Test
+    public void testMatches() {
+        final Subscription subscription = Subscription.of(EventCRUD.U, Field.B);
+        assertTrue(subscription.matches(Field.B.ordinal(), EventCRUD.UPDATE));
+        assertFalse(subscription.matches(Field.B.ordinal(), EventCRUD.CREATE));
+        assertFalse(subscription.matches(Field.A.ordinal(), EventCRUD.UPDATE));
+        assertFalse(subscription.matches(200, EventCRUD.UPDATE));
+    }
+
+    @Test
+    public void testLength() {
+        assertEquals(2, Subscription.of(EventCRUD.U, Field.B).length());
+        assertEquals(3, Subscription.of(EventCRUD.U, Field.A, Field.C).length());
+    }
+}
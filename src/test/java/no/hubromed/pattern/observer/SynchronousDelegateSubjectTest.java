@@ -77,6 +77,14 @@ public class SynchronousDelegateSubjectTest {
             delegate.notify(field);
         }
 
+        public void beginBatch() {
+            delegate.beginBatch();
+        }
+
+        public void commit() {
+            delegate.commit();
+        }
+
         @Override
         public long getTime() {
             notify(Field.TIME, EventCRUD.READ);